@@ -72,6 +72,27 @@ public class Keywords {
 		return null;
 	}
 
+	/**
+	 * Finds the keyword spelled out by characters <code>start</code> through
+	 * <code>end - 1</code> of <code>text</code>, ignoring case, without
+	 * copying them out into a new string.
+	 * 
+	 * @return the keyword as the system stores it, or null if there isn't one
+	 */
+	public String find(CharSequence text, int start, int end) {
+		int length = end - start;
+		for (String k : words()) {
+			if (k.length() != length)
+				continue;
+			int i = 0;
+			while (i < length && Character.toLowerCase(text.charAt(start + i)) == k.charAt(i))
+				i++;
+			if (i == length)
+				return k;
+		}
+		return null;
+	}
+
 	/**
 	 * Returns the definition associated with the keyword or null if the keyword
 	 * is not one recognized by the system
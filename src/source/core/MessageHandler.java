@@ -1,8 +1,13 @@
 package core;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TimeZone;
 
 /** A service that generates responses to requests for raz scheduling info. */
 public abstract class MessageHandler {
@@ -17,9 +22,39 @@ public abstract class MessageHandler {
 	/** The keywords this message handler uses. */
 	protected Keywords keywords;
 
+	/** Formats the time in this handler's response headers. Guarded by itself. */
+	private final SimpleDateFormat headerFormat;
+
 	protected MessageHandler() {
-		this.keywords = new Keywords();
+		this.keywords = createKeywords();
+		synchronized (STD_DATE_FORM) {
+			headerFormat = (SimpleDateFormat) STD_DATE_FORM.clone();
+		}
+	}
+
+	/**
+	 * Sets the zone the time in response headers is given in, which is the
+	 * JVM's unless a handler answers in another.
+	 */
+	protected void setHeaderTimeZone(TimeZone zone) {
+		synchronized (headerFormat) {
+			headerFormat.setTimeZone(zone);
+		}
+	}
+
+	/** Returns a new set of keywords holding the ones every message handler recognizes. */
+	protected static Keywords createKeywords() {
+		Keywords keywords = new Keywords();
 		keywords.add(KEY_HELP, "how to use the service");
+		return keywords;
+	}
+
+	/**
+	 * Returns the keywords this message handler currently recognizes. Handlers
+	 * that replace their keywords while running override this.
+	 */
+	protected Keywords getKeywords() {
+		return keywords;
 	}
 
 	/**
@@ -34,8 +69,52 @@ public abstract class MessageHandler {
 	 */
 	public final String getResponse(Query query) {
 		identifyKeyword(query);
+		return respond(query);
+	}
+
+	/**
+	 * Generates the responses to a batch of queries, such as all those that
+	 * came in with one poll, in the same order. Queries that are bound to get
+	 * the same response, according to getResponseKey(), share one: it is
+	 * rendered for the first of them and handed to the rest. Handlers that
+	 * don't override getResponseKey() answer each query on its own, exactly
+	 * as getResponse() would.
+	 * 
+	 * @param queries
+	 *            the requests
+	 * @return the response to each query
+	 */
+	public final List<String> getResponses(List<? extends Query> queries) {
+		List<String> responses = new ArrayList<String>(queries.size());
+		Map<Object, String> rendered = new HashMap<Object, String>();
+		for (Query query : queries) {
+			identifyKeyword(query);
+			Object key = getResponseKey(query);
+			String response = key == null ? null : rendered.get(key);
+			if (response == null) {
+				response = respond(query);
+				if (key != null)
+					rendered.put(key, response);
+			}
+			responses.add(response);
+		}
+		return responses;
+	}
+
+	/**
+	 * Returns a key that is equal for any two queries that are bound to get
+	 * the same response, or null if the query's response can't be shared.
+	 * Called after the query's keyword has been identified. Returns null
+	 * unless overridden, so every query is answered on its own.
+	 */
+	protected Object getResponseKey(Query query) {
+		return null;
+	}
+
+	/** Generates the response to a query whose keyword has been identified. */
+	private String respond(Query query) {
 		StringBuilder response = new StringBuilder();
-		String header = getHeader(query.getTimeReceived());
+		String header = getResponseHeader(query.getTimeReceived());
 		response.append(header);
 		int charactersRemaining = PioText.SMS_LENGTH - response.length();
 		String message;
@@ -59,6 +138,7 @@ public abstract class MessageHandler {
 	 */
 	public String helpMessage(Date time) {
 		StringBuilder message = new StringBuilder();
+		Keywords keywords = getKeywords();
 		for (String k : keywords.words()) {
 			message.append(String.format("\n%s %s", k.toUpperCase(), keywords
 					.getDefinition(k)));
@@ -77,7 +157,7 @@ public abstract class MessageHandler {
 	 *            the query to be tagged
 	 */
 	private void identifyKeyword(Query query) {
-		String word = keywords.extract(query.getBody());
+		String word = getKeywords().extract(query.getBody());
 		query.setKeyword(word);
 	}
 
@@ -114,8 +194,21 @@ public abstract class MessageHandler {
 	 * @return the header of the message.
 	 */
 	public static String getHeader(Date time) {
+		return formatHeader(STD_DATE_FORM, time);
+	}
+
+	/** Generates the header for a response, with the time in this handler's zone. */
+	protected String getResponseHeader(Date time) {
+		return formatHeader(headerFormat, time);
+	}
+
+	private static String formatHeader(SimpleDateFormat format, Date time) {
 		String header = "PioTxt\n";
-		String timeString = STD_DATE_FORM.format(time);
+		String timeString;
+		// Responses may be generated on several threads, and formats aren't safe to share
+		synchronized (format) {
+			timeString = format.format(time);
+		}
 		header += timeString + "\n";
 		return header;
 	}
@@ -5,17 +5,26 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.InetSocketAddress;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
+import java.util.Random;
+import java.util.TimeZone;
 
+import persistance.DedupeJournal;
 import persistance.Log;
 
 import sms.ConnectionException;
 import sms.GvConnection;
 import sms.SmsConnection;
+import sms.SmsSender;
+import sms.WebhookConnection;
+
+import time.EpochConverter;
 
 /**
  * The main program manager. This is what should be run in a jar.
@@ -24,8 +33,14 @@ public class PioText {
 
 	public final static String VERSION = "piotxt-v0.8";
 
-	/** How often PioText will check for new messages, in ms. */
-	private final static long CHECK_FREQ = 60000;
+	/** The default shortest wait between checks for new messages, in seconds. */
+	private final static int MIN_CHECK_SECONDS = 5;
+
+	/** The default longest wait between checks for new messages, in seconds. */
+	private final static int MAX_CHECK_SECONDS = 60;
+
+	/** The default most checks for new messages to make in an hour. */
+	private final static int CHECK_BUDGET = 600;
 
 	/** A half hour, in ms. */
 	private final static long HALF_HOUR = 1800000;
@@ -57,6 +72,20 @@ public class PioText {
 	/** The message log queries will be saved to. */
 	private Log messageLog;
 
+	/** Answers, sends, deletes and logs the queries fetched. */
+	private QueryPipeline pipeline;
+
+	/** Decides how long to wait between checks for new messages. */
+	private PollScheduler scheduler;
+
+	/**
+	 * The sms pushed by the webhook that the watermark hasn't passed yet.
+	 * They never come back from getNewMessages(), so they are kept here for
+	 * the watermark to be worked out from. Guarded by itself.
+	 */
+	private final List<Query> pushed = new ArrayList<Query>();
+
+
 	/**
 	 * Creates a new PioText with the given properties.
 	 * 
@@ -65,7 +94,32 @@ public class PioText {
 	protected PioText(Properties props) {
 		String gvUsername = props.getProperty("gv_user");
 		String gvPassword = props.getProperty("gv_pass");
-		connection = new GvConnection(gvUsername, gvPassword);
+		SmsConnection gv = new GvConnection(gvUsername, gvPassword);
+		WebhookConnection webhook = null;
+		if ("webhook".equals(props.getProperty("sms_connection"))) {
+			SmsSender sender = gv;
+			String senderClass = props.getProperty("sms_sender");
+			if (senderClass != null) {
+				try {
+					sender = (SmsSender) Class.forName(senderClass).getDeclaredConstructor().newInstance();
+				} catch (Exception e) {
+					System.err.println("Error loading the sms sender. Make sure the class name is correct.");
+					e.printStackTrace();
+					System.exit(1);
+				}
+			}
+			String token = props.getProperty("webhook_token");
+			if (token == null || token.isEmpty()) {
+				System.err.println("The webhook_token property must be set to the secret the sms gateway sends. Exiting...");
+				System.exit(1);
+			}
+			// Only reachable from this machine unless another host is given
+			InetSocketAddress address = new InetSocketAddress(props.getProperty("webhook_host", "127.0.0.1"), intProperty(props, "webhook_port", 8080));
+			webhook = new WebhookConnection(address, props.getProperty("webhook_path", WebhookConnection.DEFAULT_PATH), sender, token);
+			connection = webhook;
+		} else {
+			connection = gv;
+		}
 		try {
 			handler = (MessageHandler) Class.forName(
 					props.getProperty("message_handler")).newInstance();
@@ -77,6 +131,59 @@ public class PioText {
 		}
 		handler.initialize(props);
 		messageLog = new Log(props);
+		pipeline = new QueryPipeline(handler, connection, messageLog, //
+				intProperty(props, "handler_threads", 1), //
+				intProperty(props, "sender_threads", 1), //
+				intProperty(props, "pipeline_capacity", QueryPipeline.DEFAULT_CAPACITY), HALF_HOUR);
+		if (webhook != null) {
+			// Answer each sms as it arrives, rather than at the next check
+			webhook.setListener(new WebhookConnection.Listener() {
+				@Override
+				public void received(Query query) {
+					try {
+						if (pipeline.submit(query, isNotOld(query))) {
+							synchronized (pushed) {
+								pushed.add(query);
+							}
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		String zone = props.getProperty(TableHandler.TIME_ZONE_PROP);
+		EpochConverter clock = zone == null ? EpochConverter.getDefault() : new EpochConverter(TimeZone.getTimeZone(zone));
+		scheduler = new PollScheduler(1000L * intProperty(props, "poll_min_seconds", MIN_CHECK_SECONDS), //
+				1000L * intProperty(props, "poll_max_seconds", MAX_CHECK_SECONDS), //
+				intProperty(props, "poll_budget", CHECK_BUDGET), clock, new Random());
+		String journalFile = props.getProperty("dedupe_journal");
+		if (journalFile != null) {
+			try {
+				pipeline.restore(new DedupeJournal(new File(journalFile), HALF_HOUR));
+			} catch (IOException e) {
+				System.err.println("Could not replay the dedupe journal. Recent queries may be answered again.");
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/** Returns the scheduler deciding when to check for new messages, i.e. for its metrics. */
+	public PollScheduler getScheduler() {
+		return scheduler;
+	}
+
+	/** Returns a whole number property, or defaultValue if it is missing or not a number. */
+	private static int intProperty(Properties props, String name, int defaultValue) {
+		String value = props.getProperty(name);
+		if (value == null)
+			return defaultValue;
+		try {
+			return Integer.parseInt(value.trim());
+		} catch (NumberFormatException e) {
+			System.err.println("The " + name + " property should be a number. Using " + defaultValue + ".");
+			return defaultValue;
+		}
 	}
 
 	/** Initializes the sms connection. */
@@ -89,6 +196,26 @@ public class PioText {
 		return verbose;
 	}
 
+	/**
+	 * Moves the watermark past the sms the webhook has pushed as they are
+	 * processed, and forgets those it has passed. One that is never processed,
+	 * i.e. because its reply couldn't be sent, holds the watermark back until
+	 * it is too old to answer, and is then dropped.
+	 */
+	private void advancePushedWatermark() {
+		synchronized (pushed) {
+			if (pushed.isEmpty())
+				return;
+			pipeline.advanceWatermark(pushed);
+			long watermark = pipeline.getWatermark();
+			for (Iterator<Query> i = pushed.iterator(); i.hasNext();) {
+				Query q = i.next();
+				if (q.getTimeSent().getTime() <= watermark || !isNotOld(q))
+					i.remove();
+			}
+		}
+	}
+
 	/** @return false if the query is more than a half hour old */
 	private boolean isNotOld(Query q) {
 		long diff = System.currentTimeMillis() - q.getTimeSent().getTime();
@@ -109,51 +236,24 @@ public class PioText {
 		System.out.println(string);
 	}
 
-	/**
-	 * If the query is within the last half hour, this will generate a and send
-	 * a reply, then log the query.
-	 * 
-	 * @param query
-	 *            the query to be processed
-	 * @throws ConnectionException
-	 *             if the message cannot be sent
-	 */
-	private void processQuery(Query query) throws ConnectionException {
-		if (isNotOld(query)) {
-			String response = handler.getResponse(query);
-			connection.sendSms(query.getPhoneNumber(), response);
-			query.setTimeResponded(new Date());
-			query.setResponse(response);
-			messageLog.record(query);
-			// TODO syslog sent responses
-		}
-		// TODO syslog old queries without sent responses
-	}
-
 	public void run() {
 		System.out.println("PioText is running...");
 		printlnv("-----------------------------------");
-		HashSet<Query> processed = new HashSet<Query>();
+		pipeline.start();
 		List<? extends Query> queries;
 		boolean firstTime = true;
 		while (true) {
+			int newQueries = 0;
 			try {
 				queries = connection.getNewMessages();
-				int newQueries = 0;
 				for (Query q : queries) {
-					if (!processed.contains(q)) {
+					// Blocks while the pipeline is full, so we don't fetch faster than we can reply
+					if (pipeline.submit(q, isNotOld(q)))
 						newQueries++;
-						try {
-							processQuery(q);
-							processed.add(q);
-							connection.deleteSms(q);
-							// TODO: syslog delete count
-						} catch (ConnectionException e) {
-							// TODO: retry/system log this
-							e.printStackTrace();
-						}
-					}
+					// TODO syslog old queries without sent responses
 				}
+				pipeline.advanceWatermark(queries);
+				advancePushedWatermark();
 				if ((newQueries > 0 || firstTime)) {
 					// TODO: system log this with timestamp
 					printv("%-20s", SYSOUT_FORMAT.format(new Date()));
@@ -166,10 +266,15 @@ public class PioText {
 			} catch (ConnectionException e) {
 				// TODO system log this
 				e.printStackTrace();
+			} catch (InterruptedException e) {
+				System.out
+						.println("Something has gone terribly wrong, and the PioText thread has been interrupted. Exiting...");
+				e.printStackTrace();
+				System.exit(1);
 			}
-			// sleep for a while before checking again
+			// sleep for a while before checking again, less while queries are coming in
 			try {
-				Thread.sleep(CHECK_FREQ);
+				Thread.sleep(scheduler.nextInterval(newQueries, System.currentTimeMillis()));
 			} catch (InterruptedException e) {
 				System.out
 						.println("Something has gone terribly wrong, and the PioText thread has been interrupted. Exiting...");
@@ -0,0 +1,201 @@
+package core;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.Random;
+
+import time.EpochConverter;
+
+/**
+ * Decides how long to wait between checks for new queries. While queries are
+ * coming in it checks every minInterval; each check that finds nothing
+ * doubles the wait, up to maxInterval, with some jitter so that the checks
+ * don't settle into lockstep with anything else.
+ * <p>
+ * It also learns which hours of the week are busy, from how many queries
+ * came in during the same hour in past weeks, and backs off no further than
+ * PEAK_FACTOR times minInterval during them, so the first query of a busy
+ * spell isn't left waiting for a long back off to run out.
+ * <p>
+ * However fast it would like to check, it keeps to a budget of checks per
+ * hour, so as not to overstep the provider's limits. The budget may be spent
+ * in bursts of up to a twelfth of it (five minutes' worth at an even pace).
+ * <p>
+ * Not safe for use by multiple threads, apart from the metrics.
+ */
+public class PollScheduler {
+
+	private static final long MS_PER_HOUR = 60 * 60 * 1000L;
+
+	/** The hours of the week, each with its own record of traffic. */
+	private static final int HOURS_PER_WEEK = MINUTES_PER_WEEK / 60;
+
+	/** How much further than minInterval checks may back off in a busy hour. */
+	public static final int PEAK_FACTOR = 4;
+
+	/** The queries an hour must average, over past weeks, to count as busy. */
+	private static final double PEAK_QUERIES = 1.0;
+
+	/** The weight given this week's queries when averaging an hour's traffic. */
+	private static final double ALPHA = 0.5;
+
+	/** The most each wait is shortened by at random, as a fraction of it. */
+	private static final double JITTER = 0.2;
+
+	private final long minInterval;
+
+	private final long maxInterval;
+
+	private final EpochConverter clock;
+
+	private final Random random;
+
+	/** Checks added to the budget per millisecond. */
+	private final double refillRate;
+
+	/** The most checks that may be saved up. */
+	private final double burst;
+
+	/** Checks that may be made right away, as of lastRefill. */
+	private double tokens;
+
+	private long lastRefill = -1;
+
+	/** The average queries in each hour of the week, over past weeks. */
+	private final double[] traffic = new double[HOURS_PER_WEEK];
+
+	/** The hour of the week queries are being counted for, or -1. */
+	private int currentHour = -1;
+
+	/** The queries found so far in currentHour. */
+	private int currentQueries = 0;
+
+	/** Checks in a row that found nothing. */
+	private int idleChecks = 0;
+
+	private volatile long checks = 0;
+
+	private volatile long busyChecks = 0;
+
+	private volatile long budgetWaits = 0;
+
+	private volatile long lastInterval = 0;
+
+	private volatile long totalInterval = 0;
+
+	/**
+	 * @param minInterval
+	 *            the shortest wait between checks, in milliseconds
+	 * @param maxInterval
+	 *            the longest wait between checks, in milliseconds
+	 * @param budget
+	 *            the most checks to make in an hour
+	 * @param clock
+	 *            gives the hour of the week for learning busy hours
+	 */
+	public PollScheduler(long minInterval, long maxInterval, int budget, EpochConverter clock, Random random) {
+		if (minInterval < 1 || maxInterval < minInterval || budget < 1)
+			throw new IllegalArgumentException(String.format("Cannot check every %d to %dms, %d times an hour.", minInterval, maxInterval, budget));
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+		this.clock = clock;
+		this.random = random;
+		refillRate = budget / (double) MS_PER_HOUR;
+		burst = Math.max(1.0, budget / 12.0);
+		tokens = burst;
+	}
+
+	/**
+	 * Records a check for new queries, and returns how long to wait before the
+	 * next one.
+	 *
+	 * @param newQueries
+	 *            the number of new queries the check found
+	 * @param now
+	 *            when the check was made, in epoch milliseconds
+	 * @return the wait, in milliseconds
+	 */
+	public long nextInterval(int newQueries, long now) {
+		int hour = clock.minuteOfWeek(now) / 60;
+		learn(hour, newQueries);
+
+		refill(now);
+		tokens -= 1;
+
+		long interval;
+		if (newQueries > 0) {
+			idleChecks = 0;
+			interval = minInterval;
+			busyChecks++;
+		} else {
+			idleChecks++;
+			long ceiling = isBusy(hour) ? Math.min(maxInterval, PEAK_FACTOR * minInterval) : maxInterval;
+			interval = minInterval;
+			for (int i = 0; i < idleChecks && interval < ceiling; i++)
+				interval *= 2;
+			interval = Math.min(ceiling, interval);
+			interval -= (long) (interval * JITTER * random.nextDouble());
+			interval = Math.max(minInterval, interval);
+		}
+
+		// Wait until the budget allows another check
+		if (tokens + interval * refillRate < 1) {
+			interval = (long) Math.ceil((1 - tokens) / refillRate);
+			budgetWaits++;
+		}
+
+		checks++;
+		lastInterval = interval;
+		totalInterval += interval;
+		return interval;
+	}
+
+	/** Adds the checks earned since the last refill to the budget. */
+	private void refill(long now) {
+		if (lastRefill >= 0 && now > lastRefill)
+			tokens = Math.min(burst, tokens + (now - lastRefill) * refillRate);
+		lastRefill = Math.max(lastRefill, now);
+	}
+
+	/** Counts queries towards an hour, folding in the last once it's over. */
+	private void learn(int hour, int newQueries) {
+		if (hour != currentHour) {
+			if (currentHour >= 0)
+				traffic[currentHour] = traffic[currentHour] * (1 - ALPHA) + currentQueries * ALPHA;
+			currentHour = hour;
+			currentQueries = 0;
+		}
+		currentQueries += newQueries;
+	}
+
+	/** Tests whether an hour of the week has been busy in past weeks. */
+	boolean isBusy(int hour) {
+		return traffic[hour] >= PEAK_QUERIES;
+	}
+
+	/** Returns the number of checks made. */
+	public long getChecks() {
+		return checks;
+	}
+
+	/** Returns the number of checks that found new queries. */
+	public long getBusyChecks() {
+		return busyChecks;
+	}
+
+	/** Returns the number of waits stretched to keep to the budget. */
+	public long getBudgetWaits() {
+		return budgetWaits;
+	}
+
+	/** Returns the last wait chosen, in milliseconds. */
+	public long getLastInterval() {
+		return lastInterval;
+	}
+
+	/** Returns the average wait chosen, in milliseconds, or 0 before any check. */
+	public long getMeanInterval() {
+		long n = checks;
+		return n == 0 ? 0 : totalInterval / n;
+	}
+}
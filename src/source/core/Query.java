@@ -30,6 +30,9 @@ public class Query {
 	/** The appropriate response to the message. */
 	private String response;
 
+	/** Identifies the message, from when it was sent, who by and what it said. */
+	private final long fingerprint;
+
 	/**
 	 * Create a new query, ready to be processed.
 	 * 
@@ -45,7 +48,29 @@ public class Query {
 		this.timeReceived = new Date();
 		this.body = body;
 		this.phoneNumber = phoneNumber;
+		this.fingerprint = fingerprint(timeSent.getTime(), phoneNumber, body);
+	}
 
+	/**
+	 * Hashes the fields two queries are compared on into 64 bits, with FNV-1a
+	 * then a final mix so that every bit depends on every field.
+	 */
+	private static long fingerprint(long timeSent, String phoneNumber, String body) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < 64; i += 8)
+			hash = (hash ^ (timeSent >>> i & 0xff)) * 0x100000001b3L;
+		for (int i = 0; i < phoneNumber.length(); i++)
+			hash = (hash ^ phoneNumber.charAt(i)) * 0x100000001b3L;
+		// Keeps a number running into the body from matching a shorter one
+		hash = (hash ^ 0xffff) * 0x100000001b3L;
+		for (int i = 0; i < body.length(); i++)
+			hash = (hash ^ body.charAt(i)) * 0x100000001b3L;
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
 	}
 
 	// This is important for tracking which queries have been processed by the
@@ -67,6 +92,15 @@ public class Query {
 		return false;
 	}
 
+	/**
+	 * Returns a 64 bit hash of the fields queries are compared on, for telling
+	 * queries apart without keeping them around. Equal queries have equal
+	 * fingerprints.
+	 */
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
 	public String getBody() {
 		return body;
 	}
@@ -99,8 +133,7 @@ public class Query {
 	// system
 	@Override
 	public int hashCode() {
-		String prehash = timeSent.getTime() + phoneNumber;
-		return prehash.hashCode();
+		return (int) (fingerprint ^ fingerprint >>> 32);
 	}
 
 	public void setKeyword(String keyword) {
@@ -0,0 +1,327 @@
+package core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import persistance.DedupeJournal;
+import persistance.Log;
+import sms.ConnectionException;
+import sms.SmsConnection;
+import utils.FingerprintSet;
+
+/**
+ * Answers queries in stages, each with its own threads, so that one slow
+ * reply doesn't hold up the rest: queries are handled, then their replies
+ * sent, then they are deleted from the service and logged. Bounded queues
+ * sit between the stages, so if sending falls behind the queues fill up and
+ * submit() blocks, slowing down whoever is fetching queries rather than
+ * piling them up in memory.
+ * <p>
+ * Each handler thread answers whatever queries are waiting when it wakes as
+ * one batch, so that queries asking the same thing share one answer. Several
+ * replies may be sent at once, relying on the connection being safe for use
+ * by multiple threads, as every SmsConnection must be. Logging is done on a
+ * single thread.
+ * <p>
+ * A query that fails to be handled or sent is dropped from the pipeline, and
+ * will be taken again if it comes back in a later poll. Once its reply has
+ * been sent it isn't taken again for rememberFor, by which time it should be
+ * too old to answer; only fingerprints of processed queries are kept, so
+ * memory doesn't grow with the number answered.
+ */
+public class QueryPipeline {
+
+	/** The default number of queries each stage may have waiting. */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/** The slots in each generation of the set of processed queries. */
+	private static final int PROCESSED_CAPACITY = 1 << 14;
+
+	/** The most queries a handler thread answers at once. */
+	private static final int MAX_BATCH = 64;
+
+	private final MessageHandler handler;
+
+	private final SmsConnection connection;
+
+	private final Log messageLog;
+
+	private final BlockingQueue<Query> toHandle;
+
+	private final BlockingQueue<Query> toSend;
+
+	private final BlockingQueue<Query> toDelete;
+
+	private final BlockingQueue<Query> toLog;
+
+	/** The queries in the pipeline. */
+	private final Set<Query> pending = Collections.newSetFromMap(new ConcurrentHashMap<Query, Boolean>());
+
+	/** The fingerprints of queries that have been answered, or were too old to answer. */
+	private final FingerprintSet processed;
+
+	/** Where processed queries are recorded to survive a restart, or null. */
+	private volatile DedupeJournal journal;
+
+	/** Every query fetched that was sent up to and including this time had been processed. */
+	private volatile long watermark = DedupeJournal.NO_WATERMARK;
+
+	private final List<Thread> threads = new ArrayList<Thread>();
+
+	private final int handlers;
+
+	private final int senders;
+
+	/**
+	 * @param handlers
+	 *            the number of threads answering queries
+	 * @param senders
+	 *            the number of threads sending replies and deleting queries
+	 * @param capacity
+	 *            the number of queries each stage may have waiting
+	 * @param rememberFor
+	 *            how long to remember a query has been processed, in ms. A
+	 *            query coming back after this must be old enough not to
+	 *            answer.
+	 */
+	public QueryPipeline(MessageHandler handler, SmsConnection connection, Log messageLog, int handlers, int senders, int capacity, long rememberFor) {
+		if (handlers < 1 || senders < 1 || capacity < 1)
+			throw new IllegalArgumentException(String.format("A pipeline needs at least one thread per stage and room for one query, not %d, %d and %d.", handlers, senders, capacity));
+		this.handler = handler;
+		this.connection = connection;
+		this.messageLog = messageLog;
+		this.handlers = handlers;
+		this.senders = senders;
+		toHandle = new ArrayBlockingQueue<Query>(capacity);
+		toSend = new ArrayBlockingQueue<Query>(capacity);
+		toDelete = new ArrayBlockingQueue<Query>(capacity);
+		toLog = new ArrayBlockingQueue<Query>(capacity);
+		processed = new FingerprintSet(rememberFor, PROCESSED_CAPACITY);
+	}
+
+	/** Starts the threads for every stage. */
+	public synchronized void start() {
+		if (!threads.isEmpty())
+			throw new IllegalStateException("The pipeline is already running.");
+		for (int i = 0; i < handlers; i++) {
+			startThread("handler " + i, new Stage(toHandle) {
+				@Override
+				void process(Query query) throws InterruptedException {
+					List<Query> batch = new ArrayList<Query>();
+					batch.add(query);
+					toHandle.drainTo(batch, MAX_BATCH - 1);
+					handle(batch);
+				}
+			});
+		}
+		for (int i = 0; i < senders; i++) {
+			startThread("sender " + i, new Stage(toSend) {
+				@Override
+				void process(Query query) throws InterruptedException {
+					send(query);
+				}
+			});
+			startThread("deleter " + i, new Stage(toDelete) {
+				@Override
+				void process(Query query) throws InterruptedException {
+					delete(query);
+				}
+			});
+		}
+		startThread("logger", new Stage(toLog) {
+			@Override
+			void process(Query query) {
+				messageLog.record(query);
+				pending.remove(query);
+			}
+		});
+	}
+
+	/** Stops every stage. Queries still in the pipeline are dropped. */
+	public synchronized void stop() {
+		for (Thread t : threads)
+			t.interrupt();
+		threads.clear();
+	}
+
+	/**
+	 * Remembers the queries processed before a restart, from journal, and
+	 * records those processed from now on to it. Call before start().
+	 *
+	 * @return the journal's watermark, or DedupeJournal.NO_WATERMARK
+	 * @throws IOException
+	 *             if the journal cannot be read or written
+	 */
+	public long restore(DedupeJournal journal) throws IOException {
+		watermark = journal.replay(processed, System.currentTimeMillis());
+		this.journal = journal;
+		return watermark;
+	}
+
+	/**
+	 * Moves the watermark up to just before the oldest of queries, as fetched
+	 * together, that is still to be processed, or to the newest of them if
+	 * none are, and journals it.
+	 * <p>
+	 * The watermark records progress, and is never used to skip a query.
+	 * Whether a query has been processed is decided by its fingerprint
+	 * alone, since an older query may turn up after newer ones have been
+	 * processed, i.e. if a fetch returns only part of the inbox.
+	 */
+	public synchronized void advanceWatermark(List<? extends Query> queries) {
+		if (queries.isEmpty())
+			return;
+		long newest = watermark, oldestPending = Long.MAX_VALUE;
+		for (Query q : queries) {
+			long sent = q.getTimeSent().getTime();
+			if (isProcessed(q))
+				newest = Math.max(newest, sent);
+			else
+				oldestPending = Math.min(oldestPending, sent);
+		}
+		long mark = Math.min(newest, oldestPending - 1);
+		if (mark > watermark) {
+			watermark = mark;
+			DedupeJournal j = journal;
+			if (j != null)
+				j.watermark(mark, System.currentTimeMillis());
+		}
+	}
+
+	/** Returns the watermark, or DedupeJournal.NO_WATERMARK if there isn't one yet. */
+	public long getWatermark() {
+		return watermark;
+	}
+
+	private void startThread(String name, Runnable stage) {
+		Thread t = new Thread(stage, "QueryPipeline " + name);
+		t.setDaemon(true);
+		t.start();
+		threads.add(t);
+	}
+
+	/**
+	 * Queues a query, unless it is already in the pipeline or has been
+	 * answered. Blocks while the first stage is full.
+	 *
+	 * @param answer
+	 *            false to delete the query without answering it, i.e.
+	 *            because it is too old
+	 * @return true if the query was queued
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for room
+	 */
+	public boolean submit(Query query, boolean answer) throws InterruptedException {
+		if (processed.contains(query.getFingerprint(), System.currentTimeMillis()) || !pending.add(query))
+			return false;
+		try {
+			if (answer) {
+				toHandle.put(query);
+			} else {
+				markProcessed(query, System.currentTimeMillis());
+				toDelete.put(query);
+			}
+		} catch (InterruptedException e) {
+			pending.remove(query);
+			throw e;
+		}
+		return true;
+	}
+
+	/** Returns the number of queries in the pipeline. */
+	public int getPending() {
+		return pending.size();
+	}
+
+	/** Tests whether a query has been answered, or deleted unanswered. */
+	public boolean isProcessed(Query query) {
+		return processed.contains(query.getFingerprint(), System.currentTimeMillis());
+	}
+
+	private void markProcessed(Query query, long time) {
+		processed.add(query.getFingerprint(), time);
+		DedupeJournal j = journal;
+		if (j != null)
+			j.processed(query.getFingerprint(), time);
+	}
+
+	private void handle(List<Query> batch) throws InterruptedException {
+		List<String> responses;
+		try {
+			responses = handler.getResponses(batch);
+		} catch (RuntimeException e) {
+			System.err.println("Could not answer " + batch.size() + " queries. They will be tried again on the next poll.");
+			e.printStackTrace();
+			pending.removeAll(batch);
+			return;
+		}
+		for (int i = 0; i < batch.size(); i++) {
+			batch.get(i).setResponse(responses.get(i));
+			toSend.put(batch.get(i));
+		}
+	}
+
+	private void send(Query query) throws InterruptedException {
+		try {
+			connection.sendSms(query.getPhoneNumber(), query.getResponse());
+		} catch (ConnectionException e) {
+			// TODO: retry/system log this
+			e.printStackTrace();
+			pending.remove(query);
+			return;
+		}
+		query.setTimeResponded(new Date());
+		markProcessed(query, query.getTimeResponded().getTime());
+		toDelete.put(query);
+	}
+
+	private void delete(Query query) throws InterruptedException {
+		try {
+			connection.deleteSms(query);
+		} catch (ConnectionException e) {
+			// TODO: retry/system log this
+			e.printStackTrace();
+		}
+		if (query.getResponse() != null)
+			toLog.put(query);
+		else
+			pending.remove(query);
+	}
+
+	/** Takes queries from a queue, one at a time, until interrupted. */
+	private abstract class Stage implements Runnable {
+
+		private final BlockingQueue<Query> queue;
+
+		Stage(BlockingQueue<Query> queue) {
+			this.queue = queue;
+		}
+
+		abstract void process(Query query) throws InterruptedException;
+
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					Query query = queue.take();
+					try {
+						process(query);
+					} catch (RuntimeException e) {
+						// Keep the stage running for the queries after this one
+						e.printStackTrace();
+						pending.remove(query);
+					}
+				}
+			} catch (InterruptedException e) {
+				// Stopped
+			}
+		}
+	}
+}
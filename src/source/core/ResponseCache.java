@@ -0,0 +1,151 @@
+package core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers recent responses, so that everyone who asks the same thing in the
+ * same minute shares one lookup and one rendering. A response is keyed by
+ * everything that goes into it: the keyword, and destination for a journey,
+ * the minute it was asked in, the characters it may take up and the version
+ * of the delays laid over the schedule.
+ * <p>
+ * The cache holds at most a fixed number of responses, dropping the least
+ * recently used. It is invalidated whenever the schedule changes. A response
+ * rendered from the old schedule, but not put until after the change, is
+ * dropped rather than cached, since it is put with the generation read
+ * before rendering. All methods are safe to call from multiple threads.
+ */
+public class ResponseCache {
+
+	/** Everything a response depends on. */
+	private static final class Key {
+
+		final String keyword;
+
+		final String destination;
+
+		final long minute;
+
+		final int maxLength;
+
+		final long delays;
+
+		Key(String keyword, String destination, long minute, int maxLength, long delays) {
+			this.keyword = keyword;
+			this.destination = destination;
+			this.minute = minute;
+			this.maxLength = maxLength;
+			this.delays = delays;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key))
+				return false;
+			Key k = (Key) obj;
+			return minute == k.minute && maxLength == k.maxLength && delays == k.delays && equal(keyword, k.keyword) && equal(destination, k.destination);
+		}
+
+		private static boolean equal(String s1, String s2) {
+			return s1 == null ? s2 == null : s1.equals(s2);
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = 1;
+			hash = hash * 31 + (keyword == null ? 0 : keyword.hashCode());
+			hash = hash * 31 + (destination == null ? 0 : destination.hashCode());
+			hash = hash * 31 + (int) (minute ^ minute >>> 32);
+			hash = hash * 31 + maxLength;
+			hash = hash * 31 + (int) (delays ^ delays >>> 32);
+			return hash;
+		}
+	}
+
+	private final Map<Key, String> responses;
+
+	/** Bumped by each invalidation. */
+	private long generation = 0;
+
+	private long hits = 0;
+
+	private long misses = 0;
+
+	/**
+	 * @param capacity
+	 *            the most responses to hold at once
+	 */
+	public ResponseCache(final int capacity) {
+		// Access order, so the eldest entry is the least recently used
+		responses = new LinkedHashMap<Key, String>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the generation, to be read before looking at the schedule and
+	 * passed to put() along with the response rendered from it.
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * Returns the response cached for a query, or null if there isn't one.
+	 *
+	 * @param keyword
+	 *            the query's keyword, or null if it had none
+	 * @param destination
+	 *            the keyword of the stop the query asks to go to, or null
+	 * @param minute
+	 *            the minute the query was asked in, since the epoch
+	 * @param maxLength
+	 *            the most characters the response may take up
+	 * @param delays
+	 *            the version of the delays the response is for
+	 */
+	public synchronized String get(String keyword, String destination, long minute, int maxLength, long delays) {
+		String response = responses.get(new Key(keyword, destination, minute, maxLength, delays));
+		if (response == null)
+			misses++;
+		else
+			hits++;
+		return response;
+	}
+
+	/**
+	 * Caches a response, unless the cache has been invalidated since
+	 * generation was read.
+	 */
+	public synchronized void put(String keyword, String destination, long minute, int maxLength, long delays, String response, long generation) {
+		if (generation == this.generation)
+			responses.put(new Key(keyword, destination, minute, maxLength, delays), response);
+	}
+
+	/** Drops every response, i.e. because the schedule has changed. */
+	public synchronized void invalidate() {
+		responses.clear();
+		generation++;
+	}
+
+	/** Returns the number of responses held. */
+	public synchronized int size() {
+		return responses.size();
+	}
+
+	/** Returns the number of calls to get() that found a response. */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Returns the number of calls to get() that didn't. */
+	public synchronized long getMisses() {
+		return misses;
+	}
+}
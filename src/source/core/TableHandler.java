@@ -1,16 +1,33 @@
 package core;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.TimeZone;
 
+import persistance.schedule.Journey;
+import persistance.schedule.JourneySchedule;
 import persistance.schedule.Schedule;
 import persistance.schedule.Stop;
-import persistance.schedule.store.DefaultSchedule;
+import persistance.schedule.store.ConnectionSchedule;
+import persistance.schedule.store.DelayFeed;
+import persistance.schedule.store.DelayOverlay;
 import persistance.schedule.store.FileParser;
+import persistance.schedule.store.FrequencySchedule;
+import persistance.schedule.store.IndexedSchedule;
+import persistance.schedule.store.MappedSchedule;
 import time.Day;
+import time.EpochConverter;
+import time.ServiceCalendar;
+import time.ServiceTable;
 import time.Time;
+import time.TimeRenderer;
 import time.TimeRange;
+import utils.FileWatcher;
 
 /** A message handler that performs a simple lookup in from a weekly schedule. */
 public class TableHandler extends MessageHandler {
@@ -30,8 +47,166 @@ public class TableHandler extends MessageHandler {
 	 */
 	private static final int GAP_MINUTES = 120;
 
-	/** The schedule for stop lookups. */
-	private Schedule schedule;
+	/** The message that is displayed when no journey joins two stops. */
+	private static final String NO_JOURNEYS = "\n(no service)";
+
+	/** The most journeys listed in answer to an "A to B" query. */
+	private static final int MAX_JOURNEYS = 10;
+
+	/** The property naming the time zone the schedule is written in. */
+	public static final String TIME_ZONE_PROP = "time_zone";
+
+	/** The property that turns on saving and mapping a binary snapshot of the schedule file. */
+	public static final String SNAPSHOT_PROP = "schedule_snapshot";
+
+	/** Added to the schedule file's name to name its snapshot. */
+	public static final String SNAPSHOT_SUFFIX = ".snapshot";
+
+	/** The property that turns on reloading the schedule file whenever it changes. */
+	public static final String WATCH_PROP = "watch_schedule";
+
+	/** The property naming the file of holidays and other dates that don't run the usual week. */
+	public static final String CALENDAR_PROP = "service_calendar";
+
+	/** The property naming a file of delays, which is read again whenever it changes. */
+	public static final String DELAYS_PROP = "delay_file";
+
+	private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
+	/** The most responses cached at once. */
+	private static final int CACHE_SIZE = 1024;
+
+	/** The number of dates, from the day before it is compiled, that the service calendar is compiled for. */
+	private static final int CALENDAR_DAYS = 120;
+
+	/** The calendar is compiled again once a query comes within this many days of the end of it. */
+	private static final int RENEW_DAYS = 30;
+
+	/** The most weeks, besides the usual one, kept made at once. */
+	private static final int MAX_WEEKS = 8;
+
+	/**
+	 * The schedule for one week of the service calendar, and its journey
+	 * planner once someone has asked for a journey that week. The planner
+	 * chains every stop of the week into trips, and most queries are for
+	 * single stops, so it isn't made before then.
+	 */
+	private static final class Week {
+
+		final Schedule schedule;
+
+		private volatile JourneySchedule journeys;
+
+		Week(Schedule schedule) {
+			this.schedule = schedule;
+		}
+
+		/** Returns the journey planner, making it if need be. */
+		JourneySchedule getJourneys() {
+			JourneySchedule planner = journeys;
+			if (planner == null) {
+				// Threads asking at once may each make one; any of them will do
+				planner = plan(schedule);
+				journeys = planner;
+			}
+			return planner;
+		}
+	}
+
+	/**
+	 * A schedule along with the keywords loaded from the same file, and the
+	 * service calendar it runs to. Replaced whole, so a query always sees a
+	 * matching set.
+	 * <p>
+	 * Only the usual week is kept throughout. Any other week of the calendar
+	 * is made from it the first time a query falls in that week, and the few
+	 * used most recently are kept.
+	 */
+	private static final class Timetable {
+
+		private final Week usual;
+
+		/** The other weeks made so far, by week of days, least recently used first. Guarded by itself. */
+		private final Map<Integer, Week> weeks = new LinkedHashMap<Integer, Week>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Week> eldest) {
+				return size() > MAX_WEEKS;
+			}
+		};
+
+		/** The service calendar, with no rules if every week runs as usual. */
+		final ServiceCalendar calendar;
+
+		final ServiceTable days;
+
+		final Keywords keywords;
+
+		Timetable(Week usual, ServiceCalendar calendar, ServiceTable days, Keywords keywords) {
+			this.usual = usual;
+			this.calendar = calendar;
+			this.days = days;
+			this.keywords = keywords;
+		}
+
+		/** Returns the week starting on date, in days since the epoch, making it if need be. */
+		Week weekOn(int date) {
+			int w = days.getWeek(date);
+			if (w == ServiceTable.USUAL_WEEK)
+				return usual;
+			synchronized (weeks) {
+				Week week = weeks.get(w);
+				if (week != null)
+					return week;
+			}
+			// Made outside the lock, so queries in other weeks don't wait for it
+			Week made = new Week(rearrange(usual.schedule, days, w));
+			synchronized (weeks) {
+				Week week = weeks.get(w);
+				if (week == null) {
+					week = made;
+					weeks.put(w, week);
+				}
+				return week;
+			}
+		}
+
+		/** Tests whether a query on date is near enough the end of days for the calendar to be compiled again. */
+		boolean nearsHorizon(int date) {
+			return calendar.size() > 0 && date + RENEW_DAYS >= days.getFirst() + days.getDays();
+		}
+
+		/** Returns this timetable running to a newly compiled table of days. */
+		Timetable renew(ServiceTable days) {
+			return new Timetable(usual, calendar, days, keywords);
+		}
+	}
+
+	/** The schedule and keywords for stop lookups, swapped out when the schedule file is reloaded. */
+	private volatile Timetable timetable = new Timetable(new Week(null), new ServiceCalendar(), ServiceTable.USUAL, keywords);
+
+	/** Held to swap in a new timetable, so a renewed calendar never replaces a reloaded schedule. */
+	private final Object timetableLock = new Object();
+
+	/** The service calendar file, or null if every week runs as usual. */
+	private File calendarFile;
+
+	/** Whether to load the schedule from, and save it to, a snapshot file. */
+	private boolean useSnapshot = false;
+
+	/** Reloads the schedule file when it changes, if that is turned on. */
+	private FileWatcher watcher;
+
+	/** The delays reported, laid over whichever schedule is current. */
+	private final DelayOverlay delays = new DelayOverlay();
+
+	/** Reads the delay file again when it changes, if there is one. */
+	private FileWatcher delayWatcher;
+
+	/** Responses already rendered, for others asking the same thing in the same minute. */
+	private final ResponseCache responses = new ResponseCache(CACHE_SIZE);
+
+	/** Maps request times onto the schedule's week. */
+	private EpochConverter clock = EpochConverter.getDefault();
 
 	/**
 	 * This method generates a formatted list of stop times seperated by
@@ -47,6 +222,8 @@ public class TableHandler extends MessageHandler {
 	 * 
 	 * @param stops
 	 *            the list of stops to be formatted
+	 * @param keywords
+	 *            the keywords the stops were loaded with
 	 * @param time
 	 *            the current time (used for calculating schedule breaks)
 	 * @param chars
@@ -55,10 +232,11 @@ public class TableHandler extends MessageHandler {
 	 *            true if stops should be displayed in their short format
 	 * @return a the list of stops
 	 */
-	private String formatStops(Iterable<Stop> stops, Date time,
+	private String formatStops(Iterable<Stop> stops, Keywords keywords, Date time,
 			int maxLength, boolean shortFormat) {
-		StringBuilder response = new StringBuilder();
-		Time previousStopTime = new Time(time.getTime()); // used for calculating breaks
+		StringBuilder response = new StringBuilder(Math.max(maxLength, 0));
+		TimeRenderer renderer = TimeRenderer.getInstance();
+		Time previousStopTime = clock.toTime(time.getTime()); // used for calculating breaks
 		for (Stop s : stops) {
 			Time currentStopTime = s.getTime();
 			// calculate if there is a break in Pio Express service
@@ -67,25 +245,26 @@ public class TableHandler extends MessageHandler {
 				if ((response.length() + BREAK_NOTICE.length() + 1) > maxLength) {
 					break;
 				} else {
-					response.append("\n" + BREAK_NOTICE);
+					response.append('\n').append(BREAK_NOTICE);
 				}
 			}
-			String line;
+			int lineStart = response.length();
+			response.append('\n');
+			renderer.append(response, currentStopTime, false, false);
 			if (shortFormat) { // e.g. 9:23pm i
-				line = "\n" + currentStopTime.toString(false);
-				if (!s.getDirection().getMarker().isEmpty()) {
-					line += " " + s.getDirection().getMarker();
+				String marker = s.getDirection().getMarker();
+				if (!marker.isEmpty()) {
+					response.append(' ').append(marker);
 				}
 			} else { // long format e.g. 9:23pm @ Fred Meyer's
 				String location = keywords.getDefinition(s.getKeyword());
-				line = String.format("\n%s @ %s", currentStopTime.toString(),
-						location);
+				response.append(" @ ").append(location);
 			}
 			// don't exceed the boundries of one sms
-			if (response.length() + line.length() > maxLength) {
+			if (response.length() > maxLength) {
+				response.setLength(lineStart);
 				break;
 			} else {
-				response.append(line);
 				previousStopTime = currentStopTime;
 			}
 		}
@@ -103,10 +282,13 @@ public class TableHandler extends MessageHandler {
 	 * @return a formatted list of all stops in the schedule
 	 */
 	String getAllStops(Date time, int maxLength) {
-		Time requestTime = new Time(time.getTime());
+		Time requestTime = clock.toTime(time.getTime());
 		TimeRange range = new TimeRange(requestTime, requestTime.addDays(1));
+		int date = clock.epochDay(time.getTime());
+		Timetable t = timetableOn(date);
+		Schedule schedule = delays.apply(t.weekOn(date).schedule, startOfMinute(time));
 		Iterable<Stop> stops = schedule.getStops(range);
-		String stopList = formatStops(stops, time, maxLength, false);
+		String stopList = formatStops(stops, t.keywords, time, maxLength, false);
 		return stopList;
 	}
 
@@ -123,16 +305,82 @@ public class TableHandler extends MessageHandler {
 	 * @return a formatted list of times the bus will be at the stop
 	 */
 	String getOneStop(Date time, String keyword, int maxLength) {
+		int date = clock.epochDay(time.getTime());
+		Timetable t = timetableOn(date);
 		// add one location declaration, because this is single stop
-		String response = "\n@ " + keywords.getDefinition(keyword);
+		String response = "\n@ " + t.keywords.getDefinition(keyword);
 		// get list of stops
-		Time requestTime = new Time(time.getTime());
+		Time requestTime = clock.toTime(time.getTime());
+		Schedule schedule = delays.apply(t.weekOn(date).schedule, startOfMinute(time));
 		Iterable<Stop> stops = schedule.getNextStops(keyword, requestTime, 20);
 		int charactersLeft = maxLength - response.length();
-		response += formatStops(stops, time, charactersLeft, true);
+		response += formatStops(stops, t.keywords, time, charactersLeft, true);
 		return response;
 	}
 
+	/**
+	 * A helper method returning a formatted list of the next journeys between
+	 * two stops, one per line, e.g.
+	 * 
+	 * <pre>
+	 * &#64; Law School to SW 6th &amp; Salmon
+	 * 09:43am o - 10:05am
+	 * </pre>
+	 * 
+	 * @param time
+	 *            the time after which journeys should leave
+	 * @param from
+	 *            the keyword of the stop to leave from
+	 * @param to
+	 *            the keyword of the stop to arrive at
+	 * @param maxLength
+	 *            the maximum length of the return String
+	 * @return a formatted list of journeys
+	 */
+	String getJourneys(Date time, String from, String to, int maxLength) {
+		int date = clock.epochDay(time.getTime());
+		Timetable t = timetableOn(date);
+		StringBuilder response = new StringBuilder();
+		response.append("\n@ ").append(t.keywords.getDefinition(from)).append(" to ").append(t.keywords.getDefinition(to));
+		TimeRenderer renderer = TimeRenderer.getInstance();
+		Time start = clock.toTime(time.getTime());
+		Time departAfter = start;
+		JourneySchedule schedule = t.weekOn(date).getJourneys();
+		long now = startOfMinute(time);
+		int found = 0;
+		while (found < MAX_JOURNEYS) {
+			Journey j = schedule.getJourney(from, to, departAfter);
+			if (j == null)
+				break;
+			int lineStart = response.length();
+			response.append('\n');
+			// Shown as late as the stops at either end are running, and a journey leaving late arrives at least as late
+			int departureLate = delays.getMinutesLate(j.getDeparture(), now);
+			int arrivalLate = Math.max(departureLate, delays.getMinutesLate(j.getArrival(), now));
+			renderer.append(response, j.getDeparture().getTime().addMinutes(departureLate), false, false);
+			String marker = j.getDeparture().getDirection().getMarker();
+			if (!marker.isEmpty())
+				response.append(' ').append(marker);
+			response.append(" - ");
+			renderer.append(response, j.getArrival().getTime().addMinutes(arrivalLate), false, false);
+			if (j.getTransfers() > 0)
+				response.append(" (").append(j.getTransfers()).append(j.getTransfers() == 1 ? " change)" : " changes)");
+			if (response.length() > maxLength) {
+				response.setLength(lineStart);
+				break;
+			}
+			found++;
+			// Don't list the same departures again after wrapping around the week
+			Time next = j.getDeparture().getTime().addMinutes(1);
+			if (start.minutesUntil(next) <= start.minutesUntil(departAfter))
+				break;
+			departAfter = next;
+		}
+		if (found == 0 && response.length() + NO_JOURNEYS.length() <= maxLength)
+			response.append(NO_JOURNEYS);
+		return response.toString();
+	}
+
 	/**
 	 * Loads a schedule from a file. This should throw some sort of exception...
 	 * Also, it sets up all other necessary internal workings of this handler.
@@ -143,50 +391,353 @@ public class TableHandler extends MessageHandler {
 	 *            the file to load a schedule from
 	 */
 	void initialize(File file) {
-		keywords.add(ALL_KEYWORD, ALL_DEFINITION);
-		DefaultSchedule sched = new DefaultSchedule();
-		new FileParser(sched, keywords, file).parse();
-		this.schedule = sched;
+		Timetable t = load(file, false);
+		synchronized (timetableLock) {
+			timetable = t;
+		}
+		responses.invalidate();
+	}
+
+	/**
+	 * Loads a schedule from a file, running it according to a service
+	 * calendar.
+	 * 
+	 * @param file
+	 *            the file to load a schedule from
+	 * @param calendar
+	 *            the service calendar, or null to run every week as usual
+	 */
+	void initialize(File file, File calendar) {
+		calendarFile = calendar;
+		initialize(file);
+	}
+
+	/**
+	 * Parses the schedule file again and, if every line of it makes sense,
+	 * swaps it in for the current schedule. Queries being answered carry on
+	 * with whichever schedule they started with.
+	 * 
+	 * @param file
+	 *            the file to load a schedule from
+	 * @return true if the new schedule was swapped in, false if the old one
+	 *         was kept
+	 */
+	boolean reload(File file) {
+		Timetable t;
+		try {
+			t = load(file, true);
+		} catch (RuntimeException e) {
+			// i.e. the file is missing, part way through being replaced
+			System.err.println("Could not reload the schedule from " + file + ", keeping the old one.");
+			e.printStackTrace();
+			return false;
+		}
+		if (t == null)
+			return false;
+		synchronized (timetableLock) {
+			timetable = t;
+		}
+		responses.invalidate();
+		return true;
+	}
+
+	/**
+	 * Loads a schedule and its keywords from file, or from its snapshot if
+	 * snapshots are turned on and it is up to date.
+	 * 
+	 * @param strict
+	 *            if true, return null rather than a schedule with errors in it
+	 */
+	private Timetable load(File file, boolean strict) {
+		ServiceCalendar calendar = loadCalendar(strict);
+		if (calendar == null)
+			return null;
+		Keywords words = createTableKeywords();
+		long checksum = 0;
+		File snapshot = new File(file.getPath() + SNAPSHOT_SUFFIX);
+		if (useSnapshot) {
+			try {
+				checksum = MappedSchedule.checksum(file);
+				MappedSchedule mapped = MappedSchedule.open(snapshot, checksum);
+				if (mapped != null) {
+					mapped.addDefinitionsTo(words);
+					return createTimetable(mapped, calendar, words);
+				}
+			} catch (IOException e) {
+				// The parser will complain about the file below
+			}
+		}
+
+		FrequencySchedule sched = new FrequencySchedule(new IndexedSchedule());
+		FileParser parser = new FileParser(sched, words, file);
+		parser.parse();
+		if (strict && parser.getErrorCount() > 0) {
+			System.err.printf("Found %d errors reloading the schedule from %s, keeping the old one.%n", parser.getErrorCount(), file);
+			return null;
+		}
+		// Frequencies stay as they are; the snapshot alone needs every stop listed out
+		FrequencySchedule frozen = sched.freeze();
+		// Only snapshot a clean parse, so errors get reported again on the next start
+		if (useSnapshot && parser.getErrorCount() == 0) {
+			try {
+				MappedSchedule.write(snapshot, checksum, frozen.compile(), words);
+			} catch (IOException e) {
+				System.err.println("Could not save a snapshot of the schedule. It will be parsed again on the next start.");
+				e.printStackTrace();
+			}
+		}
+		return createTimetable(frozen, calendar, words);
+	}
+
+	/**
+	 * Reads the service calendar, or returns one with no rules if there is
+	 * none.
+	 * 
+	 * @param strict
+	 *            if true, return null rather than the usual week if the
+	 *            calendar can't be read
+	 */
+	private ServiceCalendar loadCalendar(boolean strict) {
+		if (calendarFile == null)
+			return new ServiceCalendar();
+		try {
+			return ServiceCalendar.read(calendarFile);
+		} catch (IOException e) {
+			if (strict) {
+				System.err.println("Could not read the service calendar from " + calendarFile + ", keeping the old schedule.");
+			} else {
+				System.err.println("Could not read the service calendar from " + calendarFile + ". Every week will run as usual.");
+			}
+			e.printStackTrace();
+			return strict ? null : new ServiceCalendar();
+		}
+	}
+
+	/**
+	 * Compiles calendar from yesterday on, for CALENDAR_DAYS or until well
+	 * past date if that is further.
+	 */
+	private ServiceTable compile(ServiceCalendar calendar, int date) {
+		if (calendar.size() == 0)
+			return ServiceTable.USUAL;
+		int first = clock.epochDay(System.currentTimeMillis()) - 1;
+		return calendar.compile(first, Math.max(CALENDAR_DAYS, date + RENEW_DAYS + 1 - first));
+	}
+
+	private Timetable createTimetable(Schedule schedule, ServiceCalendar calendar, Keywords words) {
+		return new Timetable(new Week(schedule), calendar, compile(calendar, clock.epochDay(System.currentTimeMillis())), words);
+	}
+
+	/**
+	 * Returns the current timetable for a query on date, first compiling the
+	 * service calendar further ahead if date is getting near the end of it.
+	 */
+	private Timetable timetableOn(int date) {
+		Timetable t = timetable;
+		if (!t.nearsHorizon(date))
+			return t;
+		synchronized (timetableLock) {
+			// Unless another query, or a reload, got here first
+			if (timetable == t) {
+				timetable = t.renew(compile(t.calendar, date));
+				responses.invalidate();
+			}
+			return timetable;
+		}
+	}
+
+	/**
+	 * Copies schedule, running on each day of the week the service that week
+	 * of days calls for. Days run from midnight to midnight, so the stops of
+	 * an overnight schedule after midnight go with the day they fall on.
+	 */
+	private static Schedule rearrange(Schedule schedule, ServiceTable days, int week) {
+		IndexedSchedule copy = new IndexedSchedule();
+		for (Day d : Day.values()) {
+			int service = days.getService(week, d);
+			if (service == ServiceCalendar.NO_SERVICE)
+				continue;
+			Time start = Time.valueOf(service * Time.MINUTES_PER_DAY);
+			for (Stop s : schedule.getStops(new TimeRange(start, start.addDays(1))))
+				copy.addStop(new Stop(s.getKeyword(), s.getTime().addDays(d.getIndex() - service), s.getDirection()));
+		}
+		return copy.freeze();
+	}
+
+	/**
+	 * Adds journey planning to a schedule. The schedule file lists only stops,
+	 * so they are chained into trips as though one shuttle made them all,
+	 * breaking wherever service does.
+	 */
+	private static JourneySchedule plan(Schedule schedule) {
+		return new ConnectionSchedule(schedule, ConnectionSchedule.chainStops(schedule, GAP_MINUTES));
+	}
+
+	/**
+	 * Starts reloading the schedule from file, on a background thread,
+	 * whenever the file changes.
+	 */
+	void watch(final File file) throws IOException {
+		watcher = new FileWatcher(file, new Runnable() {
+			@Override
+			public void run() {
+				reload(file);
+			}
+		});
+		watcher.start();
+	}
+
+	/** Sets the time zone the schedule is written in, as the time_zone property does. */
+	void setTimeZone(TimeZone zone) {
+		clock = new EpochConverter(zone);
+		setHeaderTimeZone(zone);
+	}
+
+	/** Returns the cache of responses, for its counters. */
+	ResponseCache getResponseCache() {
+		return responses;
+	}
+
+	/** Returns the delays laid over the schedule, for reporting to. */
+	DelayOverlay getDelays() {
+		return delays;
+	}
+
+	/**
+	 * Reads the delays in file, replacing any reported before, and reads it
+	 * again, on a background thread, whenever it changes.
+	 */
+	void watchDelays(final File file) throws IOException {
+		final DelayFeed feed = new DelayFeed(delays, clock);
+		Runnable load = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					feed.load(file);
+				} catch (IOException e) {
+					System.err.println("Could not read the delays from " + file + ", keeping the old ones.");
+					e.printStackTrace();
+				}
+			}
+		};
+		load.run();
+		delayWatcher = new FileWatcher(file, load);
+		delayWatcher.start();
+	}
+
+	/** Returns a new set of keywords holding the built-in ones, ready for a schedule file to add to. */
+	private static Keywords createTableKeywords() {
+		Keywords words = createKeywords();
+		words.add(ALL_KEYWORD, ALL_DEFINITION);
+		return words;
+	}
+
+	@Override
+	protected Keywords getKeywords() {
+		return timetable.keywords;
 	}
 
 	@Override
 	public void initialize(Properties props) {
 		super.initialize(props);
+		String zone = props.getProperty(TIME_ZONE_PROP);
+		if (zone != null)
+			setTimeZone(TimeZone.getTimeZone(zone));
+		useSnapshot = Boolean.parseBoolean(props.getProperty(SNAPSHOT_PROP));
+		String calendar = props.getProperty(CALENDAR_PROP);
+		calendarFile = calendar == null ? null : new File(calendar);
 		String url = props.getProperty("schedule_file");
 		initialize(new File(url));
-
+		if (Boolean.parseBoolean(props.getProperty(WATCH_PROP))) {
+			try {
+				watch(new File(url));
+			} catch (IOException e) {
+				System.err.println("Could not watch the schedule file for changes. It will only be read at startup.");
+				e.printStackTrace();
+			}
+		}
+		String delayFile = props.getProperty(DELAYS_PROP);
+		if (delayFile != null) {
+			try {
+				watchDelays(new File(delayFile));
+			} catch (IOException e) {
+				System.err.println("Could not watch the delay file for changes. Delays will not be shown.");
+				e.printStackTrace();
+			}
+		}
 	}
 
 	@Override
 	public String keywordMessage(Query query, int maxLength) {
-		StringBuilder response = new StringBuilder();
-		if (query.getKeyword().equals(ALL_KEYWORD)) {
-			int charactersLeft = maxLength - response.length();
-			String stopList = getAllStops(query.getTimeReceived(),
-					charactersLeft);
-			response.append(stopList);
+		String keyword = query.getKeyword();
+		String destination = keyword.equals(ALL_KEYWORD) ? null : findDestination(query);
+		Date time = query.getTimeReceived();
+		long minute = time.getTime() / MILLIS_PER_MINUTE;
+		long delayVersion = delays.getVersion();
+		String response = responses.get(keyword, destination, minute, maxLength, delayVersion);
+		if (response != null)
+			return response;
+		long generation = responses.getGeneration();
+		if (keyword.equals(ALL_KEYWORD)) {
+			response = getAllStops(time, maxLength);
+		} else if (destination == null) {
+			response = getOneStop(time, keyword, maxLength);
 		} else {
-			int charactersLeft = maxLength - response.length();
-			String stopList = getOneStop(query.getTimeReceived(), query
-					.getKeyword(), charactersLeft);
-			response.append(stopList);
+			response = getJourneys(time, keyword, destination, maxLength);
 		}
-		return response.toString();
+		responses.put(keyword, destination, minute, maxLength, delayVersion, response, generation);
+		return response;
+	}
+
+	/**
+	 * Queries asked in the same minute about the same keyword, or the same
+	 * journey, get the same response, header and all. So do all those with no
+	 * keyword.
+	 */
+	@Override
+	protected Object getResponseKey(Query query) {
+		String keyword = query.getKeyword();
+		String destination = keyword == null || keyword.equals(ALL_KEYWORD) ? null : findDestination(query);
+		return Arrays.asList(keyword, destination, query.getTimeReceived().getTime() / MILLIS_PER_MINUTE);
+	}
+
+	/**
+	 * Finds a second stop named in a query, e.g. "salmon" in "law to salmon",
+	 * which makes it a request for journeys rather than stop times.
+	 * 
+	 * @return the keyword of the stop, or null if there isn't one
+	 */
+	private String findDestination(Query query) {
+		Keywords words = timetable.keywords;
+		String[] parts = query.getBody().trim().split("\\s+");
+		for (int i = 1; i < parts.length; i++) {
+			String k = words.extract(parts[i]);
+			if (k != null && !k.equals(ALL_KEYWORD) && !k.equals(KEY_HELP) && !k.equals(query.getKeyword()))
+				return k;
+		}
+		return null;
 	}
 
 	@Override
 	public String unrecognizedKeywordMessage(Date date, int maxLength) {
-		String response = "\nKeyword unrecognized! Text HELP for info.\n";
+		long minute = date.getTime() / MILLIS_PER_MINUTE;
+		long delayVersion = delays.getVersion();
+		String response = responses.get(null, null, minute, maxLength, delayVersion);
+		if (response != null)
+			return response;
+		long generation = responses.getGeneration();
+		response = "\nKeyword unrecognized! Text HELP for info.\n";
 		int charactersLeft = maxLength - response.length();
 		String stopList = getAllStops(date, charactersLeft);
 		response += stopList;
+		responses.put(null, null, minute, maxLength, delayVersion, response, generation);
 		return response;
 	}
 
 	public static void main(String[] args) {
 		TableHandler th = new TableHandler();
 		th.initialize(new File("resources/test_schedule.txt"));
-		for (String k : th.keywords.words()) {
+		for (String k : th.getKeywords().words()) {
 			System.out.println("Response for keyword: " + k);
 			System.out.println("------------------------------");
 			Query q = new Query(new Date(), k, "+15037777777");
@@ -205,15 +756,12 @@ public class TableHandler extends MessageHandler {
 	 * @return the difference between the two, in minutes
 	 */
 	private static int minutesBetween(Time begin, Time end) {
-		int days;
-		if (!begin.getDay().equals(end.getDay())) {
-			days = Day.daysBetween(begin.getDay(), end.getDay()).size() - 1;
-		} else {
-			days = 0;
-		}
-		int hours = end.getHour() - begin.getHour();
-		int minutes = end.getMinute() - begin.getMinute();
-		return 1440 * days + 60 * hours + minutes;
+		return begin.minutesUntil(end);
+	}
+
+	/** Returns the start of the minute time falls in, in milliseconds since the epoch. */
+	private static long startOfMinute(Date time) {
+		return time.getTime() / MILLIS_PER_MINUTE * MILLIS_PER_MINUTE;
 	}
 
 }
@@ -0,0 +1,219 @@
+package persistance;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import utils.FingerprintSet;
+
+/**
+ * An append-only record of which queries have been processed, so that a
+ * restart doesn't answer them again. Each processed query's fingerprint is
+ * appended as it is processed, along with the watermark: the time up to which
+ * every query fetched had been processed. Replaying the journal at startup
+ * refills the set of processed fingerprints and returns the watermark. The
+ * fingerprints alone decide which queries are skipped; the watermark only
+ * records how far processing had got.
+ * <p>
+ * Only the last <code>window</code> of fingerprints matters, so the journal
+ * is compacted, keeping only those and the latest watermark, when it is
+ * replayed and after every COMPACT_AFTER records. Compaction writes a new
+ * file alongside and moves it into place, so a crash leaves either the old
+ * journal or the new one. A record cut short by a crash is ignored.
+ * <p>
+ * The file is big-endian, an int magic number and int version followed by
+ * records of a byte kind, a long value and a long time in epoch ms: PROCESSED
+ * with a fingerprint and when it was processed, or WATERMARK with the
+ * watermark and when it was recorded.
+ * <p>
+ * Records are flushed as they are written, so they survive the program
+ * crashing, though not necessarily the machine. A journal that can't be
+ * written to is reported and otherwise ignored, since answering a query
+ * twice is better than not answering it. All methods are safe to call from
+ * multiple threads.
+ */
+public class DedupeJournal {
+
+	/** "PioJ" */
+	private static final int MAGIC = 0x50696f4a;
+
+	private static final int VERSION = 1;
+
+	private static final byte PROCESSED = 'P';
+
+	private static final byte WATERMARK = 'W';
+
+	/** The number of records written between compactions. */
+	static final int COMPACT_AFTER = 4096;
+
+	/** Returned by replay() when there is no watermark in the journal. */
+	public static final long NO_WATERMARK = Long.MIN_VALUE;
+
+	private final File file;
+
+	private final long window;
+
+	private DataOutputStream out;
+
+	/** The records written since the last compaction. */
+	private int written = 0;
+
+	private long watermark = NO_WATERMARK;
+
+	/**
+	 * @param window
+	 *            how long after a query is processed it still needs to be
+	 *            remembered, in ms
+	 */
+	public DedupeJournal(File file, long window) {
+		this.file = file;
+		this.window = window;
+	}
+
+	/**
+	 * Adds the fingerprints processed within the last window to processed,
+	 * compacts the journal and opens it for writing. A journal that doesn't
+	 * exist yet is created; one that isn't a journal is started again.
+	 *
+	 * @param now
+	 *            the current time, in epoch ms
+	 * @return the last watermark recorded, or NO_WATERMARK
+	 * @throws IOException
+	 *             if the journal cannot be read or written
+	 */
+	public synchronized long replay(FingerprintSet processed, long now) throws IOException {
+		close();
+		List<long[]> live = read(now);
+		for (long[] record : live)
+			processed.add(record[0], record[1]);
+		rewrite(live);
+		return watermark;
+	}
+
+	/** Records that the query with fingerprint was processed at time. */
+	public synchronized void processed(long fingerprint, long time) {
+		append(PROCESSED, fingerprint, time);
+	}
+
+	/**
+	 * Records that every query sent up to and including watermark has been
+	 * processed. A watermark earlier than the last is ignored.
+	 */
+	public synchronized void watermark(long watermark, long time) {
+		if (watermark <= this.watermark)
+			return;
+		this.watermark = watermark;
+		append(WATERMARK, watermark, time);
+	}
+
+	/** Returns the last watermark recorded or replayed, or NO_WATERMARK. */
+	public synchronized long getWatermark() {
+		return watermark;
+	}
+
+	/** Closes the journal. It may be opened again by replay(). */
+	public synchronized void close() {
+		if (out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		out = null;
+	}
+
+	private void append(byte kind, long value, long time) {
+		if (out == null)
+			return;
+		try {
+			out.writeByte(kind);
+			out.writeLong(value);
+			out.writeLong(time);
+			out.flush();
+			if (++written >= COMPACT_AFTER) {
+				out.close();
+				out = null;
+				rewrite(read(time));
+			}
+		} catch (IOException e) {
+			System.err.println("Could not write to the dedupe journal " + file + ". Queries may be answered again after a restart.");
+			e.printStackTrace();
+			close();
+		}
+	}
+
+	/**
+	 * Reads the fingerprints processed after now - window, in the order they
+	 * were written, as {fingerprint, time}, and sets watermark to the last one
+	 * recorded.
+	 */
+	private List<long[]> read(long now) throws IOException {
+		List<long[]> live = new ArrayList<long[]>();
+		DataInputStream in;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		} catch (FileNotFoundException e) {
+			return live;
+		}
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				System.err.println(file + " is not a dedupe journal. Starting a new one.");
+				return live;
+			}
+			while (true) {
+				byte kind = in.readByte();
+				long value = in.readLong();
+				long time = in.readLong();
+				if (kind == PROCESSED && now - time < window)
+					live.add(new long[] { value, time });
+				else if (kind == WATERMARK)
+					watermark = Math.max(watermark, value);
+			}
+		} catch (EOFException e) {
+			// The end of the journal, or a record cut short
+		} finally {
+			in.close();
+		}
+		return live;
+	}
+
+	/** Replaces the journal with live and the watermark, and opens it for appending. */
+	private void rewrite(List<long[]> live) throws IOException {
+		File temp = new File(file.getPath() + ".tmp");
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null)
+			parent.mkdirs();
+		DataOutputStream compacted = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			compacted.writeInt(MAGIC);
+			compacted.writeInt(VERSION);
+			for (long[] record : live) {
+				compacted.writeByte(PROCESSED);
+				compacted.writeLong(record[0]);
+				compacted.writeLong(record[1]);
+			}
+			if (watermark != NO_WATERMARK) {
+				compacted.writeByte(WATERMARK);
+				compacted.writeLong(watermark);
+				compacted.writeLong(System.currentTimeMillis());
+			}
+		} finally {
+			compacted.close();
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		written = 0;
+	}
+}
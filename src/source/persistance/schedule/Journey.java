@@ -0,0 +1,76 @@
+package persistance.schedule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A way to get from one stop to another: one or more legs, each riding a
+ * single trip from where it is boarded to where it is left.
+ */
+public class Journey {
+
+	/** A ride on one trip. */
+	public static class Leg {
+
+		private final Stop boarding;
+
+		private final Stop alighting;
+
+		public Leg(Stop boarding, Stop alighting) {
+			this.boarding = boarding;
+			this.alighting = alighting;
+		}
+
+		public Stop getBoarding() {
+			return boarding;
+		}
+
+		public Stop getAlighting() {
+			return alighting;
+		}
+
+		@Override
+		public String toString() {
+			return boarding + " to " + alighting;
+		}
+	}
+
+	private final List<Leg> legs;
+
+	/** @param legs the legs in the order they are ridden, at least one */
+	public Journey(List<Leg> legs) {
+		if (legs.isEmpty())
+			throw new IllegalArgumentException("A journey needs at least one leg.");
+		this.legs = Collections.unmodifiableList(new ArrayList<Leg>(legs));
+	}
+
+	public List<Leg> getLegs() {
+		return legs;
+	}
+
+	/** Returns the stop the journey starts from. */
+	public Stop getDeparture() {
+		return legs.get(0).getBoarding();
+	}
+
+	/** Returns the stop the journey ends at. */
+	public Stop getArrival() {
+		return legs.get(legs.size() - 1).getAlighting();
+	}
+
+	/** Returns the number of times the rider changes vehicles. */
+	public int getTransfers() {
+		return legs.size() - 1;
+	}
+
+	/** Returns the minutes from departure to arrival. */
+	public int getMinutes() {
+		return getDeparture().getTime().minutesUntil(getArrival().getTime());
+	}
+
+	@Override
+	public String toString() {
+		return legs.toString();
+	}
+}
@@ -0,0 +1,18 @@
+package persistance.schedule;
+
+import time.Time;
+
+/** A schedule that also knows which stops are joined by trips, and so can plan journeys between them. */
+public interface JourneySchedule extends Schedule {
+
+	/**
+	 * Returns the journey from the location with keyword from to the one with
+	 * keyword to, leaving no earlier than t, that arrives soonest. A trip
+	 * that loops back through from is boarded on its last pass, rather than
+	 * ridden around the loop.
+	 * 
+	 * Returns null if there is no such journey within a week of t.
+	 */
+	public abstract Journey getJourney(String from, String to, Time t);
+
+}
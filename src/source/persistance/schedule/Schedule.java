@@ -4,7 +4,12 @@ import time.Time;
 import time.TimeRange;
 
 
-/** Represents a schedule of stops. */
+/**
+ * Represents a schedule of stops.
+ * 
+ * The Iterables returned may find their stops lazily, as they are read, so
+ * the schedule should not be modified while they are in use.
+ */
 public interface Schedule {
 
 	/** 
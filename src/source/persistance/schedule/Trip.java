@@ -0,0 +1,29 @@
+package persistance.schedule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One run of a vehicle: the stops it makes, in the order it makes them. Each
+ * stop is no earlier than the one before it, though a trip may run past the
+ * end of the week and on into the next.
+ */
+public class Trip {
+
+	private final List<Stop> stops;
+
+	public Trip(List<Stop> stops) {
+		this.stops = Collections.unmodifiableList(new ArrayList<Stop>(stops));
+	}
+
+	/** Returns the trip's stops in the order they are made. */
+	public List<Stop> getStops() {
+		return stops;
+	}
+
+	@Override
+	public String toString() {
+		return stops.toString();
+	}
+}
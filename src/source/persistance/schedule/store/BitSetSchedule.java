@@ -0,0 +1,182 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * A schedule that keeps one bit per minute of the week for each keyword and
+ * direction, about 1.3KB apiece. Finding the next stop at a keyword is a
+ * <code>nextSetBit</code> call, plus one more if it has to wrap around the
+ * week, so lookups take about the same time however many stops are loaded.
+ * <p>
+ * Like DefaultSchedule, this is not safe for use by multiple threads.
+ */
+public class BitSetSchedule implements MutableSchedule {
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	/** The minutes with a stop in any direction, at index 0, then the minutes with a stop in direction d, at d.ordinal() + 1. */
+	private final Map<String, BitSet[]> minutes = new HashMap<String, BitSet[]>();
+
+	@Override
+	public void addStop(Stop s) {
+		BitSet[] bits = minutes.get(s.getKeyword());
+		if (bits == null) {
+			bits = new BitSet[DIRECTIONS.length + 1];
+			for (int i = 0; i < bits.length; i++)
+				bits[i] = new BitSet(MINUTES_PER_WEEK);
+			minutes.put(s.getKeyword(), bits);
+		}
+		int minute = s.getTime().getMinuteOfWeek();
+		bits[0].set(minute);
+		bits[s.getDirection().ordinal() + 1].set(minute);
+	}
+
+	@Override
+	public Stop getNextStop(String locationKeyword, Time t) {
+		Iterator<Stop> stops = getNextStops(locationKeyword, t, 1).iterator();
+		return stops.hasNext() ? stops.next() : null;
+	}
+
+	/** Returns the next stop after t at locationKeyword going in direction d, or null if there isn't one. */
+	public Stop getNextStop(String locationKeyword, Direction d, Time t) {
+		BitSet[] bits = minutes.get(locationKeyword);
+		if (bits == null)
+			return null;
+		int minute = nextMinute(bits[d.ordinal() + 1], t.getMinuteOfWeek());
+		return minute < 0 ? null : new Stop(locationKeyword, Time.valueOf(minute), d);
+	}
+
+	@Override
+	public Iterable<Stop> getNextStops(final String locationKeyword, final Time t, final int number) {
+		final BitSet[] bits = minutes.get(locationKeyword);
+		if (bits == null)
+			return Collections.emptyList();
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				return new BitIterator(locationKeyword, bits, t.getMinuteOfWeek(), MINUTES_PER_WEEK, number);
+			}
+		};
+	}
+
+	@Override
+	public Iterable<Stop> getStops(final TimeRange range) {
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				int from = range.getBeginning().getMinuteOfWeek();
+				List<BitIterator> iters = new ArrayList<BitIterator>(minutes.size());
+				for (Map.Entry<String, BitSet[]> e : minutes.entrySet())
+					iters.add(new BitIterator(e.getKey(), e.getValue(), from, range.getLength(), Integer.MAX_VALUE));
+				// Merge the keywords back into time order, starting from the range's beginning
+				return new MergingStopIterator(range.getBeginning(), iters);
+			}
+		};
+	}
+
+	@Override
+	public void removeStops(TimeRange range) {
+		int from = range.getBeginning().getMinuteOfWeek();
+		int to = from + range.getLength();
+		for (BitSet[] bits : minutes.values()) {
+			for (BitSet b : bits) {
+				b.clear(from, Math.min(to, MINUTES_PER_WEEK));
+				if (to > MINUTES_PER_WEEK)
+					b.clear(0, to - MINUTES_PER_WEEK);
+			}
+		}
+	}
+
+	@Override
+	public CompiledSchedule freeze() {
+		return new CompiledSchedule(this);
+	}
+
+	@Override
+	public boolean stopInSchedule(Stop s) {
+		BitSet[] bits = minutes.get(s.getKeyword());
+		return bits != null && bits[s.getDirection().ordinal() + 1].get(s.getTime().getMinuteOfWeek());
+	}
+
+	/** Returns the first set minute at or after minute, wrapping around the week, or -1 if none are set. */
+	private static int nextMinute(BitSet b, int minute) {
+		int next = b.nextSetBit(minute);
+		return next >= 0 ? next : b.nextSetBit(0);
+	}
+
+	/**
+	 * Walks the stops at one keyword for a number of minutes from a minute of
+	 * the week, wrapping around the week, until it has found a number of them.
+	 * Minutes past the end of the week are counted on from MINUTES_PER_WEEK.
+	 */
+	private static class BitIterator extends StopIterator {
+
+		private final String keyword;
+
+		private final BitSet[] bits;
+
+		private final int from;
+
+		private final int end;
+
+		private int remaining;
+
+		/** The minute being read, or -1 before the first. */
+		private int minute = -1;
+
+		/** The ordinal of the next direction to check at minute. */
+		private int direction = DIRECTIONS.length;
+
+		BitIterator(String keyword, BitSet[] bits, int from, int length, int number) {
+			this.keyword = keyword;
+			this.bits = bits;
+			this.from = from;
+			this.end = from + length;
+			this.remaining = number;
+		}
+
+		@Override
+		protected Stop findNext() {
+			while (remaining > 0) {
+				// More than one direction may stop in the same minute
+				while (direction < DIRECTIONS.length) {
+					int d = direction++;
+					if (bits[d + 1].get(minute % MINUTES_PER_WEEK)) {
+						remaining--;
+						return new Stop(keyword, Time.valueOf(minute % MINUTES_PER_WEEK), DIRECTIONS[d]);
+					}
+				}
+				minute = nextMinute(minute < 0 ? from : minute + 1);
+				if (minute < 0 || minute >= end)
+					return null;
+				direction = 0;
+			}
+			return null;
+		}
+
+		/** Returns the first minute at or after m with a stop, counting on past the end of the week, or -1. */
+		private int nextMinute(int m) {
+			if (m < MINUTES_PER_WEEK) {
+				int next = bits[0].nextSetBit(m);
+				if (next >= 0)
+					return next;
+				m = MINUTES_PER_WEEK;
+			}
+			int next = bits[0].nextSetBit(m - MINUTES_PER_WEEK);
+			return next < 0 ? -1 : next + MINUTES_PER_WEEK;
+		}
+	}
+}
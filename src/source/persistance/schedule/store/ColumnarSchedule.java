@@ -0,0 +1,243 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * A schedule stored as three parallel primitive columns: the minute of the
+ * week of each stop, the id of its keyword and its direction. Keywords are
+ * interned into ids once, so a stop costs 7 bytes rather than a tree node, a
+ * Stop and a Time. The columns are sorted by time the first time they are read
+ * after stops are added, and any number of stops may share a minute.
+ * <p>
+ * Stops are handed out as new Stop objects built from the columns. Like
+ * DefaultSchedule, this is not safe for use by multiple threads.
+ */
+public class ColumnarSchedule implements MutableSchedule {
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	/** Keyword names, indexed by id. */
+	private final List<String> keywords = new ArrayList<String>();
+
+	private final Map<String, Short> keywordIds = new HashMap<String, Short>();
+
+	private int[] minutes = new int[16];
+
+	private short[] ids = new short[16];
+
+	private byte[] directions = new byte[16];
+
+	private int size;
+
+	private boolean sorted = true;
+
+	@Override
+	public void addStop(Stop s) {
+		if (size == minutes.length) {
+			minutes = Arrays.copyOf(minutes, size * 2);
+			ids = Arrays.copyOf(ids, size * 2);
+			directions = Arrays.copyOf(directions, size * 2);
+		}
+		int minute = s.getTime().getMinuteOfWeek();
+		if (size > 0 && minute <= minutes[size - 1])
+			sorted = false; // Ties are sorted too, so that duplicates end up together
+		minutes[size] = minute;
+		ids[size] = intern(s.getKeyword());
+		directions[size] = (byte) s.getDirection().ordinal();
+		size++;
+	}
+
+	/** Returns the number of stops in the schedule. */
+	public int size() {
+		ensureSorted();
+		return size;
+	}
+
+	@Override
+	public Stop getNextStop(String locationKeyword, Time t) {
+		KeywordIterator found = new KeywordIterator(locationKeyword, t, 1);
+		return found.hasNext() ? found.next() : null;
+	}
+
+	@Override
+	public Iterable<Stop> getNextStops(final String locationKeyword, final Time t, final int number) {
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				return new KeywordIterator(locationKeyword, t, number);
+			}
+		};
+	}
+
+	@Override
+	public Iterable<Stop> getStops(final TimeRange range) {
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				ensureSorted();
+				// The columns are in time order, so the range is one run, possibly wrapping around the week
+				final int start = lowerBound(range.getBeginning().getMinuteOfWeek());
+				return new StopIterator() {
+					private int read = 0;
+
+					@Override
+					protected Stop findNext() {
+						if (read == size)
+							return null;
+						int index = (start + read) % size;
+						if (!range.isInRange(Time.valueOf(minutes[index])))
+							return null;
+						read++;
+						return toStop(index);
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public void removeStops(TimeRange range) {
+		ensureSorted();
+		int begin = range.getBeginning().getMinuteOfWeek();
+		int end = begin + range.getLength();
+		if (end <= MINUTES_PER_WEEK) {
+			removeMinutes(begin, end);
+		} else {
+			// The range wraps around the end of the week
+			removeMinutes(begin, MINUTES_PER_WEEK);
+			removeMinutes(0, end - MINUTES_PER_WEEK);
+		}
+	}
+
+	@Override
+	public CompiledSchedule freeze() {
+		return new CompiledSchedule(this);
+	}
+
+	@Override
+	public boolean stopInSchedule(Stop s) {
+		ensureSorted();
+		Short id = keywordIds.get(s.getKeyword());
+		if (id == null)
+			return false;
+		int minute = s.getTime().getMinuteOfWeek();
+		for (int i = lowerBound(minute); i < size && minutes[i] == minute; i++) {
+			if (ids[i] == id && directions[i] == s.getDirection().ordinal())
+				return true;
+		}
+		return false;
+	}
+
+	private short intern(String keyword) {
+		Short id = keywordIds.get(keyword);
+		if (id == null) {
+			if (keywords.size() > Short.MAX_VALUE)
+				throw new IllegalStateException("Too many keywords for a ColumnarSchedule.");
+			id = (short) keywords.size();
+			keywords.add(keyword);
+			keywordIds.put(keyword, id);
+		}
+		return id;
+	}
+
+	private Stop toStop(int i) {
+		return new Stop(keywords.get(ids[i]), Time.valueOf(minutes[i]), DIRECTIONS[directions[i]]);
+	}
+
+	/** Removes the stops from minute begin up to, but not including, minute end. */
+	private void removeMinutes(int begin, int end) {
+		int from = lowerBound(begin);
+		int to = lowerBound(end);
+		System.arraycopy(minutes, to, minutes, from, size - to);
+		System.arraycopy(ids, to, ids, from, size - to);
+		System.arraycopy(directions, to, directions, from, size - to);
+		size -= to - from;
+	}
+
+	/** The index of the first stop at or after minute. */
+	private int lowerBound(int minute) {
+		int lo = 0, hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (minutes[mid] < minute)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Sorts the columns by time, then keyword and direction, and drops
+	 * duplicate stops. The three columns are packed into one long per stop so
+	 * they can be sorted together.
+	 */
+	private void ensureSorted() {
+		if (sorted)
+			return;
+		long[] packed = new long[size];
+		for (int i = 0; i < size; i++)
+			packed[i] = (long) minutes[i] << 32 | ids[i] << 8 | directions[i];
+		Arrays.sort(packed);
+		int last = -1;
+		for (int i = 0; i < size; i++) {
+			if (last >= 0 && packed[i] == packed[i - 1])
+				continue;
+			last++;
+			minutes[last] = (int) (packed[i] >>> 32);
+			ids[last] = (short) (packed[i] >>> 8);
+			directions[last] = (byte) packed[i];
+		}
+		size = last + 1;
+		sorted = true;
+	}
+
+	/**
+	 * Walks the stops at one keyword from a time onwards, wrapping around the
+	 * week at most once, until it has found a number of them.
+	 */
+	private class KeywordIterator extends StopIterator {
+
+		private final int id;
+
+		private final int start;
+
+		private int remaining;
+
+		/** The offset from start of the next stop to look at. */
+		private int offset = 0;
+
+		KeywordIterator(String keyword, Time t, int number) {
+			ensureSorted();
+			Short id = keywordIds.get(keyword);
+			this.id = id == null ? -1 : id;
+			this.start = lowerBound(t.getMinuteOfWeek());
+			this.remaining = number;
+		}
+
+		@Override
+		protected Stop findNext() {
+			for (; remaining > 0 && offset < size; offset++) {
+				int index = (start + offset) % size;
+				if (ids[index] == id) {
+					offset++;
+					remaining--;
+					return toStop(index);
+				}
+			}
+			return null;
+		}
+	}
+}
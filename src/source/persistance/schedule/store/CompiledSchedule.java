@@ -0,0 +1,149 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import persistance.schedule.Schedule;
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * An immutable schedule, compiled from a MutableSchedule by
+ * {@link MutableSchedule#freeze()}.
+ * <p>
+ * Every stop is held in final primitive arrays that are never written after
+ * construction: columns of minute of the week, keyword id and direction in
+ * time order, plus a sorted column of packed minutes and directions for each
+ * keyword. Instances take no locks and may be shared between any number of
+ * threads once published.
+ */
+public class CompiledSchedule extends PackedSchedule {
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	/** Keyword names, indexed by id. */
+	private final String[] keywords;
+
+	private final Map<String, Integer> keywordIds;
+
+	private final int[] minutes;
+
+	private final short[] ids;
+
+	private final byte[] directions;
+
+	/** Where each keyword's stops start in entries, indexed by id, plus the end of the last. */
+	private final int[] keywordStarts;
+
+	/** The stops as MinuteColumn entries, grouped by keyword. */
+	private final int[] entries;
+
+	/** Copies every stop in source. */
+	CompiledSchedule(Schedule source) {
+		Map<String, Integer> keywordIds = new HashMap<String, Integer>();
+		List<String> names = new ArrayList<String>();
+		List<Long> packed = new ArrayList<Long>();
+		// A TimeRange can't cover the whole week, so read it in halves
+		Time half = Time.valueOf(MINUTES_PER_WEEK / 2);
+		for (TimeRange r : new TimeRange[] { new TimeRange(Time.valueOf(0), half), new TimeRange(half, Time.valueOf(0)) }) {
+			for (Stop s : source.getStops(r)) {
+				Integer id = keywordIds.get(s.getKeyword());
+				if (id == null) {
+					if (names.size() > Short.MAX_VALUE)
+						throw new IllegalStateException("Too many keywords for a CompiledSchedule.");
+					id = names.size();
+					names.add(s.getKeyword());
+					keywordIds.put(s.getKeyword(), id);
+				}
+				packed.add((long) s.getTime().getMinuteOfWeek() << 32 | id << 8 | s.getDirection().ordinal());
+			}
+		}
+		Collections.sort(packed);
+
+		int[] minutes = new int[packed.size()];
+		short[] ids = new short[packed.size()];
+		byte[] directions = new byte[packed.size()];
+		int[] starts = new int[names.size() + 1];
+		int size = 0;
+		for (int i = 0; i < packed.size(); i++) {
+			long p = packed.get(i);
+			if (i > 0 && p == packed.get(i - 1))
+				continue; // Already have this stop
+			minutes[size] = (int) (p >>> 32);
+			ids[size] = (short) (p >>> 8);
+			directions[size] = (byte) p;
+			starts[ids[size] + 1]++;
+			size++;
+		}
+
+		// Group the stops by keyword; they stay in time order within each
+		for (int id = 0; id < names.size(); id++)
+			starts[id + 1] += starts[id];
+		int[] entries = new int[size];
+		int[] next = Arrays.copyOf(starts, names.size());
+		for (int i = 0; i < size; i++)
+			entries[next[ids[i]]++] = MinuteColumn.pack(minutes[i], DIRECTIONS[directions[i]]);
+
+		this.keywords = names.toArray(new String[names.size()]);
+		this.keywordIds = Collections.unmodifiableMap(keywordIds);
+		this.minutes = Arrays.copyOf(minutes, size);
+		this.ids = Arrays.copyOf(ids, size);
+		this.directions = Arrays.copyOf(directions, size);
+		this.keywordStarts = starts;
+		this.entries = entries;
+	}
+
+	@Override
+	public int size() {
+		return minutes.length;
+	}
+
+	@Override
+	int minuteAt(int i) {
+		return minutes[i];
+	}
+
+	@Override
+	int keywordAt(int i) {
+		return ids[i];
+	}
+
+	@Override
+	int directionAt(int i) {
+		return directions[i];
+	}
+
+	@Override
+	int keywordCount() {
+		return keywords.length;
+	}
+
+	@Override
+	String keyword(int id) {
+		return keywords[id];
+	}
+
+	@Override
+	int keywordId(String keyword) {
+		Integer id = keywordIds.get(keyword);
+		return id == null ? -1 : id;
+	}
+
+	@Override
+	int keywordStart(int id) {
+		return keywordStarts[id];
+	}
+
+	@Override
+	int entryAt(int i) {
+		return entries[i];
+	}
+}
@@ -0,0 +1,273 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import persistance.schedule.Journey;
+import persistance.schedule.JourneySchedule;
+import persistance.schedule.Schedule;
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import persistance.schedule.Trip;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * Plans journeys with the Connection Scan Algorithm, and answers every other
+ * query from the schedule it wraps.
+ * <p>
+ * Each pair of consecutive stops on a trip is a connection, and the
+ * connections are kept in primitive arrays sorted by the minute of the week
+ * they depart. A journey is found in one pass over them, starting at the
+ * request time and wrapping around the week: a connection can be ridden if
+ * its trip has already been boarded, or if its departure stop has been
+ * reached by then, and the pass stops at the first connection leaving after
+ * the destination has been reached. Like CompiledSchedule, instances are
+ * immutable and may be shared between threads, provided the wrapped schedule
+ * can be.
+ */
+public class ConnectionSchedule implements JourneySchedule {
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private static final int UNREACHED = Integer.MAX_VALUE;
+
+	/**
+	 * Splits a schedule served by a single vehicle, such as a shuttle, into
+	 * trips: every stop, in time order, belongs to the same trip as the stop
+	 * before it unless more than maxGap minutes separate them.
+	 */
+	public static List<Trip> chainStops(Schedule schedule, int maxGap) {
+		List<Stop> stops = new ArrayList<Stop>();
+		// A TimeRange can't cover the whole week, so read it in halves
+		Time half = Time.valueOf(MINUTES_PER_WEEK / 2);
+		for (TimeRange r : new TimeRange[] { new TimeRange(Time.valueOf(0), half), new TimeRange(half, Time.valueOf(0)) }) {
+			for (Stop s : schedule.getStops(r))
+				stops.add(s);
+		}
+		List<Trip> trips = new ArrayList<Trip>();
+		int n = stops.size();
+		if (n == 0)
+			return trips;
+		// Start after a gap, so that a trip running over the end of the week is kept whole
+		int first = 0;
+		while (first < n && gap(stops.get((first + n - 1) % n), stops.get(first)) <= maxGap)
+			first++;
+		if (first == n)
+			first = 0; // No gaps at all; break the loop at the start of the week
+		List<Stop> trip = new ArrayList<Stop>();
+		for (int i = 0; i < n; i++) {
+			Stop s = stops.get((first + i) % n);
+			if (!trip.isEmpty() && gap(trip.get(trip.size() - 1), s) > maxGap) {
+				trips.add(new Trip(trip));
+				trip.clear();
+			}
+			trip.add(s);
+		}
+		trips.add(new Trip(trip));
+		return trips;
+	}
+
+	private static int gap(Stop a, Stop b) {
+		return a.getTime().minutesUntil(b.getTime());
+	}
+
+	private final Schedule stops;
+
+	/** Keyword names, indexed by id. */
+	private final String[] keywords;
+
+	private final Map<String, Integer> keywordIds = new HashMap<String, Integer>();
+
+	private final int tripCount;
+
+	/** The minute of the week each connection departs, in order. */
+	private final int[] departures;
+
+	/** The minutes each connection takes. */
+	private final int[] durations;
+
+	private final int[] fromIds;
+
+	private final int[] toIds;
+
+	private final int[] tripIds;
+
+	/** The direction ordinals of each connection's departure and arrival stops. */
+	private final byte[] fromDirections;
+
+	private final byte[] toDirections;
+
+	/**
+	 * @param stops
+	 *            the schedule to answer stop queries from
+	 * @param trips
+	 *            the trips to plan journeys with
+	 */
+	public ConnectionSchedule(Schedule stops, Collection<Trip> trips) {
+		this.stops = stops;
+		this.tripCount = trips.size();
+		List<String> names = new ArrayList<String>();
+		int size = 0;
+		for (Trip trip : trips)
+			size += Math.max(trip.getStops().size() - 1, 0);
+
+		// Lay the connections out in trip order, then sort by departure
+		int[] departures = new int[size], durations = new int[size], fromIds = new int[size], toIds = new int[size], tripIds = new int[size];
+		byte[] fromDirections = new byte[size], toDirections = new byte[size];
+		long[] order = new long[size];
+		int c = 0, t = 0;
+		for (Trip trip : trips) {
+			Stop previous = null;
+			for (Stop s : trip.getStops()) {
+				int id = idOf(s.getKeyword(), names);
+				if (previous != null) {
+					departures[c] = previous.getTime().getMinuteOfWeek();
+					durations[c] = gap(previous, s);
+					fromIds[c] = idOf(previous.getKeyword(), names);
+					toIds[c] = id;
+					tripIds[c] = t;
+					fromDirections[c] = (byte) previous.getDirection().ordinal();
+					toDirections[c] = (byte) s.getDirection().ordinal();
+					order[c] = (long) departures[c] << 32 | c;
+					c++;
+				}
+				previous = s;
+			}
+			t++;
+		}
+		Arrays.sort(order);
+
+		this.keywords = names.toArray(new String[names.size()]);
+		this.departures = new int[size];
+		this.durations = new int[size];
+		this.fromIds = new int[size];
+		this.toIds = new int[size];
+		this.tripIds = new int[size];
+		this.fromDirections = new byte[size];
+		this.toDirections = new byte[size];
+		for (int i = 0; i < size; i++) {
+			int j = (int) order[i];
+			this.departures[i] = departures[j];
+			this.durations[i] = durations[j];
+			this.fromIds[i] = fromIds[j];
+			this.toIds[i] = toIds[j];
+			this.tripIds[i] = tripIds[j];
+			this.fromDirections[i] = fromDirections[j];
+			this.toDirections[i] = toDirections[j];
+		}
+	}
+
+	private int idOf(String keyword, List<String> names) {
+		Integer id = keywordIds.get(keyword);
+		if (id == null) {
+			id = names.size();
+			names.add(keyword);
+			keywordIds.put(keyword, id);
+		}
+		return id;
+	}
+
+	/** Returns the number of connections. */
+	public int size() {
+		return departures.length;
+	}
+
+	@Override
+	public Journey getJourney(String from, String to, Time t) {
+		Integer source = keywordIds.get(from), target = keywordIds.get(to);
+		int n = departures.length;
+		if (source == null || target == null || source.equals(target) || n == 0)
+			return null;
+
+		// Minutes after t each keyword is reached, the connection reaching it and where that connection's trip was boarded
+		int[] arrivals = new int[keywords.length];
+		int[] reachedBy = new int[keywords.length];
+		int[] boardedFor = new int[keywords.length];
+		// The connection each trip was boarded at, or -1
+		int[] boardedAt = new int[tripCount];
+		Arrays.fill(arrivals, UNREACHED);
+		Arrays.fill(boardedAt, -1);
+		arrivals[source] = 0;
+
+		int minute = t.getMinuteOfWeek();
+		int c = lowerBound(minute);
+		for (int scanned = 0; scanned < n; scanned++, c++) {
+			if (c == n)
+				c = 0;
+			int departure = departures[c] - minute;
+			if (departure < 0)
+				departure += MINUTES_PER_WEEK;
+			if (departure >= arrivals[target])
+				break;
+			int trip = tripIds[c];
+			if (fromIds[c] == source) {
+				boardedAt[trip] = c; // Waiting here beats riding around to here
+			} else if (boardedAt[trip] < 0) {
+				if (arrivals[fromIds[c]] > departure)
+					continue;
+				boardedAt[trip] = c;
+			}
+			int arrival = departure + durations[c];
+			if (arrival < arrivals[toIds[c]]) {
+				arrivals[toIds[c]] = arrival;
+				reachedBy[toIds[c]] = c;
+				boardedFor[toIds[c]] = boardedAt[trip];
+			}
+		}
+		if (arrivals[target] == UNREACHED)
+			return null;
+
+		List<Journey.Leg> legs = new ArrayList<Journey.Leg>();
+		for (int k = target; k != source;) {
+			int board = boardedFor[k], alight = reachedBy[k];
+			legs.add(new Journey.Leg(departureOf(board), arrivalOf(alight)));
+			k = fromIds[board];
+		}
+		Collections.reverse(legs);
+		return new Journey(legs);
+	}
+
+	private Stop departureOf(int c) {
+		return new Stop(keywords[fromIds[c]], Time.valueOf(departures[c]), DIRECTIONS[fromDirections[c]]);
+	}
+
+	private Stop arrivalOf(int c) {
+		return new Stop(keywords[toIds[c]], Time.valueOf((departures[c] + durations[c]) % MINUTES_PER_WEEK), DIRECTIONS[toDirections[c]]);
+	}
+
+	/** The index of the first connection departing at or after minute, or size() if there are none. */
+	private int lowerBound(int minute) {
+		int lo = 0, hi = departures.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (departures[mid] < minute)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	@Override
+	public Iterable<Stop> getStops(TimeRange range) {
+		return stops.getStops(range);
+	}
+
+	@Override
+	public Stop getNextStop(String locationKeyword, Time t) {
+		return stops.getNextStop(locationKeyword, t);
+	}
+
+	@Override
+	public Iterable<Stop> getNextStops(String locationKeyword, Time t, int number) {
+		return stops.getNextStops(locationKeyword, t, number);
+	}
+}
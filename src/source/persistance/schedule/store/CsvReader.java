@@ -0,0 +1,140 @@
+package persistance.schedule.store;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads comma separated records one at a time from a Reader, as described in
+ * RFC 4180: fields may be quoted, and quoted fields may hold commas, doubled
+ * quotes and line breaks. Only the current record is held in memory, and its
+ * field array is reused from one record to the next. Package-internal.
+ */
+class CsvReader {
+
+	private final Reader in;
+
+	private final char[] buffer = new char[64 * 1024];
+
+	private int position = 0;
+
+	private int limit = 0;
+
+	private final StringBuilder field = new StringBuilder();
+
+	private String[] fields = new String[16];
+
+	private int count = 0;
+
+	private long recordNumber = 0;
+
+	public CsvReader(Reader in) {
+		this.in = in;
+	}
+
+	/**
+	 * Reads the next record.
+	 *
+	 * @return false at the end of the input
+	 * @throws IOException
+	 *             if the input cannot be read
+	 */
+	public boolean next() throws IOException {
+		count = 0;
+		int c = read();
+		if (c < 0)
+			return false;
+		recordNumber++;
+		while (true) {
+			field.setLength(0);
+			if (c == '"') {
+				// Quoted field, up to the closing quote
+				while (true) {
+					c = read();
+					if (c < 0)
+						break;
+					if (c == '"') {
+						c = read();
+						if (c != '"')
+							break; // Closing quote, c is the character after it
+					}
+					field.append((char) c);
+				}
+			}
+			while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+				field.append((char) c);
+				c = read();
+			}
+			addField();
+			if (c == ',') {
+				c = read();
+				continue;
+			}
+			if (c == '\r' && peek() == '\n')
+				read();
+			return true;
+		}
+	}
+
+	/** Returns the number of fields in the current record. */
+	public int size() {
+		return count;
+	}
+
+	/** Returns field i of the current record, or the empty string if it has fewer fields. */
+	public String get(int i) {
+		return i < count ? fields[i] : "";
+	}
+
+	/** The number of records read so far, counting from 1. */
+	public long getRecordNumber() {
+		return recordNumber;
+	}
+
+	/**
+	 * Returns the index of the field named name in the current record, i.e.
+	 * the header, or -1 if there isn't one.
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < count; i++) {
+			if (fields[i].trim().equals(name))
+				return i;
+		}
+		return -1;
+	}
+
+	/** Closes the underlying Reader. */
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private void addField() {
+		if (count == fields.length)
+			fields = Arrays.copyOf(fields, count * 2);
+		// Drop a byte order mark at the very start of the input
+		if (recordNumber == 1 && count == 0 && field.length() > 0 && field.charAt(0) == '\uFEFF')
+			field.deleteCharAt(0);
+		fields[count++] = field.toString();
+	}
+
+	private int read() throws IOException {
+		if (position == limit && !fill())
+			return -1;
+		return buffer[position++];
+	}
+
+	private int peek() throws IOException {
+		if (position == limit && !fill())
+			return -1;
+		return buffer[position];
+	}
+
+	private boolean fill() throws IOException {
+		int read = in.read(buffer);
+		if (read <= 0)
+			return false;
+		position = 0;
+		limit = read;
+		return true;
+	}
+}
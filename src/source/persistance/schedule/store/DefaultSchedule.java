@@ -16,14 +16,9 @@ public class DefaultSchedule implements MutableSchedule {
 		this.stops = new TreeSet<Stop>(new Comparator<Stop>() {
 				@Override
 				public int compare(Stop s1, Stop s2) {
-					Time t1 = s1.getTime(), t2 = s2.getTime();
-					// If on different days, we allow the natural ordering of the
-					// enum to take over so we only have to special case the week
-					// boundary
-					if(t1.getDay() != t2.getDay())
-							return t1.getDay().compareTo(t2.getDay());
-					else
-						return t1.compareTo(t2);
+					// Ordering by minute of the week means we only have to
+					// special case the week boundary
+					return s1.getTime().getMinuteOfWeek() - s2.getTime().getMinuteOfWeek();
 				}
 			});
 	}
@@ -42,42 +37,73 @@ public class DefaultSchedule implements MutableSchedule {
 	}
 
 	@Override
-	public Iterable<Stop> getNextStops(final String locationKeyword, Time t, int number) {
-		Collection<Stop> c = getStopsStartingAt(t, new StopPredicate() {
+	public Iterable<Stop> getNextStops(final String locationKeyword, final Time t, final int number) {
+		return new Iterable<Stop>() {
 			@Override
-			public boolean applies(Stop s) {
-				return s.getKeyword().equals(locationKeyword);
-			}
-		}, number);
+			public Iterator<Stop> iterator() {
+				return new StopIterator() {
+					private final Iterator<Stop> week = getWeekStartingAt(t);
+					private int found = 0;
 
-		return c;
+					@Override
+					protected Stop findNext() {
+						while (found < number && week.hasNext()) {
+							Stop s = week.next();
+							if (s.getKeyword().equals(locationKeyword)) {
+								found++;
+								return s;
+							}
+						}
+						return null;
+					}
+				};
+			}
+		};
 	}
 
 	@Override
 	public Iterable<Stop> getStops(final TimeRange range) {
-		Collection<Stop> c = getStopsStartingAt(range.getBeginning(), new StopPredicate() {
+		return new Iterable<Stop>() {
 			@Override
-			public boolean applies(Stop s) {
-				return range.isInRange(s.getTime());
+			public Iterator<Stop> iterator() {
+				return new StopIterator() {
+					private final Iterator<Stop> week = getWeekStartingAt(range.getBeginning());
+
+					@Override
+					protected Stop findNext() {
+						// The week is walked in order from the beginning of the range,
+						// so the first stop outside it ends the range.
+						if (week.hasNext()) {
+							Stop s = week.next();
+							if (range.isInRange(s.getTime()))
+								return s;
+						}
+						return null;
+					}
+				};
 			}
-		}, -1);  // The -1 is a hack, true, but that's why those methods are private.
+		};
+	}
 
-		return c;
+	@Override
+	public void removeStops(TimeRange range) {
+		if (range.isEmpty())
+			return;
+		Stop from = new Stop("", range.getBeginning());
+		Stop to = new Stop("", range.getEnd());
+		// Clearing a view of the set only visits the stops in it
+		if (range.getBeginning().getMinuteOfWeek() < range.getEnd().getMinuteOfWeek()) {
+			stops.subSet(from, to).clear();
+		} else {
+			// The range wraps around the week boundary
+			stops.tailSet(from).clear();
+			stops.headSet(to).clear();
+		}
 	}
 
-	// Oh for the want of closures... we make the TimeRange final so we can use it in the anonymous class.
 	@Override
-	public void removeStops(final TimeRange range) {
-		// This is an expensive call, but this should only happen a few times at startup.
-		Collection<Stop> toRemove = getAllStops(new StopPredicate() {
-			@Override
-			public boolean applies(Stop s) {
-				return range.isInRange(s.getTime());
-			}
-		});
-		
-		for(Stop s : toRemove) 
-			stops.remove(s);
+	public CompiledSchedule freeze() {
+		return new CompiledSchedule(this);
 	}
 
 	@Override
@@ -85,48 +111,26 @@ public class DefaultSchedule implements MutableSchedule {
 		return stops.contains(s);
 	}
 
-	/** Returns all stops in this schedule that match the predicate p.
-	 * 
-	 * This method will check every stop in the entire set.
+	/**
+	 * Returns an iterator over every stop in the schedule, in order, starting
+	 * with the first at or after t and wrapping around the week boundary.
 	 */
-	private Collection<Stop> getAllStops(StopPredicate p) {
-		LinkedList<Stop> matchedStops = new LinkedList<Stop>();
-		// Iterate over every element for each operation.
-		// TODO: A better way.
-		for(Stop s : stops) {
-			if(p.applies(s))
-				matchedStops.add(s);
-		}
-		return matchedStops;
-	}
-	
-	/** Returns a collection of at most limit stops maching p with their "natural" ordering. */
-	private Collection<Stop> getStopsStartingAt(Time t, StopPredicate p, int limit) {
-		Collection<Stop> matchedStops = new LinkedList<Stop>();
-		
-		// Start with everything "greater" than time t
-		SortedSet<Stop> subset = stops.tailSet(new Stop("", t));
-		for(Stop s : subset) {
-			if(p.applies(s)) {
-				matchedStops.add(s);
-				if(matchedStops.size() == limit)
-					break;
-			}
-		}
-		
-		if(matchedStops.size() == limit)
-			return matchedStops;
-		
-		// If we still have more to look at, start back at the beginning of the week
-		subset = stops.headSet(new Stop("", t));
-		for(Stop s : subset) {
-			if(p.applies(s)) {
-				matchedStops.add(s);
-				if(matchedStops.size() == limit)
-					break;
+	private Iterator<Stop> getWeekStartingAt(Time t) {
+		final Stop from = new Stop("", t);
+		return new StopIterator() {
+			// Start with everything "greater" than time t
+			private Iterator<Stop> iter = stops.tailSet(from).iterator();
+			private boolean wrapped = false;
+
+			@Override
+			protected Stop findNext() {
+				// If we still have more to look at, start back at the beginning of the week
+				if (!iter.hasNext() && !wrapped) {
+					iter = stops.headSet(from).iterator();
+					wrapped = true;
+				}
+				return iter.hasNext() ? iter.next() : null;
 			}
-		}
-		
-		return matchedStops;
+		};
 	}
 }
@@ -0,0 +1,90 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_DAY;
+
+import persistance.schedule.Stop;
+import time.TimeRange;
+
+/**
+ * A report that some stops are running late: every stop at a keyword, or
+ * every stop in the schedule, optionally only those of one trip, taken to be
+ * the stops scheduled within a range of time. A delay lasts until it expires,
+ * so a report that is never taken back doesn't leave the schedule wrong.
+ */
+public class Delay {
+
+	/** The longest delay, in minutes, that may be reported. */
+	public static final int MAX_MINUTES = MINUTES_PER_DAY;
+
+	private final String keyword;
+
+	private final TimeRange trip;
+
+	private final int minutes;
+
+	private final long expires;
+
+	/**
+	 * @param keyword
+	 *            the keyword running late, or null for every keyword
+	 * @param trip
+	 *            the scheduled times of the stops running late, or null for
+	 *            every stop
+	 * @param minutes
+	 *            how late, in the range [0, MAX_MINUTES]; 0 takes back an
+	 *            earlier report
+	 * @param expires
+	 *            when the delay stops applying, in milliseconds since the
+	 *            epoch
+	 */
+	public Delay(String keyword, TimeRange trip, int minutes, long expires) {
+		if (minutes < 0 || minutes > MAX_MINUTES)
+			throw new IllegalArgumentException(String.format("%d minutes is not a valid delay. Delays must be in the range [0, %d].", minutes, MAX_MINUTES));
+		this.keyword = keyword;
+		this.trip = trip;
+		this.minutes = minutes;
+		this.expires = expires;
+	}
+
+	/** Returns the keyword running late, or null for every keyword. */
+	public String getKeyword() {
+		return keyword;
+	}
+
+	/** Returns the scheduled times of the stops running late, or null for every stop. */
+	public TimeRange getTrip() {
+		return trip;
+	}
+
+	public int getMinutes() {
+		return minutes;
+	}
+
+	public long getExpires() {
+		return expires;
+	}
+
+	/** Tests whether this delay still applies at now, in milliseconds since the epoch. */
+	public boolean isLive(long now) {
+		return now < expires;
+	}
+
+	/** Tests whether stop, at its scheduled time, is one of those running late. */
+	public boolean appliesTo(Stop stop) {
+		return (keyword == null || keyword.equals(stop.getKeyword())) && (trip == null || trip.isInRange(stop.getTime()));
+	}
+
+	/** Tests whether d reports on the same stops as this, so that the later of the two replaces the earlier. */
+	boolean sameStops(Delay d) {
+		if (keyword == null ? d.keyword != null : !keyword.equals(d.keyword))
+			return false;
+		if (trip == null || d.trip == null)
+			return trip == d.trip;
+		return trip.getBeginning().equals(d.trip.getBeginning()) && trip.getEnd().equals(d.trip.getEnd());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s %d minutes late%s", keyword == null ? "everywhere" : keyword, minutes, trip == null ? "" : " " + trip);
+	}
+}
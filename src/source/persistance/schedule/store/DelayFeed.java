@@ -0,0 +1,181 @@
+package persistance.schedule.store;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import time.EpochConverter;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * Reads delay reports, one per line, into a DelayOverlay, either all at once
+ * from a file that holds every current delay or one at a time as they arrive
+ * on a stream, such as a socket. A report looks like:
+ *
+ * <pre>
+ * law, 10
+ * all, 15, for 30
+ * fred, 5, 9:00am - 10:30am, for 120
+ * </pre>
+ *
+ * that is, a keyword, or "all" for every keyword, and the minutes late; then,
+ * optionally, the scheduled times of the trip running late, on the day the
+ * report is read (running into the next day if the last is earlier than the
+ * first), and how many minutes the report holds for, which is
+ * DEFAULT_EXPIRY if left out. Lines starting with # are comments. Lines that
+ * can't be made sense of are counted and skipped.
+ */
+public class DelayFeed {
+
+	/** The keyword for a delay to every stop. */
+	public static final String ALL_KEYWORD = "all";
+
+	/** How many minutes a report holds for if it doesn't say. */
+	public static final int DEFAULT_EXPIRY = 60;
+
+	private final DelayOverlay overlay;
+
+	private final EpochConverter clock;
+
+	private final ScheduleLexer lexer = new ScheduleLexer();
+
+	/** Counted from whichever threads are loading and following. */
+	private final AtomicInteger errorCount = new AtomicInteger();
+
+	/**
+	 * @param overlay
+	 *            the overlay to report delays to
+	 * @param clock
+	 *            places the times of trips on the day they are reported
+	 */
+	public DelayFeed(DelayOverlay overlay, EpochConverter clock) {
+		this.overlay = overlay;
+		this.clock = clock;
+	}
+
+	/**
+	 * Replaces every delay in the overlay with those in file.
+	 *
+	 * @return the number of delays read
+	 * @throws IOException
+	 *             if the file can't be read, in which case the overlay is left
+	 *             alone
+	 */
+	public int load(File file) throws IOException {
+		List<Delay> delays = new ArrayList<Delay>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			long lineNumber = 0;
+			long now = System.currentTimeMillis();
+			while ((line = reader.readLine()) != null) {
+				Delay d = parse(line, ++lineNumber, now);
+				if (d != null)
+					delays.add(d);
+			}
+		} finally {
+			reader.close();
+		}
+		overlay.set(delays);
+		return delays.size();
+	}
+
+	/**
+	 * Reports each delay read from in as soon as its line arrives, until the
+	 * end of the input. Blocks while waiting for lines, so callers will
+	 * usually run this on a thread of its own.
+	 *
+	 * @throws IOException
+	 *             if in can't be read
+	 */
+	public void follow(Reader in) throws IOException {
+		BufferedReader reader = new BufferedReader(in);
+		String line;
+		long lineNumber = 0;
+		while ((line = reader.readLine()) != null) {
+			Delay d = parse(line, ++lineNumber, System.currentTimeMillis());
+			if (d != null)
+				overlay.add(d);
+		}
+	}
+
+	/** Returns the number of lines that couldn't be made sense of so far. */
+	public int getErrorCount() {
+		return errorCount.get();
+	}
+
+	/**
+	 * Parses one report, or returns null if the line is blank, a comment or
+	 * an error. Synchronized, since load() and follow() may run on different
+	 * threads and share the lexer.
+	 */
+	private synchronized Delay parse(String line, long lineNumber, long now) {
+		try {
+			return parseLine(line, lineNumber, now);
+		} catch (ParseException e) {
+			errorCount.incrementAndGet();
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * Parses one report, read at now, or returns null if the line is blank or
+	 * a comment.
+	 *
+	 * @throws ParseException
+	 *             if the line can't be made sense of
+	 */
+	Delay parseLine(String line, long lineNumber, long now) {
+		lexer.reset(line, lineNumber);
+		if (lexer.atEnd() || lexer.peek('#'))
+			return null;
+		int keywordStart = lexer.getPosition();
+		String keyword = lexer.readField().toLowerCase();
+		if (keyword.isEmpty() || hasWhitespace(keyword))
+			throw lexer.error("Expected a keyword, or all, here.", String.format("Found '%s' where a keyword was expected.", keyword), keywordStart);
+		lexer.expect(',');
+		int minutes = lexer.readNumber();
+		if (minutes > Delay.MAX_MINUTES)
+			throw lexer.error(String.format("Delays can be at most %d minutes.", Delay.MAX_MINUTES), String.format("Found a delay of %d minutes.", minutes));
+		lexer.expectFieldEnd("the minutes late");
+
+		TimeRange trip = null;
+		int expiry = DEFAULT_EXPIRY;
+		boolean more = lexer.accept(',');
+		if (more && !lexer.accept("for")) {
+			int today = clock.toTime(now).getDay().getIndex() * Time.MINUTES_PER_DAY;
+			int first = lexer.readTime();
+			lexer.expect('-');
+			int lastTime = lexer.readTime();
+			Time begin = Time.valueOf(today + first);
+			Time last = Time.valueOf(today + lastTime);
+			if (lastTime < first)
+				last = last.addDays(1); // An overnight trip (e.g. 11:00pm - 1:00am)
+			trip = new TimeRange(begin, last.addMinutes(1));
+			lexer.expectFieldEnd("the trip's times");
+			more = lexer.accept(',');
+			if (more && !lexer.accept("for"))
+				throw lexer.error("Expected for and the minutes the report holds for, such as for 30, here.", "Found something other than 'for'.");
+		}
+		if (more)
+			expiry = lexer.readNumber();
+		if (!lexer.atEnd())
+			throw lexer.error("Unexpected characters at the end of the delay.", "Found more after the end of the delay.");
+		return new Delay(keyword.equals(ALL_KEYWORD) ? null : keyword, trip, minutes, now + expiry * 60000L);
+	}
+
+	private static boolean hasWhitespace(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (Character.isWhitespace(s.charAt(i)))
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,318 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import persistance.schedule.Schedule;
+import persistance.schedule.Stop;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * The delays currently reported, laid over a schedule at query time so that
+ * the stops it returns are at the times they will really be made, without
+ * rebuilding the schedule.
+ * <p>
+ * The delays are held as an immutable snapshot, which each report replaces
+ * with a compare-and-set. Readers only ever read the current snapshot, so they
+ * never wait on a lock, however fast reports come in, and a query sees the
+ * same set of delays from start to finish. Where more than one delay applies
+ * to a stop, the one reported last wins.
+ */
+public class DelayOverlay {
+
+	/** An immutable set of delays, indexed by keyword. */
+	private static final class Snapshot {
+
+		static final Snapshot EMPTY = new Snapshot(Collections.<Delay> emptyList(), 0);
+
+		/** Every delay, in the order reported. */
+		final Delay[] all;
+
+		/** The delays that apply at each keyword, both its own and those everywhere, in the order reported. */
+		final Map<String, Delay[]> byKeyword = new HashMap<String, Delay[]>();
+
+		/** The delays that apply everywhere, for keywords with none of their own. */
+		final Delay[] everywhere;
+
+		/** The latest any stop may run, in minutes. */
+		final int maxMinutes;
+
+		/** When the last of the delays expires. */
+		final long expires;
+
+		/** Counts the changes made to the delays. */
+		final long version;
+
+		Snapshot(List<Delay> delays, long version) {
+			this.version = version;
+			all = delays.toArray(new Delay[delays.size()]);
+			List<Delay> common = new ArrayList<Delay>();
+			Map<String, List<Delay>> lists = new HashMap<String, List<Delay>>();
+			int max = 0;
+			long last = Long.MIN_VALUE;
+			for (Delay d : all) {
+				if (d.getKeyword() == null) {
+					common.add(d);
+					for (List<Delay> list : lists.values())
+						list.add(d);
+				} else {
+					List<Delay> list = lists.get(d.getKeyword());
+					if (list == null) {
+						list = new ArrayList<Delay>(common);
+						lists.put(d.getKeyword(), list);
+					}
+					list.add(d);
+				}
+				max = Math.max(max, d.getMinutes());
+				last = Math.max(last, d.getExpires());
+			}
+			for (Map.Entry<String, List<Delay>> e : lists.entrySet())
+				byKeyword.put(e.getKey(), e.getValue().toArray(new Delay[e.getValue().size()]));
+			everywhere = common.toArray(new Delay[common.size()]);
+			maxMinutes = max;
+			expires = last;
+		}
+
+		Delay[] at(String keyword) {
+			Delay[] delays = byKeyword.get(keyword);
+			return delays == null ? everywhere : delays;
+		}
+
+		/** Returns how late stop is running at now, in minutes. */
+		int minutesLate(Stop stop, long now) {
+			Delay[] delays = at(stop.getKeyword());
+			for (int i = delays.length - 1; i >= 0; i--) {
+				if (delays[i].isLive(now) && delays[i].appliesTo(stop))
+					return delays[i].getMinutes();
+			}
+			return 0;
+		}
+
+		/** Returns the latest a stop at keyword may run at now, in minutes. */
+		int maxMinutes(String keyword, long now) {
+			int max = 0;
+			for (Delay d : at(keyword)) {
+				if (d.isLive(now))
+					max = Math.max(max, d.getMinutes());
+			}
+			return max;
+		}
+
+		/** Returns a copy with d reported, dropping the delays it replaces and those expired at now. */
+		Snapshot with(Delay d, long now) {
+			List<Delay> delays = new ArrayList<Delay>(all.length + 1);
+			for (Delay old : all) {
+				if (old.isLive(now) && !old.sameStops(d))
+					delays.add(old);
+			}
+			delays.add(d);
+			return new Snapshot(delays, version + 1);
+		}
+	}
+
+	private final AtomicReference<Snapshot> current = new AtomicReference<Snapshot>(Snapshot.EMPTY);
+
+	/** Reports a delay, replacing any earlier report on the same stops. */
+	public void add(Delay d) {
+		long now = System.currentTimeMillis();
+		while (true) {
+			Snapshot old = current.get();
+			if (current.compareAndSet(old, old.with(d, now)))
+				return;
+		}
+	}
+
+	/** Replaces every delay reported so far with delays. */
+	public void set(Collection<Delay> delays) {
+		List<Delay> list = new ArrayList<Delay>(delays);
+		while (true) {
+			Snapshot old = current.get();
+			if (current.compareAndSet(old, new Snapshot(list, old.version + 1)))
+				return;
+		}
+	}
+
+	/** Takes back every delay reported so far. */
+	public void clear() {
+		set(Collections.<Delay> emptyList());
+	}
+
+	/**
+	 * Returns a number that changes whenever the delays do, so that anything
+	 * worked out from them can tell when it is out of date.
+	 */
+	public long getVersion() {
+		return current.get().version;
+	}
+
+	/** Returns the number of delays held, including any that have expired since the last report. */
+	public int size() {
+		return current.get().all.length;
+	}
+
+	/** Returns how late stop, at its scheduled time, is running at now, in milliseconds since the epoch. */
+	public int getMinutesLate(Stop stop, long now) {
+		return current.get().minutesLate(stop, now);
+	}
+
+	/**
+	 * Returns schedule with the delays live at now laid over it, or schedule
+	 * itself if there are none. The delays are those reported when this is
+	 * called; later reports don't change the schedule returned.
+	 *
+	 * @param now
+	 *            the time of the query, in milliseconds since the epoch
+	 */
+	public Schedule apply(Schedule schedule, long now) {
+		Snapshot s = current.get();
+		if (s.all.length == 0 || s.expires <= now)
+			return schedule;
+		return new DelayedSchedule(schedule, s, now);
+	}
+
+	/** A schedule with its stops moved back by their delays. */
+	private static class DelayedSchedule implements Schedule {
+
+		private final Schedule stops;
+
+		private final Snapshot delays;
+
+		private final long now;
+
+		DelayedSchedule(Schedule stops, Snapshot delays, long now) {
+			this.stops = stops;
+			this.delays = delays;
+			this.now = now;
+		}
+
+		@Override
+		public Iterable<Stop> getStops(final TimeRange range) {
+			// Stops scheduled up to maxMinutes before the range may run late into it
+			final int lookBack = Math.max(Math.min(delays.maxMinutes, MINUTES_PER_WEEK - range.getLength() - 1), 0);
+			final Time from = range.getBeginning().addMinutes(-lookBack);
+			return new Iterable<Stop>() {
+				@Override
+				public Iterator<Stop> iterator() {
+					Iterator<Stop> iter = stops.getStops(new TimeRange(from, range.getEnd())).iterator();
+					return new DelayIterator(iter, delays, now, from, lookBack, lookBack + range.getLength(), Integer.MAX_VALUE);
+				}
+			};
+		}
+
+		@Override
+		public Stop getNextStop(String locationKeyword, Time t) {
+			Iterator<Stop> next = getNextStops(locationKeyword, t, 1).iterator();
+			return next.hasNext() ? next.next() : null;
+		}
+
+		@Override
+		public Iterable<Stop> getNextStops(final String locationKeyword, Time t, final int number) {
+			final int lookBack = delays.maxMinutes(locationKeyword, now);
+			if (lookBack == 0)
+				return stops.getNextStops(locationKeyword, t, number);
+			final Time from = t.addMinutes(-lookBack);
+			return new Iterable<Stop>() {
+				@Override
+				public Iterator<Stop> iterator() {
+					// Read as far as it takes: the stops are found lazily, so only those needed are
+					Iterator<Stop> iter = stops.getNextStops(locationKeyword, from, Integer.MAX_VALUE).iterator();
+					return new DelayIterator(iter, delays, now, from, lookBack, Integer.MAX_VALUE, number);
+				}
+			};
+		}
+	}
+
+	/** A stop as it will really be made, and how far it falls after the iterator's start. */
+	private static class Late {
+
+		final Stop stop;
+
+		final int offset;
+
+		Late(Stop stop, int offset) {
+			this.stop = stop;
+			this.offset = offset;
+		}
+	}
+
+	/**
+	 * Moves each of the stops from another iterator, which returns them in
+	 * order of scheduled time, back by its delay, and returns them in order of
+	 * the time they will really be made. A stop is held back only until the
+	 * next scheduled stop comes after it, since no stop runs early.
+	 */
+	private static class DelayIterator extends StopIterator {
+
+		private final Iterator<Stop> iter;
+
+		private final Snapshot delays;
+
+		private final long now;
+
+		private final Time start;
+
+		/** Stops are returned from this many minutes after start... */
+		private final int begin;
+
+		/** ...up to this many. */
+		private final int end;
+
+		private int left;
+
+		private final PriorityQueue<Late> held = new PriorityQueue<Late>(16, new Comparator<Late>() {
+			@Override
+			public int compare(Late l1, Late l2) {
+				return l1.offset - l2.offset;
+			}
+		});
+
+		/** The next scheduled stop, read but not yet moved, or null. */
+		private Stop ahead;
+
+		DelayIterator(Iterator<Stop> iter, Snapshot delays, long now, Time start, int begin, int end, int limit) {
+			this.iter = iter;
+			this.delays = delays;
+			this.now = now;
+			this.start = start;
+			this.begin = begin;
+			this.end = end;
+			this.left = limit;
+		}
+
+		@Override
+		protected Stop findNext() {
+			while (left > 0) {
+				if (ahead == null && iter.hasNext())
+					ahead = iter.next();
+				int scheduled = ahead == null ? Integer.MAX_VALUE : start.minutesUntil(ahead.getTime());
+				Late first = held.peek();
+				if (first != null && first.offset <= scheduled) {
+					held.poll();
+					left--;
+					return first.stop;
+				}
+				if (ahead == null)
+					return null;
+				int late = delays.minutesLate(ahead, now);
+				int offset = scheduled + late;
+				if (offset >= begin && offset < end) {
+					Stop s = late == 0 ? ahead : new Stop(ahead.getKeyword(), ahead.getTime().addMinutes(late), ahead.getDirection());
+					held.add(new Late(s, offset));
+				}
+				ahead = null;
+			}
+			return null;
+		}
+	}
+}
@@ -1,9 +1,6 @@
 package persistance.schedule.store;
 
-import static java.util.regex.Pattern.compile;
-import static persistance.schedule.Stop.Direction.INBOUND;
-import static persistance.schedule.Stop.Direction.NONE;
-import static persistance.schedule.Stop.Direction.OUTBOUND;
+import static time.Time.MINUTES_PER_DAY;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -12,13 +9,12 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import persistance.schedule.Stop;
 import persistance.schedule.Stop.Direction;
 
 import time.Day;
+import time.IntervalSet;
 import time.Time;
 import time.TimeRange;
 
@@ -50,9 +46,21 @@ public class FileParser {
 		}
 	}
 
+	protected class ScheduleParseException extends ParseException {
+		private static final long serialVersionUID = 1L;
+
+		public ScheduleParseException(String message, int column, Throwable cause) {
+			super("Could not parse schedule. Expected Schedule: <First day>-<Last day> <Start time>-<End time>.", message, lineNumber, column);
+			initCause(cause);
+		}
+	}
+
 	private File file;
 
 	private MutableSchedule schedule;
+
+	/** Collects the stops while parse() reads a whole file, or null when lines go straight to the schedule. */
+	private ScheduleBuilder builder = null;
 	
 	private Collection<TimeRange> currentSchedule = null;
 
@@ -60,6 +68,11 @@ public class FileParser {
 
 	private long lineNumber;
 
+	/** The number of lines parse() could not make sense of, and frequencies it had to leave out. */
+	private int errorCount;
+
+	private final ScheduleLexer lexer = new ScheduleLexer();
+
 	public FileParser(MutableSchedule schedule, Keywords keywords, File file) {
 		this.file = file;
 		this.schedule = schedule;
@@ -77,86 +90,120 @@ public class FileParser {
 		}
 
 		lineNumber = 0;
+		errorCount = 0;
 		String line;
+		builder = new ScheduleBuilder();
+		RuntimeException failure = null;
 		try {
 			while ((line = reader.readLine()) != null) {
 				try {
 					lineNumber++;
 					parseLine(line);
 				} catch (ParseException e) {
-					// TODO: Improved error logging.
-					// For now, just print the stack trace
-					e.printStackTrace();
+					report(e);
 				}
 			}
 		} catch (IOException e) {
-			throw new IllegalStateException("Could not parse file.", e);
+			failure = new IllegalStateException("Could not parse file.", e);
+		} catch (RuntimeException e) {
+			failure = e;
 		}
+		// Like parsing line by line, keep whatever was read before an error
+		try {
+			builder.build(schedule);
+		} catch (RuntimeException e) {
+			// The error that stopped the reading, if any, is the one to report
+			if (failure == null)
+				throw e;
+			failure.addSuppressed(e);
+		} finally {
+			builder = null;
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * Returns the number of lines the last call to parse() could not make
+	 * sense of, plus the frequencies it left out for starting outside their
+	 * schedule.
+	 */
+	public int getErrorCount() {
+		return errorCount;
 	}
 
-	protected void parseLine(String original) {
-		String line = original.trim();
-		if (line.length() == 0 || line.startsWith("#"))
+	private void report(ParseException e) {
+		errorCount++;
+		// TODO: Improved error logging.
+		// For now, just print the stack trace
+		e.printStackTrace();
+	}
+
+	protected void parseLine(String line) {
+		lexer.reset(line, lineNumber);
+		if (lexer.atEnd() || lexer.peek('#'))
 			return; // Nothing to do
 
-		String[] tokens = line.split("\\s*,\\s*");
+		if (lexer.accept("Schedule:")) {
+			parseSchedule();
+			return;
+		}
 
-		if(tokens.length < 1)
-			throw new ParseException("Failed to parse any tokens from line '%s'.", "Encountered an unknown error.", lineNumber);
-		else if(tokens[0].startsWith("Schedule:")) 
-			parseSchedule(tokens[0].substring(tokens[0].indexOf(':') + 1));
-		else if(isValidKeyword(tokens[0]) && keywords.contains(tokens[0]))
-			parseStops(tokens);
-		else
-			parseKeyword(tokens);
+		int end = lexer.findFieldEnd();
+		String keyword = keywords.find(line, lexer.getPosition(), end);
+		if (keyword != null) {
+			lexer.setPosition(end);
+			parseStops(keyword);
+		} else {
+			parseKeyword();
+		}
 	}
 
 	protected boolean isValidKeyword(String word) {
-		// Apparently Java likes to pretend regexes are all bounded
-		// i.e. if we ask if a string matches /\s/ it will try to match /^\s$/
-		final String regex = ".*\\s.*";
-		return !word.matches(regex);
+		for (int i = 0; i < word.length(); i++) {
+			if (Character.isWhitespace(word.charAt(i)))
+				return false;
+		}
+		return true;
 	}
 	
-	private void parseKeyword(String[] tokens) {
-		if (tokens.length != 2)
-			throw new KeywordParseException(String.format("Wrong number of tokens passed to parseKeyword. Expected 2, but was %d.", tokens.length));
+	private void parseKeyword() {
+		// Keyword lines are rare, so we just pull out the fields.
+		String[] tokens = new String[3];
+		int count = 0;
+		do {
+			String field = lexer.readField();
+			if (count < tokens.length)
+				tokens[count] = field;
+			count++;
+		} while (lexer.accept(','));
+		// Like String.split, we ignore any empty fields at the end
+		while (count > 0 && count <= tokens.length && tokens[count - 1].length() == 0)
+			count--;
+
+		if (count != 2)
+			throw new KeywordParseException(String.format("Wrong number of tokens passed to parseKeyword. Expected 2, but was %d.", count));
 		if (!isValidKeyword(tokens[1]))
 			throw new IllegalKeywordParseException(tokens[1], String.format("'%s' failed to pass keyword validation.", tokens[1]));
 
 		keywords.add(tokens[1], tokens[0]);
 	}
 
-	private void parseSchedule(String timeperiod) {
+	private void parseSchedule() {
 		//  Monday-Friday 7:05am-11:00pm
-		Pattern dayPattern = compile("(\\w+)\\s*(?:-\\s*(\\w+))?");
-		Pattern timePattern = compile("(\\d{1,2}:\\d{2}(?:am|pm)*)\\s*-\\s*(\\d{1,2}:\\d{2}(?:am|pm)*)");
-		Matcher days = dayPattern.matcher(timeperiod);
-		Matcher times = timePattern.matcher(timeperiod);
-		
-		if(!days.find())
-			// TODO: graceful error
-			return;
-		
-		if(!times.find())
-			// TODO: graceful error
-			return;
-		
-		Day start, end;
-		if(days.group(2) == null)  {
-			// Start and end are the same
-			start = end = Day.findByName(days.group(1));
-		} else {
-			start = Day.findByName(days.group(1));
-			end = Day.findByName(days.group(2));
-		}		
-		String startTime = times.group(1), endTime = times.group(2);
+		Day start = parseDay();
+		Day end = lexer.accept('-') ? parseDay() : start;
+		int startTime = lexer.readTime();
+		lexer.expect('-');
+		int endTime = lexer.readTime();
+		if (!lexer.atEnd())
+			throw new ScheduleParseException("Unexpected characters after the schedule's end time.", lexer.getColumn(), null);
+
 		Collection<TimeRange> newSchedule = new LinkedList<TimeRange>();
-		
-		// TODO: Graceful error
 		for(Day d : Day.daysBetween(start, end)) {
-			Time s = Time.parse(startTime, d), e = Time.parse(endTime, d);
-			if(e.compareTo(s) < 0)
+			Time s = Time.valueOf(d.getIndex() * MINUTES_PER_DAY + startTime);
+			Time e = Time.valueOf(d.getIndex() * MINUTES_PER_DAY + endTime);
+			if(endTime < startTime)
 				e = e.addDays(1); // Assume we're looking at an overnight schedule (e.g. 7:00pm-2:00am)
 			newSchedule.add(new TimeRange(s, e));
 		}
@@ -166,25 +213,34 @@ public class FileParser {
 		currentSchedule.clear();
 		currentSchedule.addAll(newSchedule);
 		
-		// Overwrite the previously existing schedule (if any) with this one.
-		for(TimeRange r : currentSchedule)
-			schedule.removeStops(r);
+		// Overwrite the previously existing schedule (if any) with this one, joining days that run into each other.
+		for(TimeRange r : IntervalSet.of(currentSchedule).getRanges())
+			removeStops(r);
 	}
 
-	private void parseStops(String[] tokens) {
+	private Day parseDay() {
+		lexer.skipWhitespace();
+		int column = lexer.getColumn();
+		String name = lexer.readWord();
+		try {
+			return Day.findByName(name);
+		} catch (IllegalArgumentException e) {
+			throw new ScheduleParseException(e.getMessage(), column, e);
+		}
+	}
+
+	private void parseStops(String keyword) {
 		// square, 7:05, 8:05, 9:05, 10:05, 3:21, 4:18, 5:18, 6:29, 7:35, 8:36, 9:36, 10:35
+		// or, for a stop every 12 minutes in between, square, 7:05, 8:05-3:05pm every 12, 3:21pm
 		if(currentSchedule.isEmpty())
 			throw new NoScheduleParseException("Attempted to parse stops without an enclosing schedule.");
 		
-		String keyword = tokens[0];
-		if(!keywords.contains(keyword))
-			// TODO: Graceful error.
-			return;
-		
 		// If our schedule starts in the PM, then start in the PM
 //		boolean pm = currentSchedule.iterator().next().getBeginning().getHour() >= 12;
 //		Time lastParsed = null;
-		for (int i = 1; i < tokens.length; i++) {
+		while (lexer.accept(',')) {
+			if (lexer.atFieldEnd())
+				continue; // Empty column
 			/* TODO: Magic am/pm
 			Time newTime = Time.parse(tokens[i], Day.SATURDAY); // I like saturdays.
 			if(lastParsed != null) {
@@ -198,10 +254,19 @@ public class FileParser {
 			// We explode each time into the appropriate number of Stops
 			parseTimes(keyword, tokens[i], pm);
 			*/
-			parseTimes(keyword, tokens[i], false);
+			int time = lexer.readTime();
+			if (lexer.accept('-')) {
+				parseFrequency(keyword, time);
+				continue;
+			}
+			Direction dir = lexer.readDirection();
+			lexer.expectFieldEnd("a stop time");
+			parseTimes(keyword, time, dir);
 			
 //			lastParsed = newTime;
 		}
+		if (!lexer.atEnd())
+			throw lexer.error("Could not parse stops. Expected <keyword>, <time>, <time>, ...", "Found characters after the last stop time.");
 	}
 
 //	private boolean checkAmPm(Time lastParsed, Time newTime, boolean pm) {
@@ -219,34 +284,77 @@ public class FileParser {
 //		return pm;
 //	}
 
-	private void parseTimes(String keyword, String time, boolean pm) {
-		Direction dir;
-		if(time.indexOf('o') >= 0)
-			dir = OUTBOUND; 
-		else if(time.indexOf('i') >= 0)
-			dir = INBOUND; 
-		else
-			dir = NONE;
-		
+	/** Reads the rest of a field like 7:00am-7:00pm every 12 o, which makes a stop every 12 minutes from first to last. */
+	private void parseFrequency(String keyword, int first) {
+		int last = lexer.readTime();
+		if (!lexer.accept("every"))
+			throw lexer.error("Expected 'every', as in 7:00am-7:00pm every 12, here.", "Found a time range without a headway.");
+		int column = lexer.getColumn();
+		int headway = lexer.readNumber();
+		if (headway < 1 || headway > MINUTES_PER_DAY)
+			throw lexer.error("The minutes between stops must be from 1 to 1440.", String.format("Headway %d is out of range.", headway), column - 1);
+		Direction dir = lexer.readDirection();
+		lexer.expectFieldEnd("a frequency");
+		int length = last >= first ? last - first : last + MINUTES_PER_DAY - first;
+		boolean placed = false;
 		for (TimeRange r : currentSchedule) {
-			Time parsedTime = Time.parse(time, r.getBeginning().getDay());
-			if(r.getBeginning().getDay() == r.getEnd().getDay()) {
-				if(!r.isInRange(parsedTime))
-						// TODO: Handle error case
-						continue;
-			} else {
-				Time nextDayParsedTime = parsedTime.addDays(1);
-				if (!r.isInRange(parsedTime) && !r.isInRange(nextDayParsedTime))
-					// TODO: Handle error case
-					continue;
-				else if (!r.isInRange(parsedTime) && r.isInRange(nextDayParsedTime))
-					parsedTime = nextDayParsedTime;
-			}			
-			
-			if(pm && parsedTime.getHour() < 12)
-				parsedTime.addHours(12);
-			
-			schedule.addStop(new Stop(keyword, parsedTime, dir));
+			Time start = placeInRange(first, r);
+			if (start == null)
+				continue;
+			placed = true;
+			Frequency f = Frequency.between(keyword, dir, start, start.addMinutes(length), headway);
+			// Keep to the schedule's hours, as stops listed one by one do
+			for (Frequency inRange : f.remove(new TimeRange(r.getEnd(), r.getBeginning())))
+				addFrequency(inRange);
 		}
+		// Left out, but counted, so a strict reload doesn't quietly lose it. The rest of the line is still read.
+		if (!placed)
+			report(lexer.error("This frequency starts outside the schedule's hours.", String.format("Frequency starting at minute %d of the day is outside the schedule.", first)));
+	}
+
+	/**
+	 * Returns the time in r that time (in minutes after midnight) stands for:
+	 * on r's first day, or the next for an overnight schedule. Returns null if
+	 * it isn't in r at all.
+	 */
+	private static Time placeInRange(int time, TimeRange r) {
+		Time parsedTime = Time.valueOf(r.getBeginning().getDay().getIndex() * MINUTES_PER_DAY + time);
+		if (r.isInRange(parsedTime))
+			return parsedTime;
+		if (r.getBeginning().getDay() != r.getEnd().getDay() && r.isInRange(parsedTime.addDays(1)))
+			return parsedTime.addDays(1);
+		return null;
+	}
+
+	/** Adds a stop for each day of the current schedule that time (in minutes after midnight) falls into. */
+	private void parseTimes(String keyword, int time, Direction dir) {
+		for (TimeRange r : currentSchedule) {
+			Time parsedTime = placeInRange(time, r);
+			if (parsedTime == null)
+				// TODO: Handle error case
+				continue;
+			addStop(new Stop(keyword, parsedTime, dir));
+		}
+	}
+
+	private void addStop(Stop s) {
+		if (builder != null)
+			builder.addStop(s);
+		else
+			schedule.addStop(s);
+	}
+
+	private void addFrequency(Frequency f) {
+		if (builder != null)
+			builder.addFrequency(f);
+		else
+			FrequencySchedule.add(schedule, f);
+	}
+
+	private void removeStops(TimeRange r) {
+		if (builder != null)
+			builder.removeStops(r);
+		else
+			schedule.removeStops(r);
 	}
 }
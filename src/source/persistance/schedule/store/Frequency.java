@@ -0,0 +1,171 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * A run of evenly spaced stops at one keyword, such as every 12 minutes from
+ * 7:00am to 7:00pm: the first stop, the minutes between stops and how many
+ * there are. Any of the stops can be found with arithmetic, without listing
+ * them. A run may go past the end of the week, but not all the way around.
+ */
+public class Frequency {
+
+	private final String keyword;
+
+	private final Direction direction;
+
+	private final Time first;
+
+	private final int headway;
+
+	private final int count;
+
+	/**
+	 * @param first
+	 *            the time of the first stop
+	 * @param headway
+	 *            the minutes between stops, at least 1
+	 * @param count
+	 *            the number of stops, at least 1
+	 */
+	public Frequency(String keyword, Direction direction, Time first, int headway, int count) {
+		if (headway < 1 || count < 1 || (long) headway * (count - 1) >= MINUTES_PER_WEEK)
+			throw new IllegalArgumentException(String.format("Every %d minutes, %d times, is not a valid frequency.", headway, count));
+		this.keyword = keyword;
+		this.direction = direction;
+		this.first = first;
+		this.headway = headway;
+		this.count = count;
+	}
+
+	/**
+	 * Returns the frequency with stops every headway minutes from first up to
+	 * and including last, if it falls on a stop, wrapping past midnight if last
+	 * is earlier than first.
+	 */
+	public static Frequency between(String keyword, Direction direction, Time first, Time last, int headway) {
+		if (headway < 1)
+			throw new IllegalArgumentException(String.format("Every %d minutes is not a valid frequency.", headway));
+		return new Frequency(keyword, direction, first, headway, first.minutesUntil(last) / headway + 1);
+	}
+
+	public String getKeyword() {
+		return keyword;
+	}
+
+	public Direction getDirection() {
+		return direction;
+	}
+
+	public Time getFirst() {
+		return first;
+	}
+
+	/** Returns the minutes between stops. */
+	public int getHeadway() {
+		return headway;
+	}
+
+	/** Returns the number of stops. */
+	public int getCount() {
+		return count;
+	}
+
+	/** Returns stop k, counting from 0. */
+	public Stop getStop(int k) {
+		return new Stop(keyword, timeOf(k), direction);
+	}
+
+	/** Returns the time of stop k, counting from 0. */
+	Time timeOf(int k) {
+		return Time.valueOf((first.getMinuteOfWeek() + k * headway) % MINUTES_PER_WEEK);
+	}
+
+	/**
+	 * Returns the first stop at or after t, as an index, or 0 if t comes after
+	 * the last stop, since the next is then the first of the following week.
+	 */
+	int indexAfter(Time t) {
+		int offset = first.minutesUntil(t);
+		int k = (offset + headway - 1) / headway;
+		return k < count ? k : 0;
+	}
+
+	/** Tests whether there is a stop at exactly t. */
+	public boolean runsAt(Time t) {
+		int offset = first.minutesUntil(t);
+		return offset % headway == 0 && offset / headway < count;
+	}
+
+	/**
+	 * Returns what is left of this frequency once the stops in range are taken
+	 * out: no frequencies, this one, or one or two shorter ones keeping to the
+	 * same times.
+	 */
+	Frequency[] remove(TimeRange range) {
+		int begin = first.minutesUntil(range.getBeginning());
+		int length = range.getLength();
+		// The stops in range, as indexes [from, to), with the range placed relative to first
+		int from, to;
+		if (begin + length <= MINUTES_PER_WEEK) {
+			from = (begin + headway - 1) / headway;
+			to = (begin + length + headway - 1) / headway;
+		} else {
+			// The range wraps around past first, so it covers the start of the run
+			from = 0;
+			to = (begin + length - MINUTES_PER_WEEK + headway - 1) / headway;
+			int tailFrom = (begin + headway - 1) / headway;
+			if (tailFrom < count)
+				return slice(Math.min(to, count), tailFrom);
+		}
+		from = Math.min(from, count);
+		to = Math.min(to, count);
+		if (from >= to)
+			return new Frequency[] { this };
+		if (from == 0)
+			return slice(to, count);
+		if (to == count)
+			return slice(0, from);
+		return new Frequency[] { new Frequency(keyword, direction, first, headway, from), after(to, count) };
+	}
+
+	/** The stops with indexes [from, to), as at most one frequency. */
+	private Frequency[] slice(int from, int to) {
+		if (from >= to)
+			return new Frequency[0];
+		return new Frequency[] { after(from, to) };
+	}
+
+	private Frequency after(int from, int to) {
+		return new Frequency(keyword, direction, timeOf(from), headway, to - from);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Frequency))
+			return false;
+		Frequency f = (Frequency) obj;
+		return keyword.equals(f.keyword) && direction == f.direction && first.equals(f.first) && headway == f.headway && count == f.count;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		hash = hash * 31 + keyword.hashCode();
+		hash = hash * 31 + direction.hashCode();
+		hash = hash * 31 + first.hashCode();
+		hash = hash * 31 + headway;
+		hash = hash * 31 + count;
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s every %d minutes from %s, %d times %s", keyword, headway, first.toString(false, true), count, direction.getMarker());
+	}
+}
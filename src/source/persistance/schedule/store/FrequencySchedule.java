@@ -0,0 +1,263 @@
+package persistance.schedule.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import persistance.schedule.Schedule;
+import persistance.schedule.Stop;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * A schedule of frequencies, such as every 12 minutes from 7:00am to 7:00pm,
+ * on top of another schedule holding the stops that were listed one by one.
+ * A frequency costs the same to store however many stops it makes, and its
+ * next stop after any time is worked out, not searched for. Queries merge
+ * the stops of both in order of time, dropping any stop made by both.
+ * <p>
+ * Removing a range of time cuts the stops in it out of each frequency, so a
+ * later schedule block overrides a frequency just as it would listed stops.
+ * Like the schedule it wraps, this is not safe for use by multiple threads.
+ * <p>
+ * freeze() returns a FrequencySchedule that is: the listed stops compiled,
+ * and the frequencies kept as they are rather than listed out stop by stop.
+ * It can't be changed. compile() lists them out, for a schedule that needs
+ * every stop, such as a snapshot.
+ */
+public class FrequencySchedule implements MutableSchedule {
+
+	/** The listed stops: a MutableSchedule, or its frozen copy once frozen. */
+	private final Schedule stops;
+
+	private final Map<String, List<Frequency>> frequencies;
+
+	private final boolean frozen;
+
+	/** @param stops the schedule to hold the stops added one at a time */
+	public FrequencySchedule(MutableSchedule stops) {
+		this.stops = stops;
+		this.frequencies = new HashMap<String, List<Frequency>>();
+		this.frozen = false;
+	}
+
+	/** Makes a frozen copy of a schedule's frequencies on top of its frozen stops. */
+	private FrequencySchedule(Schedule stops, Map<String, List<Frequency>> frequencies) {
+		Map<String, List<Frequency>> copy = new HashMap<String, List<Frequency>>();
+		for (Map.Entry<String, List<Frequency>> e : frequencies.entrySet()) {
+			if (!e.getValue().isEmpty())
+				copy.put(e.getKey(), Collections.unmodifiableList(new ArrayList<Frequency>(e.getValue())));
+		}
+		this.stops = stops;
+		this.frequencies = Collections.unmodifiableMap(copy);
+		this.frozen = true;
+	}
+
+	/** Adds every stop a frequency makes. */
+	public void addFrequency(Frequency f) {
+		checkNotFrozen();
+		List<Frequency> list = frequencies.get(f.getKeyword());
+		if (list == null) {
+			list = new ArrayList<Frequency>();
+			frequencies.put(f.getKeyword(), list);
+		}
+		list.add(f);
+	}
+
+	/**
+	 * Adds a frequency to schedule: whole, if it is a FrequencySchedule, or
+	 * else one stop at a time.
+	 */
+	static void add(MutableSchedule schedule, Frequency f) {
+		if (schedule instanceof FrequencySchedule) {
+			((FrequencySchedule) schedule).addFrequency(f);
+		} else {
+			for (int k = 0; k < f.getCount(); k++)
+				schedule.addStop(f.getStop(k));
+		}
+	}
+
+	/** Returns the number of frequencies held, which may grow as removals split them. */
+	public int getFrequencyCount() {
+		int count = 0;
+		for (List<Frequency> list : frequencies.values())
+			count += list.size();
+		return count;
+	}
+
+	@Override
+	public void addStop(Stop stop) {
+		checkNotFrozen();
+		((MutableSchedule) stops).addStop(stop);
+	}
+
+	@Override
+	public void removeStops(TimeRange range) {
+		checkNotFrozen();
+		((MutableSchedule) stops).removeStops(range);
+		if (range.getLength() == 0)
+			return;
+		for (List<Frequency> list : frequencies.values()) {
+			List<Frequency> kept = new ArrayList<Frequency>(list.size());
+			for (Frequency f : list)
+				kept.addAll(Arrays.asList(f.remove(range)));
+			list.clear();
+			list.addAll(kept);
+		}
+	}
+
+	@Override
+	public FrequencySchedule freeze() {
+		if (frozen)
+			return this;
+		return new FrequencySchedule(((MutableSchedule) stops).freeze(), frequencies);
+	}
+
+	/** Returns a compiled copy with every stop the frequencies make listed out. */
+	public CompiledSchedule compile() {
+		return new CompiledSchedule(this);
+	}
+
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new UnsupportedOperationException("A frozen schedule can't be changed.");
+	}
+
+	@Override
+	public boolean stopInSchedule(Stop s) {
+		if (isListed(s))
+			return true;
+		List<Frequency> list = frequencies.get(s.getKeyword());
+		if (list != null) {
+			for (Frequency f : list) {
+				if (f.getDirection() == s.getDirection() && f.runsAt(s.getTime()))
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/** Tests whether s is one of the stops listed one by one. */
+	private boolean isListed(Stop s) {
+		if (!frozen)
+			return ((MutableSchedule) stops).stopInSchedule(s);
+		for (Stop next : stops.getNextStops(s.getKeyword(), s.getTime(), Integer.MAX_VALUE)) {
+			if (!next.getTime().equals(s.getTime()))
+				break;
+			if (next.equals(s))
+				return true;
+		}
+		return false;
+	}
+
+	@Override
+	public Stop getNextStop(String locationKeyword, Time t) {
+		Iterator<Stop> next = getNextStops(locationKeyword, t, 1).iterator();
+		return next.hasNext() ? next.next() : null;
+	}
+
+	@Override
+	public Iterable<Stop> getNextStops(final String locationKeyword, final Time t, final int number) {
+		final List<Frequency> list = frequencies.get(locationKeyword);
+		if (list == null || list.isEmpty())
+			return stops.getNextStops(locationKeyword, t, number);
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				List<Iterator<Stop>> iters = new ArrayList<Iterator<Stop>>(list.size() + 1);
+				iters.add(stops.getNextStops(locationKeyword, t, number).iterator());
+				for (Frequency f : list)
+					iters.add(new FrequencyIterator(f, t, null));
+				return new DistinctIterator(new MergingStopIterator(t, iters), number);
+			}
+		};
+	}
+
+	@Override
+	public Iterable<Stop> getStops(final TimeRange range) {
+		if (frequencies.isEmpty())
+			return stops.getStops(range);
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				List<Iterator<Stop>> iters = new ArrayList<Iterator<Stop>>();
+				iters.add(stops.getStops(range).iterator());
+				for (List<Frequency> list : frequencies.values()) {
+					for (Frequency f : list)
+						iters.add(new FrequencyIterator(f, range.getBeginning(), range));
+				}
+				return new DistinctIterator(new MergingStopIterator(range.getBeginning(), iters), Integer.MAX_VALUE);
+			}
+		};
+	}
+
+	/** Reads a frequency's stops from a given time, around the week once, optionally stopping at the end of a range. */
+	private static class FrequencyIterator extends StopIterator {
+
+		private final Frequency frequency;
+
+		private final int start;
+
+		private final TimeRange range;
+
+		private int read = 0;
+
+		FrequencyIterator(Frequency frequency, Time t, TimeRange range) {
+			this.frequency = frequency;
+			this.start = frequency.indexAfter(t);
+			this.range = range;
+		}
+
+		@Override
+		protected Stop findNext() {
+			if (read == frequency.getCount())
+				return null;
+			int k = (start + read) % frequency.getCount();
+			if (range != null && !range.isInRange(frequency.timeOf(k)))
+				return null;
+			read++;
+			return frequency.getStop(k);
+		}
+	}
+
+	/** Drops stops already returned, i.e. made both by a frequency and a listed stop, and stops after a limit. */
+	private static class DistinctIterator extends StopIterator {
+
+		private final Iterator<Stop> iter;
+
+		private int left;
+
+		/** The stops returned at the latest minute, since stops come in order of time. */
+		private final List<Stop> sameMinute = new ArrayList<Stop>();
+
+		DistinctIterator(Iterator<Stop> iter, int limit) {
+			this.iter = iter;
+			this.left = limit;
+		}
+
+		@Override
+		protected Stop findNext() {
+			while (left > 0 && iter.hasNext()) {
+				Stop s = iter.next();
+				if (!sameMinute.isEmpty() && !sameMinute.get(0).getTime().equals(s.getTime()))
+					sameMinute.clear();
+				if (!sameMinute.contains(s)) {
+					sameMinute.add(s);
+					left--;
+					return s;
+				}
+			}
+			return null;
+		}
+	}
+
+	/** Returns the frequencies at a keyword, for testing. */
+	List<Frequency> getFrequencies(String keyword) {
+		List<Frequency> list = frequencies.get(keyword);
+		return list == null ? Collections.<Frequency> emptyList() : Collections.unmodifiableList(list);
+	}
+}
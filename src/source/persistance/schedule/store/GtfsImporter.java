@@ -0,0 +1,293 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_DAY;
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import time.Time;
+
+import core.Keywords;
+
+/**
+ * Loads the weekly pattern of a GTFS feed (see
+ * https://developers.google.com/transit/gtfs/reference) into a schedule.
+ * <p>
+ * Each stop in stops.txt becomes a keyword, named after its stop_code, or its
+ * stop_id if it has no code, and defined by its stop_name. A code that is
+ * already a keyword, built in like help or taken by an earlier stop, is
+ * counted as an error and the stop_id used instead; if that is taken too, the
+ * stop is skipped, so a feed never redefines a keyword. Every departure in
+ * stop_times.txt becomes a stop at that keyword on each day of the week its
+ * trip runs, according to calendar.txt. Dates are ignored: a service runs on
+ * its days of the week for as long as the feed is loaded, and
+ * calendar_dates.txt is not read. A trip's direction_id of 0 is taken as
+ * outbound and 1 as inbound.
+ * <p>
+ * stop_times.txt is read a row at a time, so the memory used is bounded by
+ * the number of stops, trips and services rather than departures. Stops go
+ * straight into the schedule rather than through a ScheduleBuilder, which
+ * would hold every departure until the end, since a feed removes none. Rows
+ * that can't be made sense of are counted and skipped.
+ */
+public class GtfsImporter {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The GTFS calendar.txt columns, in the order of Day.getIndex(). */
+	private static final String[] DAY_COLUMNS = { "sunday", "monday", "tuesday", "wednesday", "thursday", "friday", "saturday" };
+
+	private final MutableSchedule schedule;
+
+	private final Keywords keywords;
+
+	private final File feed;
+
+	/** The days of the week, as bits by Day.getIndex(), each service runs on. */
+	private final Map<String, Integer> serviceDays = new HashMap<String, Integer>();
+
+	/** Each trip's service days and direction. */
+	private final Map<String, Trip> trips = new HashMap<String, Trip>();
+
+	/** The keyword for each stop_id. */
+	private final Map<String, String> stopKeywords = new HashMap<String, String>();
+
+	private long rowCount;
+
+	private long stopCount;
+
+	private long errorCount;
+
+	private static class Trip {
+
+		final int days;
+
+		final Direction direction;
+
+		Trip(int days, Direction direction) {
+			this.days = days;
+			this.direction = direction;
+		}
+	}
+
+	/**
+	 * @param schedule
+	 *            the schedule to add stops to
+	 * @param keywords
+	 *            the keywords to add the feed's stops to
+	 * @param feed
+	 *            the directory holding the unzipped feed
+	 */
+	public GtfsImporter(MutableSchedule schedule, Keywords keywords, File feed) {
+		this.schedule = schedule;
+		this.keywords = keywords;
+		this.feed = feed;
+	}
+
+	/**
+	 * Reads the feed.
+	 *
+	 * @throws IOException
+	 *             if a file cannot be read, or is missing a required column
+	 */
+	public void parse() throws IOException {
+		parseCalendar();
+		parseTrips();
+		parseStops();
+		parseStopTimes();
+	}
+
+	/** The number of stop_times.txt rows read by parse(). */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/** The number of stops added to the schedule by parse(). */
+	public long getStopCount() {
+		return stopCount;
+	}
+
+	/** The number of rows, in any of the files, that were skipped because they made no sense. */
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	private void parseCalendar() throws IOException {
+		CsvReader csv = open("calendar.txt");
+		try {
+			int service = column(csv, "calendar.txt", "service_id");
+			int[] days = new int[DAY_COLUMNS.length];
+			for (int d = 0; d < days.length; d++)
+				days[d] = column(csv, "calendar.txt", DAY_COLUMNS[d]);
+			while (csv.next()) {
+				if (isBlank(csv))
+					continue;
+				int mask = 0;
+				for (int d = 0; d < days.length; d++) {
+					if (csv.get(days[d]).trim().equals("1"))
+						mask |= 1 << d;
+				}
+				serviceDays.put(csv.get(service), mask);
+			}
+		} finally {
+			csv.close();
+		}
+	}
+
+	private void parseTrips() throws IOException {
+		CsvReader csv = open("trips.txt");
+		try {
+			int trip = column(csv, "trips.txt", "trip_id");
+			int service = column(csv, "trips.txt", "service_id");
+			int direction = csv.indexOf("direction_id");
+			while (csv.next()) {
+				if (isBlank(csv))
+					continue;
+				Integer days = serviceDays.get(csv.get(service));
+				if (days == null) {
+					errorCount++; // A service we know nothing about
+					continue;
+				}
+				String dir = direction < 0 ? "" : csv.get(direction).trim();
+				trips.put(csv.get(trip), new Trip(days, dir.equals("0") ? Direction.OUTBOUND : dir.equals("1") ? Direction.INBOUND : Direction.NONE));
+			}
+		} finally {
+			csv.close();
+		}
+	}
+
+	private void parseStops() throws IOException {
+		CsvReader csv = open("stops.txt");
+		try {
+			int id = column(csv, "stops.txt", "stop_id");
+			int code = csv.indexOf("stop_code");
+			int name = csv.indexOf("stop_name");
+			while (csv.next()) {
+				if (isBlank(csv))
+					continue;
+				String keyword = toKeyword(code < 0 ? "" : csv.get(code));
+				if (keyword.isEmpty()) {
+					keyword = toKeyword(csv.get(id));
+				} else if (keywords.contains(keyword)) {
+					errorCount++; // Fall back on the id
+					keyword = toKeyword(csv.get(id));
+				}
+				if (keyword.isEmpty() || keywords.contains(keyword)) {
+					errorCount++;
+					continue;
+				}
+				String definition = name < 0 ? "" : csv.get(name).trim();
+				keywords.add(keyword, definition.isEmpty() ? keyword : definition);
+				stopKeywords.put(csv.get(id), keyword);
+			}
+		} finally {
+			csv.close();
+		}
+	}
+
+	private void parseStopTimes() throws IOException {
+		CsvReader csv = open("stop_times.txt");
+		try {
+			int trip = column(csv, "stop_times.txt", "trip_id");
+			int stop = column(csv, "stop_times.txt", "stop_id");
+			int departure = column(csv, "stop_times.txt", "departure_time");
+			int arrival = csv.indexOf("arrival_time");
+			while (csv.next()) {
+				if (isBlank(csv))
+					continue;
+				rowCount++;
+				Trip t = trips.get(csv.get(trip));
+				String keyword = stopKeywords.get(csv.get(stop));
+				// Stops between timepoints may have no times at all
+				int minute = parseTime(csv.get(departure));
+				if (minute == -1 && arrival >= 0)
+					minute = parseTime(csv.get(arrival));
+				if (t == null || keyword == null || minute < -1) {
+					errorCount++;
+					continue;
+				}
+				if (minute == -1)
+					continue;
+				for (int d = 0; d < DAY_COLUMNS.length; d++) {
+					if ((t.days & 1 << d) != 0) {
+						// Times past midnight, i.e. 25:10:00, belong to the next day
+						Time time = Time.valueOf((d * MINUTES_PER_DAY + minute) % MINUTES_PER_WEEK);
+						schedule.addStop(new Stop(keyword, time, t.direction));
+						stopCount++;
+					}
+				}
+			}
+		} finally {
+			csv.close();
+		}
+	}
+
+	/**
+	 * Parses a GTFS time, H:MM:SS or HH:MM:SS, which may run past 24:00:00,
+	 * into minutes after midnight, dropping the seconds.
+	 *
+	 * @return the minutes, -1 if the time is blank, or -2 if it isn't a time
+	 */
+	static int parseTime(String time) {
+		int i = 0, n = time.length();
+		while (i < n && time.charAt(i) == ' ')
+			i++;
+		if (i == n)
+			return -1;
+		int hours = 0, digits = 0;
+		while (i < n && Character.isDigit(time.charAt(i)) && digits < 3) {
+			hours = hours * 10 + time.charAt(i++) - '0';
+			digits++;
+		}
+		if (digits == 0 || i + 3 > n || time.charAt(i) != ':' || !Character.isDigit(time.charAt(i + 1)) || !Character.isDigit(time.charAt(i + 2)))
+			return -2;
+		int minutes = (time.charAt(i + 1) - '0') * 10 + time.charAt(i + 2) - '0';
+		if (minutes > 59)
+			return -2;
+		return hours * 60 + minutes;
+	}
+
+	/** Turns a stop code or id into a keyword, which can't hold whitespace. */
+	private static String toKeyword(String s) {
+		StringBuilder keyword = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (!Character.isWhitespace(c))
+				keyword.append(Character.toLowerCase(c));
+		}
+		return keyword.toString();
+	}
+
+	private static boolean isBlank(CsvReader csv) {
+		return csv.size() <= 1 && csv.get(0).trim().isEmpty();
+	}
+
+	/** Opens one of the feed's files and reads its header. */
+	private CsvReader open(String name) throws IOException {
+		Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(new File(feed, name)), UTF8));
+		CsvReader csv = new CsvReader(reader);
+		if (!csv.next()) {
+			csv.close();
+			throw new IOException(String.format("%s is empty.", name));
+		}
+		return csv;
+	}
+
+	/** Returns the index of a required column, from the header just read. */
+	private static int column(CsvReader csv, String file, String name) throws IOException {
+		int i = csv.indexOf(name);
+		if (i < 0)
+			throw new IOException(String.format("%s has no %s column.", file, name));
+		return i;
+	}
+}
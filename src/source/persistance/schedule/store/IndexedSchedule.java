@@ -0,0 +1,175 @@
+package persistance.schedule.store;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * A schedule that keeps a sorted column of stop times for each keyword, and
+ * for each keyword and direction. Looking up the next stops at a keyword is a
+ * binary search followed by reading off as many entries as were asked for,
+ * no matter how many other keywords and stops are loaded. Unlike
+ * DefaultSchedule, many keywords can have stops at the same minute.
+ * <p>
+ * Like DefaultSchedule, this is not safe for use by multiple threads.
+ */
+public class IndexedSchedule implements MutableSchedule {
+
+	/** The number of columns kept per keyword: one for all directions, and one for each direction. */
+	private static final int COLUMNS = Direction.values().length + 1;
+
+	/** Column 0 holds every stop at the keyword, column d.ordinal() + 1 those in direction d. */
+	private final Map<String, MinuteColumn[]> columns = new HashMap<String, MinuteColumn[]>();
+
+	@Override
+	public void addStop(Stop s) {
+		MinuteColumn[] c = columns.get(s.getKeyword());
+		if (c == null) {
+			c = new MinuteColumn[COLUMNS];
+			for (int i = 0; i < COLUMNS; i++)
+				c[i] = new MinuteColumn();
+			columns.put(s.getKeyword(), c);
+		}
+		int entry = MinuteColumn.pack(s.getTime().getMinuteOfWeek(), s.getDirection());
+		c[0].add(entry);
+		c[s.getDirection().ordinal() + 1].add(entry);
+	}
+
+	@Override
+	public Stop getNextStop(String locationKeyword, Time t) {
+		return getNextStop(locationKeyword, 0, t);
+	}
+
+	/** Returns the next stop after t at locationKeyword going in direction d, or null if there isn't one. */
+	public Stop getNextStop(String locationKeyword, Direction d, Time t) {
+		return getNextStop(locationKeyword, d.ordinal() + 1, t);
+	}
+
+	@Override
+	public Iterable<Stop> getNextStops(String locationKeyword, Time t, int number) {
+		return getNextStops(locationKeyword, 0, t, number);
+	}
+
+	/** Returns up to number stops after t at locationKeyword going in direction d. */
+	public Iterable<Stop> getNextStops(String locationKeyword, Direction d, Time t, int number) {
+		return getNextStops(locationKeyword, d.ordinal() + 1, t, number);
+	}
+
+	private Stop getNextStop(String locationKeyword, int column, Time t) {
+		MinuteColumn c = column(locationKeyword, column);
+		if (c == null || c.size() == 0)
+			return null;
+		int i = c.ceiling(t.getMinuteOfWeek());
+		return toStop(locationKeyword, c.get(i == c.size() ? 0 : i));
+	}
+
+	private Iterable<Stop> getNextStops(final String locationKeyword, int column, final Time t, final int number) {
+		final MinuteColumn c = column(locationKeyword, column);
+		if (c == null)
+			return Collections.emptyList();
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				return new ColumnIterator(locationKeyword, c, t, number);
+			}
+		};
+	}
+
+	@Override
+	public Iterable<Stop> getStops(final TimeRange range) {
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				List<ColumnIterator> iters = new ArrayList<ColumnIterator>(columns.size());
+				for (Map.Entry<String, MinuteColumn[]> e : columns.entrySet())
+					iters.add(new ColumnIterator(e.getKey(), e.getValue()[0], range));
+				// Merge the keywords back into time order, starting from the range's beginning
+				return new MergingStopIterator(range.getBeginning(), iters);
+			}
+		};
+	}
+
+	@Override
+	public void removeStops(TimeRange range) {
+		if (range.getLength() == 0)
+			return;
+		for (MinuteColumn[] c : columns.values()) {
+			for (MinuteColumn column : c)
+				column.removeStops(range);
+		}
+	}
+
+	@Override
+	public CompiledSchedule freeze() {
+		return new CompiledSchedule(this);
+	}
+
+	@Override
+	public boolean stopInSchedule(Stop s) {
+		MinuteColumn c = column(s.getKeyword(), 0);
+		return c != null && c.contains(MinuteColumn.pack(s.getTime().getMinuteOfWeek(), s.getDirection()));
+	}
+
+	private MinuteColumn column(String locationKeyword, int column) {
+		MinuteColumn[] c = columns.get(locationKeyword);
+		return c == null ? null : c[column];
+	}
+
+	/**
+	 * Reads the stops in a column from a time onwards, wrapping around the
+	 * week, until it has read a number of them or left a range.
+	 */
+	private static class ColumnIterator extends StopIterator {
+
+		private final String keyword;
+
+		private final MinuteColumn column;
+
+		private final int start;
+
+		private final int count;
+
+		private final TimeRange range;
+
+		private int read = 0;
+
+		ColumnIterator(String keyword, MinuteColumn column, Time t, int number) {
+			this.keyword = keyword;
+			this.column = column;
+			this.start = column.ceiling(t.getMinuteOfWeek());
+			this.count = Math.min(number, column.size());
+			this.range = null;
+		}
+
+		ColumnIterator(String keyword, MinuteColumn column, TimeRange range) {
+			this.keyword = keyword;
+			this.column = column;
+			this.start = column.ceiling(range.getBeginning().getMinuteOfWeek());
+			this.count = column.size();
+			this.range = range;
+		}
+
+		@Override
+		protected Stop findNext() {
+			if (read == count)
+				return null;
+			int entry = column.get((start + read) % column.size());
+			if (range != null && !range.isInRange(Time.valueOf(MinuteColumn.minuteOf(entry))))
+				return null;
+			read++;
+			return toStop(keyword, entry);
+		}
+	}
+
+	private static Stop toStop(String keyword, int entry) {
+		return new Stop(keyword, Time.valueOf(MinuteColumn.minuteOf(entry)), MinuteColumn.directionOf(entry));
+	}
+}
@@ -0,0 +1,297 @@
+package persistance.schedule.store;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import persistance.schedule.Stop.Direction;
+import time.Time;
+
+import core.Keywords;
+
+/**
+ * A schedule that is queried in place from a memory-mapped snapshot file, so
+ * it is ready as soon as the file is mapped and its stops live outside the
+ * heap. Like CompiledSchedule, it is immutable and safe to share between
+ * threads: the mapping is only ever read with absolute gets.
+ * <p>
+ * A snapshot is written from a compiled schedule, next to the text file it was
+ * parsed from, and records a CRC32 of that text. {@link #open(File, long)}
+ * refuses a snapshot whose checksum doesn't match, so the caller knows to
+ * parse the text again.
+ * <p>
+ * The file is big-endian and laid out as:
+ *
+ * <pre>
+ * header       int magic, int version, long text checksum,
+ *              int stops, int keywords, int definitions, int string bytes
+ * strings      each keyword name, then each keyword and its definition,
+ *              as a short byte count and UTF-8 bytes, padded to 4 bytes
+ * minutes      int per stop, in time order
+ * starts       int per keyword, plus one, into entries
+ * entries      int per stop, as MinuteColumn entries grouped by keyword
+ * ids          short per stop, in time order
+ * directions   byte per stop, in time order
+ * </pre>
+ */
+public class MappedSchedule extends PackedSchedule {
+
+	/** "PioS" */
+	private static final int MAGIC = 0x50696f53;
+
+	private static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 32;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Returns the CRC32 of the contents of file, to tell whether a snapshot
+	 * was made from it.
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public static long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+				crc.update(buffer, 0, read);
+		} finally {
+			in.close();
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Writes schedule, and the definitions of keywords, to snapshot. The file
+	 * is written alongside and then moved into place, so a snapshot that is
+	 * already mapped is never changed underneath its readers.
+	 *
+	 * @param checksum
+	 *            the checksum of the text the schedule was parsed from
+	 * @throws IOException
+	 *             if the snapshot cannot be written
+	 */
+	public static void write(File snapshot, long checksum, CompiledSchedule schedule, Keywords keywords) throws IOException {
+		int stops = schedule.size(), keywordCount = schedule.keywordCount();
+		byte[][] strings = new byte[keywordCount + 2 * keywords.words().size()][];
+		int s = 0;
+		for (int id = 0; id < keywordCount; id++)
+			strings[s++] = schedule.keyword(id).getBytes(UTF8);
+		for (String word : keywords.words()) {
+			strings[s++] = word.getBytes(UTF8);
+			strings[s++] = keywords.getDefinition(word).getBytes(UTF8);
+		}
+		int stringBytes = 0;
+		for (byte[] string : strings) {
+			if (string.length > Short.MAX_VALUE)
+				throw new IOException("Keyword or definition too long for a snapshot.");
+			stringBytes += 2 + string.length;
+		}
+		stringBytes = (stringBytes + 3) & ~3;
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + stringBytes + 4 * (2 * stops + keywordCount + 1) + 2 * stops + stops);
+		buffer.putInt(MAGIC).putInt(VERSION).putLong(checksum);
+		buffer.putInt(stops).putInt(keywordCount).putInt(keywords.words().size()).putInt(stringBytes);
+		for (byte[] string : strings)
+			buffer.putShort((short) string.length).put(string);
+		buffer.position(HEADER_BYTES + stringBytes);
+		for (int i = 0; i < stops; i++)
+			buffer.putInt(schedule.minuteAt(i));
+		for (int id = 0; id <= keywordCount; id++)
+			buffer.putInt(schedule.keywordStart(id));
+		for (int i = 0; i < stops; i++)
+			buffer.putInt(schedule.entryAt(i));
+		for (int i = 0; i < stops; i++)
+			buffer.putShort((short) schedule.keywordAt(i));
+		for (int i = 0; i < stops; i++)
+			buffer.put((byte) schedule.directionAt(i));
+
+		File temp = new File(snapshot.getPath() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(buffer.array());
+		} finally {
+			out.close();
+		}
+		Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Maps snapshot, if it exists and was made from text with the given
+	 * checksum.
+	 *
+	 * @return the schedule, or null if the snapshot is missing, stale or
+	 *         damaged
+	 */
+	public static MappedSchedule open(File snapshot, long checksum) {
+		if (!snapshot.isFile())
+			return null;
+		try {
+			FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ);
+			try {
+				// The mapping stays valid after the channel is closed
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.limit() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getLong(8) != checksum)
+					return null;
+				return new MappedSchedule(buffer);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			return null;
+		} catch (IllegalArgumentException e) {
+			return null; // Damaged
+		} catch (BufferUnderflowException e) {
+			return null; // Damaged
+		} catch (IndexOutOfBoundsException e) {
+			return null; // Damaged
+		}
+	}
+
+	private final ByteBuffer buffer;
+
+	private final int stops;
+
+	/** Keyword names, indexed by id. Decoded up front, since there are few of them. */
+	private final String[] keywords;
+
+	private final Map<String, Integer> keywordIds = new HashMap<String, Integer>();
+
+	/** Each keyword and its definition, in pairs. */
+	private final String[] definitions;
+
+	private final int minutesOffset;
+
+	private final int startsOffset;
+
+	private final int entriesOffset;
+
+	private final int idsOffset;
+
+	private final int directionsOffset;
+
+	private MappedSchedule(ByteBuffer buffer) {
+		this.buffer = buffer;
+		stops = buffer.getInt(16);
+		int keywordCount = buffer.getInt(20);
+		int definitionCount = buffer.getInt(24);
+		int stringBytes = buffer.getInt(28);
+		int limit = buffer.limit();
+		if (stops < 0 || stops > limit || keywordCount < 0 || keywordCount > Short.MAX_VALUE + 1
+				|| definitionCount < 0 || definitionCount > limit || stringBytes < 0 || stringBytes > limit)
+			throw new IllegalArgumentException("Bad counts in snapshot header.");
+
+		ByteBuffer strings = buffer.duplicate();
+		strings.position(HEADER_BYTES);
+		keywords = new String[keywordCount];
+		for (int id = 0; id < keywordCount; id++) {
+			keywords[id] = readString(strings);
+			keywordIds.put(keywords[id], id);
+		}
+		definitions = new String[2 * definitionCount];
+		for (int i = 0; i < definitions.length; i++)
+			definitions[i] = readString(strings);
+
+		minutesOffset = HEADER_BYTES + stringBytes;
+		startsOffset = minutesOffset + 4 * stops;
+		entriesOffset = startsOffset + 4 * (keywordCount + 1);
+		idsOffset = entriesOffset + 4 * stops;
+		directionsOffset = idsOffset + 2 * stops;
+		if (directionsOffset + stops != buffer.limit())
+			throw new IllegalArgumentException("Snapshot is the wrong length.");
+
+		// Check the columns once, so that queries can trust them
+		if (keywordStart(0) != 0 || keywordStart(keywordCount) != stops)
+			throw new IllegalArgumentException("Bad keyword column.");
+		for (int id = 0; id < keywordCount; id++) {
+			if (keywordStart(id) > keywordStart(id + 1))
+				throw new IllegalArgumentException("Bad keyword column.");
+		}
+		for (int i = 0; i < stops; i++) {
+			if (minuteAt(i) < 0 || minuteAt(i) >= Time.MINUTES_PER_WEEK || (i > 0 && minuteAt(i) < minuteAt(i - 1))
+					|| keywordAt(i) < 0 || keywordAt(i) >= keywordCount
+					|| directionAt(i) < 0 || directionAt(i) >= Direction.values().length
+					|| MinuteColumn.minuteOf(entryAt(i)) >= Time.MINUTES_PER_WEEK || (entryAt(i) & 3) >= Direction.values().length)
+				throw new IllegalArgumentException("Bad stop column.");
+		}
+	}
+
+	private static String readString(ByteBuffer strings) {
+		short length = strings.getShort();
+		if (length < 0)
+			throw new IllegalArgumentException("Bad string in snapshot.");
+		byte[] bytes = new byte[length];
+		strings.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/** Adds the keywords and definitions saved with the schedule to keywords. */
+	public void addDefinitionsTo(Keywords keywords) {
+		for (int i = 0; i < definitions.length; i += 2)
+			keywords.add(definitions[i], definitions[i + 1]);
+	}
+
+	@Override
+	public int size() {
+		return stops;
+	}
+
+	@Override
+	int minuteAt(int i) {
+		return buffer.getInt(minutesOffset + 4 * i);
+	}
+
+	@Override
+	int keywordAt(int i) {
+		return buffer.getShort(idsOffset + 2 * i);
+	}
+
+	@Override
+	int directionAt(int i) {
+		return buffer.get(directionsOffset + i);
+	}
+
+	@Override
+	int keywordCount() {
+		return keywords.length;
+	}
+
+	@Override
+	String keyword(int id) {
+		return keywords[id];
+	}
+
+	@Override
+	int keywordId(String keyword) {
+		Integer id = keywordIds.get(keyword);
+		return id == null ? -1 : id;
+	}
+
+	@Override
+	int keywordStart(int id) {
+		return buffer.getInt(startsOffset + 4 * id);
+	}
+
+	@Override
+	int entryAt(int i) {
+		return buffer.getInt(entriesOffset + 4 * i);
+	}
+}
@@ -0,0 +1,58 @@
+package persistance.schedule.store;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import persistance.schedule.Stop;
+import time.Time;
+
+/**
+ * Merges several iterators, each of which returns stops in order of time from
+ * <code>begin</code>, into one that does the same. Only the next stop from
+ * each iterator is held at once. Package-internal.
+ */
+class MergingStopIterator extends StopIterator {
+
+	/** An iterator, together with the stop it returned last. */
+	private static class Head {
+
+		final Iterator<Stop> iter;
+
+		Stop stop;
+
+		Head(Iterator<Stop> iter) {
+			this.iter = iter;
+			this.stop = iter.next();
+		}
+	}
+
+	private final PriorityQueue<Head> heads;
+
+	public MergingStopIterator(final Time begin, List<? extends Iterator<Stop>> iters) {
+		heads = new PriorityQueue<Head>(Math.max(iters.size(), 1), new Comparator<Head>() {
+			@Override
+			public int compare(Head h1, Head h2) {
+				return begin.minutesUntil(h1.stop.getTime()) - begin.minutesUntil(h2.stop.getTime());
+			}
+		});
+		for (Iterator<Stop> iter : iters) {
+			if (iter.hasNext())
+				heads.add(new Head(iter));
+		}
+	}
+
+	@Override
+	protected Stop findNext() {
+		Head head = heads.poll();
+		if (head == null)
+			return null;
+		Stop s = head.stop;
+		if (head.iter.hasNext()) {
+			head.stop = head.iter.next();
+			heads.add(head);
+		}
+		return s;
+	}
+}
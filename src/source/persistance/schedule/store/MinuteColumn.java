@@ -0,0 +1,121 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.Arrays;
+
+import persistance.schedule.Stop.Direction;
+import time.TimeRange;
+
+/**
+ * A growable, sorted array of stops packed into ints as
+ * <code>minuteOfWeek << 2 | direction</code>, so ordering the ints orders the
+ * stops by time. Appends are cheap; the array is sorted (and duplicates
+ * dropped) the next time it is read. Package-internal.
+ */
+class MinuteColumn {
+
+	/** Packs a stop at minuteOfWeek in direction d into a single int. */
+	static int pack(int minuteOfWeek, Direction d) {
+		return minuteOfWeek << 2 | d.ordinal();
+	}
+
+	static int minuteOf(int entry) {
+		return entry >>> 2;
+	}
+
+	static Direction directionOf(int entry) {
+		return DIRECTIONS[entry & 3];
+	}
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	private int[] entries = new int[8];
+
+	private int size;
+
+	private boolean sorted = true;
+
+	public void add(int entry) {
+		if (size == entries.length)
+			entries = Arrays.copyOf(entries, size * 2);
+		if (size > 0 && entry <= entries[size - 1])
+			sorted = false;
+		entries[size++] = entry;
+	}
+
+	/** Returns the number of stops in this column. */
+	public int size() {
+		ensureSorted();
+		return size;
+	}
+
+	/** Returns the i-th stop, in order of time. */
+	public int get(int i) {
+		ensureSorted();
+		return entries[i];
+	}
+
+	public boolean contains(int entry) {
+		ensureSorted();
+		return Arrays.binarySearch(entries, 0, size, entry) >= 0;
+	}
+
+	/**
+	 * Returns the index of the first stop at or after minuteOfWeek, or size()
+	 * if there isn't one before the end of the week.
+	 */
+	public int ceiling(int minuteOfWeek) {
+		ensureSorted();
+		return lowerBound(pack(minuteOfWeek, DIRECTIONS[0]));
+	}
+
+	/** Removes every stop in range, using binary searches to find them. */
+	public void removeStops(TimeRange range) {
+		ensureSorted();
+		int begin = range.getBeginning().getMinuteOfWeek();
+		int end = begin + range.getLength();
+		if (end <= MINUTES_PER_WEEK) {
+			removeMinutes(begin, end);
+		} else {
+			// The range wraps around the end of the week
+			removeMinutes(begin, MINUTES_PER_WEEK);
+			removeMinutes(0, end - MINUTES_PER_WEEK);
+		}
+	}
+
+	/** Removes the stops from minute begin up to, but not including, minute end. */
+	private void removeMinutes(int begin, int end) {
+		int from = lowerBound(pack(begin, DIRECTIONS[0]));
+		int to = lowerBound(pack(end, DIRECTIONS[0]));
+		System.arraycopy(entries, to, entries, from, size - to);
+		size -= to - from;
+	}
+
+	/** The index of the first entry >= key. */
+	private int lowerBound(int key) {
+		int lo = 0, hi = size;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (entries[mid] < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	private void ensureSorted() {
+		if (sorted)
+			return;
+		Arrays.sort(entries, 0, size);
+		// Adding the same stop twice shouldn't make it show up twice
+		int last = 0;
+		for (int i = 1; i < size; i++) {
+			if (entries[i] != entries[last])
+				entries[++last] = entries[i];
+		}
+		size = Math.min(size, last + 1);
+		sorted = true;
+	}
+}
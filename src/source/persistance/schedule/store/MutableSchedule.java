@@ -13,6 +13,12 @@ public interface MutableSchedule extends Schedule {
 	/** Removes all stops that are in the specified range. */
 	public void removeStops(TimeRange range);
 	
+	/**
+	 * Returns an immutable copy of this schedule that is safe to share between
+	 * threads. Later changes to this schedule don't affect the copy.
+	 */
+	public Schedule freeze();
+	
 	/** Convenience method for testing/package internal use. */
 	boolean stopInSchedule(Stop s);
 }
@@ -0,0 +1,139 @@
+package persistance.schedule.store;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import persistance.schedule.Schedule;
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import time.Time;
+import time.TimeRange;
+
+/**
+ * The queries shared by the read-only schedules that are laid out as sorted
+ * columns. Subclasses say where the columns live: on the heap, or in a
+ * mapped file.
+ * <p>
+ * There are two sets of columns. The stop columns hold every stop in time
+ * order, as its minute of the week, keyword id and direction ordinal. The
+ * keyword column holds the same stops as MinuteColumn entries, grouped by
+ * keyword id and in time order within each group, so that the next stops at a
+ * keyword can be found with a binary search. Package-internal.
+ */
+abstract class PackedSchedule implements Schedule {
+
+	private static final Direction[] DIRECTIONS = Direction.values();
+
+	/** Returns the number of stops in the schedule. */
+	public abstract int size();
+
+	/** The minute of the week of stop i, in time order. */
+	abstract int minuteAt(int i);
+
+	/** The keyword id of stop i, in time order. */
+	abstract int keywordAt(int i);
+
+	/** The direction ordinal of stop i, in time order. */
+	abstract int directionAt(int i);
+
+	/** The number of distinct keywords. */
+	abstract int keywordCount();
+
+	/** The name of keyword id. */
+	abstract String keyword(int id);
+
+	/** The id of keyword, or -1 if it has no stops. */
+	abstract int keywordId(String keyword);
+
+	/** The index in the keyword column of the first stop at keyword id. Also defined for id == keywordCount(). */
+	abstract int keywordStart(int id);
+
+	/** Entry i of the keyword column. */
+	abstract int entryAt(int i);
+
+	@Override
+	public Stop getNextStop(String locationKeyword, Time t) {
+		Iterator<Stop> stops = getNextStops(locationKeyword, t, 1).iterator();
+		return stops.hasNext() ? stops.next() : null;
+	}
+
+	@Override
+	public Iterable<Stop> getNextStops(final String locationKeyword, final Time t, final int number) {
+		int id = keywordId(locationKeyword);
+		if (id < 0)
+			return Collections.emptyList();
+		final int from = keywordStart(id), to = keywordStart(id + 1);
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				final int length = to - from;
+				final int start = lowerBound(from, to, MinuteColumn.pack(t.getMinuteOfWeek(), DIRECTIONS[0])) - from;
+				final int count = Math.min(number, length);
+				return new StopIterator() {
+					private int read = 0;
+
+					@Override
+					protected Stop findNext() {
+						// Read forward from t, wrapping around to the start of the week
+						if (read == count)
+							return null;
+						int entry = entryAt(from + (start + read++) % length);
+						return new Stop(locationKeyword, Time.valueOf(MinuteColumn.minuteOf(entry)), MinuteColumn.directionOf(entry));
+					}
+				};
+			}
+		};
+	}
+
+	@Override
+	public Iterable<Stop> getStops(final TimeRange range) {
+		return new Iterable<Stop>() {
+			@Override
+			public Iterator<Stop> iterator() {
+				final int size = size();
+				// The columns are in time order, so the range is one run, possibly wrapping around the week
+				final int start = minuteLowerBound(range.getBeginning().getMinuteOfWeek());
+				return new StopIterator() {
+					private int read = 0;
+
+					@Override
+					protected Stop findNext() {
+						if (read == size)
+							return null;
+						int i = (start + read) % size;
+						if (!range.isInRange(Time.valueOf(minuteAt(i))))
+							return null;
+						read++;
+						return new Stop(keyword(keywordAt(i)), Time.valueOf(minuteAt(i)), DIRECTIONS[directionAt(i)]);
+					}
+				};
+			}
+		};
+	}
+
+	/** The index of the first entry of the keyword column, between from and to, that is >= key. */
+	private int lowerBound(int from, int to, int key) {
+		int lo = from, hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (entryAt(mid) < key)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/** The index of the first stop at or after minute. */
+	private int minuteLowerBound(int minute) {
+		int lo = 0, hi = size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (minuteAt(mid) < minute)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+}
@@ -12,15 +12,44 @@ public class ParseException extends RuntimeException {
 	// Luckily, no localization needed?
 	protected static final String STACKTRACE_INTRO = "\nError occurred on line #%d\n\nStacktrace for a java programmer:\n---------------------------------------\n";
 
+	protected static final String STACKTRACE_INTRO_COLUMN = "\nError occurred on line #%d, column %d\n\nStacktrace for a java programmer:\n---------------------------------------\n";
+
+	private final long lineNumber;
+
+	/** The column the error occurred at, counting from 1, or 0 if unknown. */
+	private final int column;
+
 	/**
 	 * Creates a parse exception with reason <code>message</code> that occurred
 	 * at line <code>lineNumber</code> in the file, caused by <code>cause</code>
 	 */
 	public ParseException(String userMessage, String javaMessage, long lineNumber, Throwable cause) {
 		super(userMessage + String.format(STACKTRACE_INTRO, lineNumber) + javaMessage, cause);
+		this.lineNumber = lineNumber;
+		this.column = 0;
 	}
 
 	public ParseException(String userMessage, String javaMessage, long lineNumber) {
-		this(userMessage, javaMessage, lineNumber, null);
+		this(userMessage, javaMessage, lineNumber, (Throwable) null);
+	}
+
+	/**
+	 * Creates a parse exception with reason <code>message</code> that occurred
+	 * at <code>column</code> (counting from 1) of line <code>lineNumber</code>
+	 * in the file.
+	 */
+	public ParseException(String userMessage, String javaMessage, long lineNumber, int column) {
+		super(userMessage + String.format(STACKTRACE_INTRO_COLUMN, lineNumber, column) + javaMessage);
+		this.lineNumber = lineNumber;
+		this.column = column;
+	}
+
+	public long getLineNumber() {
+		return lineNumber;
+	}
+
+	/** Returns the column the error occurred at, counting from 1, or 0 if unknown. */
+	public int getColumn() {
+		return column;
 	}
 }
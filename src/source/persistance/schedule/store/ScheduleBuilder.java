@@ -0,0 +1,134 @@
+package persistance.schedule.store;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import persistance.schedule.Stop;
+import time.IntervalSet;
+import time.TimeRange;
+
+/**
+ * Collects the stops, frequencies and removals for a MutableSchedule, then
+ * applies them all at once. Takes the same calls, in the same order, as the
+ * schedule would, with the same result: a removal takes out the stops added
+ * before it but not those added after.
+ * <p>
+ * Removals are only recorded as they come in. build() merges the removed
+ * ranges into as few as possible, removes those from the schedule, and then
+ * adds the surviving stops in order of time, so loading a file with many
+ * overlapping schedule blocks costs about as much as loading one without.
+ */
+public class ScheduleBuilder {
+
+	private final List<Stop> stops = new ArrayList<Stop>();
+
+	/** The number of removals made before each stop was added. */
+	private int[] generations = new int[64];
+
+	/** For each minute of the week, the number of the last removal covering it, or 0. */
+	private final int[] removedBy = new int[MINUTES_PER_WEEK];
+
+	private int removals = 0;
+
+	/** Every minute removed so far. */
+	private IntervalSet removed = IntervalSet.EMPTY;
+
+	private final List<Frequency> frequencies = new ArrayList<Frequency>();
+
+	/** The number of removals made before each frequency was added. */
+	private final List<Integer> frequencyGenerations = new ArrayList<Integer>();
+
+	/** Adds a stop that corresponds with the specified keyword at the given time. */
+	public void addStop(Stop s) {
+		if (stops.size() == generations.length)
+			generations = Arrays.copyOf(generations, generations.length * 2);
+		generations[stops.size()] = removals;
+		stops.add(s);
+	}
+
+	/**
+	 * Adds every stop a frequency makes. A schedule that can hold frequencies
+	 * gets it as one, less any stops removed after it was added.
+	 */
+	public void addFrequency(Frequency f) {
+		frequencies.add(f);
+		frequencyGenerations.add(removals);
+	}
+
+	/** Removes all stops added so far, or already in the schedule, that are in the specified range. */
+	public void removeStops(TimeRange range) {
+		if (range.getLength() == 0)
+			return;
+		removals++;
+		int begin = range.getBeginning().getMinuteOfWeek();
+		int end = begin + range.getLength();
+		Arrays.fill(removedBy, begin, Math.min(end, MINUTES_PER_WEEK), removals);
+		if (end > MINUTES_PER_WEEK)
+			Arrays.fill(removedBy, 0, end - MINUTES_PER_WEEK, removals);
+		removed = removed.union(IntervalSet.of(range));
+	}
+
+	/**
+	 * Applies the stops and removals collected so far to schedule, then starts
+	 * afresh.
+	 */
+	public void build(MutableSchedule schedule) {
+		// Every removal covers the stops already in the schedule, so remove each run of removed minutes once
+		for (TimeRange r : removed.getRanges())
+			schedule.removeStops(r);
+
+		List<Stop> survivors = new ArrayList<Stop>(stops.size());
+		for (int i = 0; i < stops.size(); i++) {
+			Stop s = stops.get(i);
+			if (removedBy[s.getTime().getMinuteOfWeek()] <= generations[i])
+				survivors.add(s);
+		}
+		for (int i = 0; i < frequencies.size(); i++) {
+			for (Frequency f : survivingRuns(frequencies.get(i), frequencyGenerations.get(i))) {
+				if (schedule instanceof FrequencySchedule) {
+					((FrequencySchedule) schedule).addFrequency(f);
+				} else {
+					for (int k = 0; k < f.getCount(); k++)
+						survivors.add(f.getStop(k));
+				}
+			}
+		}
+		// Adding in order of time keeps the schedule's own sorting cheap
+		Collections.sort(survivors, new Comparator<Stop>() {
+			@Override
+			public int compare(Stop s1, Stop s2) {
+				return s1.getTime().getMinuteOfWeek() - s2.getTime().getMinuteOfWeek();
+			}
+		});
+		for (Stop s : survivors)
+			schedule.addStop(s);
+
+		stops.clear();
+		frequencies.clear();
+		frequencyGenerations.clear();
+		Arrays.fill(removedBy, 0);
+		removals = 0;
+		removed = IntervalSet.EMPTY;
+	}
+
+	/** Splits f into the runs of its stops that weren't removed after generation. */
+	private List<Frequency> survivingRuns(Frequency f, int generation) {
+		List<Frequency> runs = new ArrayList<Frequency>(1);
+		int runStart = -1;
+		for (int k = 0; k <= f.getCount(); k++) {
+			boolean kept = k < f.getCount() && removedBy[f.timeOf(k).getMinuteOfWeek()] <= generation;
+			if (kept && runStart < 0) {
+				runStart = k;
+			} else if (!kept && runStart >= 0) {
+				runs.add(new Frequency(f.getKeyword(), f.getDirection(), f.timeOf(runStart), f.getHeadway(), k - runStart));
+				runStart = -1;
+			}
+		}
+		return runs;
+	}
+}
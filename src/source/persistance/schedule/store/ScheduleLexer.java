@@ -0,0 +1,246 @@
+package persistance.schedule.store;
+
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.NONE;
+import static persistance.schedule.Stop.Direction.OUTBOUND;
+
+import persistance.schedule.Stop.Direction;
+
+/**
+ * A single pass, hand-written scanner over one line of a schedule file.
+ * <p>
+ * Times come out as minutes of the day and directions as enum constants, so
+ * a line full of stops is read without cutting it up into strings. Errors are
+ * reported as ParseExceptions pointing at the exact column that went wrong.
+ * Package-internal.
+ */
+class ScheduleLexer {
+
+	private CharSequence line;
+
+	/** The index of the next character to be read. */
+	private int pos;
+
+	private long lineNumber;
+
+	/** Starts scanning <code>line</code>, which is line number <code>lineNumber</code> of the file. */
+	public ScheduleLexer reset(CharSequence line, long lineNumber) {
+		this.line = line;
+		this.lineNumber = lineNumber;
+		this.pos = 0;
+		return this;
+	}
+
+	/** The index of the next character to be read. */
+	public int getPosition() {
+		return pos;
+	}
+
+	/** Moves to index <code>pos</code> of the line, i.e. to skip over something already examined. */
+	public void setPosition(int pos) {
+		this.pos = pos;
+	}
+
+	/** The column of the next character to be read, counting from 1. */
+	public int getColumn() {
+		return pos + 1;
+	}
+
+	/** Creates an exception for an error at the current position. */
+	public ParseException error(String userMessage, String javaMessage) {
+		return error(userMessage, javaMessage, pos);
+	}
+
+	/** Creates an exception for an error at index <code>at</code> of the line. */
+	public ParseException error(String userMessage, String javaMessage, int at) {
+		return new ParseException(userMessage, javaMessage, lineNumber, at + 1);
+	}
+
+	public void skipWhitespace() {
+		while (pos < line.length() && Character.isWhitespace(line.charAt(pos)))
+			pos++;
+	}
+
+	/** Returns true if there is nothing but whitespace left on the line. */
+	public boolean atEnd() {
+		skipWhitespace();
+		return pos == line.length();
+	}
+
+	/** Returns true if the next non-whitespace character is <code>c</code>. */
+	public boolean peek(char c) {
+		skipWhitespace();
+		return pos < line.length() && line.charAt(pos) == c;
+	}
+
+	/** Consumes the next non-whitespace character if it is <code>c</code>. */
+	public boolean accept(char c) {
+		if (!peek(c))
+			return false;
+		pos++;
+		return true;
+	}
+
+	/** Consumes the next non-whitespace character, which must be <code>c</code>. */
+	public void expect(char c) {
+		if (!accept(c))
+			throw error(String.format("Expected '%c' here.", c), String.format("Found '%s' instead of '%c'.", describeNext(), c));
+	}
+
+	/** Consumes <code>word</code> if the line continues with it, ignoring leading whitespace. */
+	public boolean accept(String word) {
+		skipWhitespace();
+		int end = pos + word.length();
+		if (end > line.length())
+			return false;
+		for (int i = 0; i < word.length(); i++) {
+			if (line.charAt(pos + i) != word.charAt(i))
+				return false;
+		}
+		pos = end;
+		return true;
+	}
+
+	/** Returns true if there is nothing but whitespace before the next comma or the end of the line. */
+	public boolean atFieldEnd() {
+		return atEnd() || peek(',');
+	}
+
+	/**
+	 * Ensures nothing but whitespace remains in the current field.
+	 *
+	 * @param what
+	 *            describes the field, for the error message
+	 */
+	public void expectFieldEnd(String what) {
+		if (!atFieldEnd())
+			throw error(String.format("Unexpected characters after %s. Fields are separated by commas.", what), String.format("Found '%s' where a comma or the end of the line was expected.", describeNext()));
+	}
+
+	/**
+	 * Returns the index just past the last non-whitespace character of the
+	 * current field, which runs up to the next comma or the end of the line.
+	 * Does not consume anything.
+	 */
+	public int findFieldEnd() {
+		int end = pos;
+		while (end < line.length() && line.charAt(end) != ',')
+			end++;
+		while (end > pos && Character.isWhitespace(line.charAt(end - 1)))
+			end--;
+		return end;
+	}
+
+	/** Consumes the current field, up to the next comma, and returns it trimmed. */
+	public String readField() {
+		skipWhitespace();
+		int end = findFieldEnd();
+		String field = line.subSequence(pos, end).toString();
+		pos = end;
+		skipWhitespace();
+		return field;
+	}
+
+	/** Consumes and returns a run of letters, i.e. the name of a day. */
+	public String readWord() {
+		skipWhitespace();
+		int start = pos;
+		while (pos < line.length() && Character.isLetter(line.charAt(pos)))
+			pos++;
+		if (start == pos)
+			throw error("Expected a word here.", String.format("Found '%s' instead of a letter.", describeNext()));
+		return line.subSequence(start, pos).toString();
+	}
+
+	/**
+	 * Consumes a time like 7:05am, 7:05 pm, 12:05 or 19:05 and returns it as
+	 * the number of minutes after midnight. Only a pm suffix changes the hour:
+	 * 12:05 is just after midnight and 22:05pm is 10:05pm.
+	 */
+	public int readTime() {
+		skipWhitespace();
+		int start = pos;
+		int hours = readDigits(1, 2);
+		if (hours < 0 || !acceptImmediate(':'))
+			throw error("Expected a time, such as 7:05am, here.", String.format("Found '%s' where a time was expected.", describeNext()), start);
+		int minutesStart = pos;
+		int minutes = readDigits(2, 2);
+		if (minutes < 0)
+			throw error("Expected two digits of minutes, such as 7:05am, here.", String.format("Found '%s' where minutes were expected.", describeNext()), minutesStart);
+
+		int end = pos;
+		skipWhitespace();
+		boolean pm = false;
+		if (acceptIgnoreCase('p', 'm'))
+			pm = true;
+		else if (!acceptIgnoreCase('a', 'm'))
+			pos = end; // Nothing here, so leave the whitespace for whatever follows
+
+		if (pm && hours < 12)
+			hours += 12;
+		else if (!pm && hours == 12)
+			hours = 0; // Midnight
+		if (hours > 23 || minutes > 59)
+			throw error("Not a valid time of day.", String.format("'%s' is out of range.", line.subSequence(start, pos)), start);
+		return hours * 60 + minutes;
+	}
+
+	/** Consumes a whole number of up to four digits, i.e. the minutes between stops. */
+	public int readNumber() {
+		skipWhitespace();
+		int value = readDigits(1, 4);
+		if (value < 0)
+			throw error("Expected a number here.", String.format("Found '%s' where a number was expected.", describeNext()));
+		return value;
+	}
+
+	/** Consumes an optional i (inbound) or o (outbound) marker. */
+	public Direction readDirection() {
+		skipWhitespace();
+		if (pos < line.length()) {
+			char c = Character.toLowerCase(line.charAt(pos));
+			if (c == 'i' || c == 'o') {
+				pos++;
+				return c == 'i' ? INBOUND : OUTBOUND;
+			}
+		}
+		return NONE;
+	}
+
+	/** Reads between min and max decimal digits, returning -1 if there were fewer than min. */
+	private int readDigits(int min, int max) {
+		int value = 0, count = 0;
+		while (count < max && pos < line.length()) {
+			char c = line.charAt(pos);
+			if (c < '0' || c > '9')
+				break;
+			value = value * 10 + (c - '0');
+			count++;
+			pos++;
+		}
+		return count < min ? -1 : value;
+	}
+
+	/** Consumes c if it is the very next character, without skipping whitespace. */
+	private boolean acceptImmediate(char c) {
+		if (pos < line.length() && line.charAt(pos) == c) {
+			pos++;
+			return true;
+		}
+		return false;
+	}
+
+	/** Consumes the two characters c1 c2 if they come next, ignoring case. */
+	private boolean acceptIgnoreCase(char c1, char c2) {
+		if (pos + 1 < line.length() && Character.toLowerCase(line.charAt(pos)) == c1 && Character.toLowerCase(line.charAt(pos + 1)) == c2) {
+			pos += 2;
+			return true;
+		}
+		return false;
+	}
+
+	/** Describes the upcoming character, for error messages. */
+	private String describeNext() {
+		return pos < line.length() ? String.valueOf(line.charAt(pos)) : "end of line";
+	}
+}
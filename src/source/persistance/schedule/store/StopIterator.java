@@ -0,0 +1,41 @@
+package persistance.schedule.store;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import persistance.schedule.Stop;
+
+/**
+ * A read-only iterator that finds each stop only when it is asked for, so
+ * callers that stop reading early don't pay for the stops they didn't read.
+ * Subclasses implement {@link #findNext()}. Package-internal.
+ */
+abstract class StopIterator implements Iterator<Stop> {
+
+	private Stop next;
+
+	private boolean finished;
+
+	/** Returns the next stop, or null if there are no more. Called at most once after returning null. */
+	protected abstract Stop findNext();
+
+	public boolean hasNext() {
+		if (next == null && !finished) {
+			next = findNext();
+			finished = next == null;
+		}
+		return next != null;
+	}
+
+	public Stop next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		Stop s = next;
+		next = null;
+		return s;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+}
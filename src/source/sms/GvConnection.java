@@ -19,6 +19,9 @@ import core.Query;
  * must be called before any other request, and can be called again to refresh
  * the connection. This connection is pull only and must have the
  * getNewMessages() method actively called to recieve messages.
+ * <p>
+ * The google-voice-java client isn't safe for use by multiple threads, so
+ * every request through it is made one at a time.
  */
 public class GvConnection implements SmsConnection {
 
@@ -46,7 +49,7 @@ public class GvConnection implements SmsConnection {
 	}
 
 	@Override
-	public void connect() throws ConnectionException {
+	public synchronized void connect() throws ConnectionException {
 		try {
 			voice = new Voice(username, password, PioText.VERSION, false);
 //		} catch (CaptchaRequiredException e) {
@@ -62,7 +65,7 @@ public class GvConnection implements SmsConnection {
 	}
 
 	@Override
-	public void deleteSms(Query query) throws ConnectionException {
+	public synchronized void deleteSms(Query query) throws ConnectionException {
 		if (query instanceof GvQuery) {
 			GvQuery gvq = (GvQuery) query;
 			try {
@@ -151,7 +154,7 @@ public class GvConnection implements SmsConnection {
 	// }
 
 	@Override
-	public List<GvQuery> getNewMessages() throws ConnectionException {
+	public synchronized List<GvQuery> getNewMessages() throws ConnectionException {
 		// retrieve from GV
 		Collection<SMSThread> conversations = null;
 		try {
@@ -182,12 +185,12 @@ public class GvConnection implements SmsConnection {
 		}
 	}
 
-	String getRawSmsXml() throws IOException {
+	synchronized String getRawSmsXml() throws IOException {
 		return voice.getSMS();
 	}
 
 	@Override
-	public void sendSms(String number, String message)
+	public synchronized void sendSms(String number, String message)
 			throws ConnectionException {
 		try {
 			voice.sendSMS(number, message);
@@ -7,8 +7,13 @@ import core.Query;
 /**
  * A connection to a sms service that can be queried for new sms and used to
  * send outgoing sms.
+ * <p>
+ * Implementations must be safe for use by multiple threads: PioText checks
+ * for new sms on one thread while replies are sent and queries deleted on
+ * others. An implementation wrapping a client that isn't may simply make
+ * one request at a time.
  */
-public interface SmsConnection {
+public interface SmsConnection extends SmsSender {
 
 	/**
 	 * Returns a list of recent queries without a reply. This may return an
@@ -21,20 +26,6 @@ public interface SmsConnection {
 	 */
 	public List<? extends Query> getNewMessages() throws ConnectionException;
 
-	/**
-	 * Sends a single Sms from the connection to the number.
-	 * 
-	 * 
-	 * @param number
-	 *            the destination of the Sms
-	 * @param message
-	 *            the body of the Sms
-	 * @throws ConnectionException
-	 *             if the connection is unable to send the Sms
-	 */
-	public void sendSms(String number, String message)
-			throws ConnectionException;
-
 	/**
 	 * Connects to the service. This must be called before any other methods may
 	 * be called.
@@ -0,0 +1,22 @@
+package sms;
+
+/**
+ * Sends outgoing sms. Every SmsConnection is one, but a connection that only
+ * receives sms, like a WebhookConnection, may hand its replies to another.
+ */
+public interface SmsSender {
+
+	/**
+	 * Sends a single Sms from the connection to the number.
+	 * 
+	 * 
+	 * @param number
+	 *            the destination of the Sms
+	 * @param message
+	 *            the body of the Sms
+	 * @throws ConnectionException
+	 *             if the connection is unable to send the Sms
+	 */
+	public void sendSms(String number, String message)
+			throws ConnectionException;
+}
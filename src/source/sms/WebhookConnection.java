@@ -0,0 +1,263 @@
+package sms;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import core.Query;
+
+/**
+ * A connection that has sms pushed to it, by a gateway POSTing each one to a
+ * local HTTP server as it arrives, rather than asking a service for them.
+ * Each POST must carry the shared secret the connection was made with in
+ * its TOKEN_HEADER, or it is refused with a 403, since every sms accepted
+ * gets a reply sent to whatever number it claims to be from. The server
+ * should listen on a loopback address, with the gateway reaching it through
+ * a proxy, unless the secret is kept well.
+ * <p>
+ * Each POST is a form with the sender's number as From and the text as Body,
+ * the way most sms gateways call webhooks, and optionally the time it was
+ * sent as Timestamp, in epoch ms. Without a Timestamp the time it arrived is
+ * used, so a gateway retrying a POST may have it answered twice.
+ * <p>
+ * If there is a listener, each sms is handed to it as soon as it arrives, on
+ * the server's thread, and the gateway is answered once the listener
+ * returns. Otherwise sms are held until the next call to getNewMessages().
+ * <p>
+ * The connection only receives. Replies are handed to another SmsSender,
+ * which is connected along with this connection if it is an SmsConnection.
+ * deleteSms() does nothing, since the gateway keeps no inbox.
+ */
+public class WebhookConnection implements SmsConnection {
+
+	/** Told of each sms as it arrives. */
+	public interface Listener {
+
+		/** Called with each new sms, on one of the server's threads. */
+		void received(Query query);
+	}
+
+	/** The header each POST must carry the shared secret in. */
+	public static final String TOKEN_HEADER = "X-Webhook-Token";
+
+	/** The path sms are POSTed to, unless another is given. */
+	public static final String DEFAULT_PATH = "/sms";
+
+	/** The most bytes a POST may have. A form with one sms fits easily. */
+	private static final int MAX_BODY = 16 * 1024;
+
+	/** Threads serving POSTs at once. */
+	private static final int THREADS = 4;
+
+	private final InetSocketAddress address;
+
+	private final String path;
+
+	private final SmsSender sender;
+
+	/** The shared secret, as UTF-8. */
+	private final byte[] token;
+
+	/** The sms received while there was no listener. */
+	private final ConcurrentLinkedQueue<Query> received = new ConcurrentLinkedQueue<Query>();
+
+	private volatile Listener listener;
+
+	private HttpServer server;
+
+	private ExecutorService executor;
+
+	/**
+	 * Creates a connection that will listen on address once connected.
+	 *
+	 * @param address
+	 *            the address to listen on. Port 0 picks a free port.
+	 * @param path
+	 *            the path sms are POSTed to
+	 * @param sender
+	 *            sends the replies
+	 * @param token
+	 *            the shared secret every POST must carry
+	 */
+	public WebhookConnection(InetSocketAddress address, String path, SmsSender sender, String token) {
+		if (token == null || token.isEmpty())
+			throw new IllegalArgumentException("A webhook connection needs a shared secret.");
+		this.address = address;
+		this.path = path;
+		this.sender = sender;
+		try {
+			this.token = token.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			// Every JVM has UTF-8
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Sets the listener each sms is handed to as it arrives, or null to hold
+	 * them for getNewMessages().
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	/** Starts listening, and connects the sender if it needs it. */
+	@Override
+	public synchronized void connect() throws ConnectionException {
+		if (sender instanceof SmsConnection)
+			((SmsConnection) sender).connect();
+		if (server != null)
+			return;
+		try {
+			server = HttpServer.create(address, 0);
+		} catch (IOException e) {
+			throw new ConnectionException("Unable to listen for sms on " + address + ".", e);
+		}
+		server.createContext(path, new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					receive(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+		executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "WebhookConnection");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		server.setExecutor(executor);
+		server.start();
+	}
+
+	/** Stops listening. The connection may be connected again. */
+	public synchronized void close() {
+		if (server == null)
+			return;
+		server.stop(0);
+		executor.shutdownNow();
+		server = null;
+		executor = null;
+	}
+
+	/** Returns the port being listened on, or -1 if not connected. */
+	public synchronized int getPort() {
+		return server == null ? -1 : server.getAddress().getPort();
+	}
+
+	private void receive(HttpExchange exchange) throws IOException {
+		String given = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+		// Compared in constant time, so the secret can't be guessed a byte at a time
+		if (given == null || !MessageDigest.isEqual(token, given.getBytes("UTF-8"))) {
+			exchange.sendResponseHeaders(403, -1);
+			return;
+		}
+		if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+			exchange.getResponseHeaders().set("Allow", "POST");
+			exchange.sendResponseHeaders(405, -1);
+			return;
+		}
+		byte[] body = readBody(exchange.getRequestBody());
+		if (body == null) {
+			exchange.sendResponseHeaders(413, -1);
+			return;
+		}
+		Map<String, String> form = parseForm(new String(body, "UTF-8"));
+		String from = form.get("from"), text = form.get("body");
+		if (from == null || text == null) {
+			exchange.sendResponseHeaders(400, -1);
+			return;
+		}
+		Date timeSent;
+		try {
+			String timestamp = form.get("timestamp");
+			timeSent = timestamp == null ? new Date() : new Date(Long.parseLong(timestamp.trim()));
+		} catch (NumberFormatException e) {
+			exchange.sendResponseHeaders(400, -1);
+			return;
+		}
+		Query query = new Query(timeSent, text, from);
+		Listener l = listener;
+		if (l != null)
+			l.received(query);
+		else
+			received.add(query);
+		exchange.sendResponseHeaders(204, -1);
+	}
+
+	/** Reads a request body, or returns null if it is longer than MAX_BODY. */
+	private static byte[] readBody(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int read;
+		while ((read = in.read(buffer)) > 0) {
+			out.write(buffer, 0, read);
+			if (out.size() > MAX_BODY)
+				return null;
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Parses a application/x-www-form-urlencoded body. Names are lower cased,
+	 * since gateways differ in how they capitalize them.
+	 */
+	static Map<String, String> parseForm(String body) throws UnsupportedEncodingException {
+		Map<String, String> form = new HashMap<String, String>();
+		for (String pair : body.split("&")) {
+			if (pair.isEmpty())
+				continue;
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			try {
+				form.put(URLDecoder.decode(name, "UTF-8").toLowerCase(), URLDecoder.decode(value, "UTF-8"));
+			} catch (IllegalArgumentException e) {
+				// A malformed escape. Skip the field.
+			}
+		}
+		return form;
+	}
+
+	/** Returns the sms received since the last call, if there is no listener. */
+	@Override
+	public List<? extends Query> getNewMessages() {
+		List<Query> queries = new ArrayList<Query>();
+		Query q;
+		while ((q = received.poll()) != null)
+			queries.add(q);
+		return queries;
+	}
+
+	@Override
+	public void sendSms(String number, String message) throws ConnectionException {
+		sender.sendSms(number, message);
+	}
+
+	@Override
+	public void deleteSms(Query query) {
+		// Nothing is kept at the gateway
+	}
+}
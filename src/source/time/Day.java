@@ -26,6 +26,9 @@ public enum Day {
 	/** Holds all of the sets of days like so: [begin][end] */
 	private static Set<Day>[][] dayRanges;
 
+	/** A cached copy of values(), which clones its array on every call. */
+	private static final Day[] DAYS = values();
+
 	static {
 		// Needs to be 8x8 because the days are 1-7 rather than 0-6
 		dayRanges = new Set[8][8];
@@ -55,12 +58,19 @@ public enum Day {
 	 * @see Calendar.DAY_OF_WEEK
 	 */
 	public static final Day valueOf(int day) {
-		for (Day d : values()) {
-			if (d.matches(day)) {
-				return d;
-			}
-		}
-		throw new IllegalArgumentException(String.format("'%d' does not map to a day of the week.", day));
+		if (day < Calendar.SUNDAY || day > Calendar.SATURDAY)
+			throw new IllegalArgumentException(String.format("'%d' does not map to a day of the week.", day));
+		return DAYS[day - Calendar.SUNDAY];
+	}
+
+	/**
+	 * Returns the day at position <code>index</code> in the week, where Sunday
+	 * is 0 and Saturday is 6.
+	 */
+	public static final Day valueOfIndex(int index) {
+		if (index < 0 || index >= DAYS.length)
+			throw new IllegalArgumentException(String.format("'%d' is not a valid day index. Indices must be in the range [0, 6].", index));
+		return DAYS[index];
 	}
 
 	/**
@@ -109,16 +119,21 @@ public enum Day {
 		return day == calendarDay;
 	}
 
+	/**
+	 * Returns the position of this day in the week, where Sunday is 0 and
+	 * Saturday is 6.
+	 */
+	public int getIndex() {
+		return ordinal();
+	}
+
 	/**
 	 * Returns the day offset by <code>days</code> from this one.
 	 */
 	public Day add(int days) {
 		if (days == 0)
 			return this;
-
-		// Unfortunately, the values provided by the Calendar class are 1-7
-		// rather than 0-6, so we tweak the values by +/-1 here.
-		return valueOf(MathUtils.mod(day + days - 1, 7) + 1);
+		return DAYS[MathUtils.mod(ordinal() + days, DAYS.length)];
 	}
 
 	/**
@@ -0,0 +1,165 @@
+package time;
+
+import static time.Time.MINUTES_PER_DAY;
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+import utils.MathUtils;
+
+/**
+ * Converts epoch milliseconds into Times for a particular time zone without
+ * going through Calendar.
+ * <p>
+ * The zone's UTC offsets are tabulated up front for roughly the coming year,
+ * so a conversion is a binary search over a handful of transitions followed by
+ * a division. Instances are immutable, so they are safe to share between
+ * threads, and conversions do not allocate. Instants outside of the table
+ * (i.e. after the converter has been running for a year) fall back to asking
+ * the zone directly, which is slower but still correct.
+ */
+public class EpochConverter {
+
+	private static final long MS_PER_MINUTE = 60 * 1000L;
+
+	private static final long MS_PER_HOUR = 60 * MS_PER_MINUTE;
+
+	private static final long MS_PER_DAY = 24 * MS_PER_HOUR;
+
+	/** How far ahead of its creation a converter tabulates offsets. */
+	private static final long TABLE_SPAN = 366 * MS_PER_DAY;
+
+	/** The epoch (January 1st, 1970) fell on a Thursday. */
+	private static final int EPOCH_DAY = Day.THURSDAY.getIndex();
+
+	/** Lazily creates the converter for the JVM's default zone. */
+	private static class DefaultHolder {
+		static final EpochConverter INSTANCE = new EpochConverter(TimeZone.getDefault());
+	}
+
+	/**
+	 * Returns a shared converter for the JVM's default time zone, as it was the
+	 * first time this method was called.
+	 */
+	public static EpochConverter getDefault() {
+		return DefaultHolder.INSTANCE;
+	}
+
+	/** Our own copy of the zone, for instants that fall outside the table. */
+	private final TimeZone zone;
+
+	/** The first instant covered by the table. */
+	private final long tableStart;
+
+	/** The first instant after the table. */
+	private final long tableEnd;
+
+	/**
+	 * The instants at which the zone's offset changes, sorted. The first entry
+	 * is always tableStart.
+	 */
+	private final long[] transitions;
+
+	/** offsets[i] is the UTC offset in effect from transitions[i] onwards. */
+	private final int[] offsets;
+
+	/** Creates a converter for <code>zone</code> tabulated from now. */
+	public EpochConverter(TimeZone zone) {
+		this(zone, System.currentTimeMillis());
+	}
+
+	/**
+	 * Creates a converter for <code>zone</code> whose table covers about a year
+	 * starting at <code>from</code>, in epoch milliseconds.
+	 */
+	public EpochConverter(TimeZone zone, long from) {
+		this.zone = (TimeZone) zone.clone();
+		this.tableStart = from - MS_PER_DAY;
+		this.tableEnd = from + TABLE_SPAN;
+
+		long[] transitions = new long[8];
+		int[] offsets = new int[8];
+		int count = 0;
+		transitions[0] = tableStart;
+		offsets[0] = this.zone.getOffset(tableStart);
+		count++;
+
+		// Offsets change at most a few times a year, and never twice in an hour,
+		// so we walk the table an hour at a time and home in on each change.
+		for (long t = tableStart; t < tableEnd; t += MS_PER_HOUR) {
+			long next = Math.min(t + MS_PER_HOUR, tableEnd - 1);
+			if (this.zone.getOffset(next) == offsets[count - 1])
+				continue;
+
+			long lo = t, hi = next; // offset(lo) is old, offset(hi) is new
+			while (hi - lo > 1) {
+				long mid = lo + (hi - lo) / 2;
+				if (this.zone.getOffset(mid) == offsets[count - 1])
+					lo = mid;
+				else
+					hi = mid;
+			}
+			if (count == transitions.length) {
+				transitions = Arrays.copyOf(transitions, count * 2);
+				offsets = Arrays.copyOf(offsets, count * 2);
+			}
+			transitions[count] = hi;
+			offsets[count] = this.zone.getOffset(hi);
+			count++;
+		}
+		this.transitions = Arrays.copyOf(transitions, count);
+		this.offsets = Arrays.copyOf(offsets, count);
+	}
+
+	/** Returns the UTC offset of this converter's zone at <code>epoch</code>, in ms. */
+	public int getOffset(long epoch) {
+		if (epoch < tableStart || epoch >= tableEnd)
+			return zone.getOffset(epoch);
+
+		int i = Arrays.binarySearch(transitions, epoch);
+		// A miss gives us -(insertion point) - 1, and we want the entry before
+		// the insertion point.
+		return offsets[i >= 0 ? i : -i - 2];
+	}
+
+	/**
+	 * Returns the number of whole minutes between the epoch and
+	 * <code>epoch</code>, as read off of a wall clock in this zone.
+	 */
+	private long localMinutes(long epoch) {
+		// Dividing before adding the offset keeps us clear of overflow at the
+		// far ends of time, and some historical offsets are not whole minutes.
+		long minutes = MathUtils.floorDiv(epoch, MS_PER_MINUTE);
+		return minutes + MathUtils.floorDiv(MathUtils.mod(epoch, MS_PER_MINUTE) + getOffset(epoch), MS_PER_MINUTE);
+	}
+
+	/**
+	 * Returns the minute of the week (see {@link Time#getMinuteOfWeek()}) that
+	 * <code>epoch</code>, in milliseconds, falls on in this converter's zone.
+	 */
+	public int minuteOfWeek(long epoch) {
+		return (int) MathUtils.mod(localMinutes(epoch) + EPOCH_DAY * MINUTES_PER_DAY, MINUTES_PER_WEEK);
+	}
+
+	/**
+	 * Returns the date that <code>epoch</code>, in milliseconds, falls on in
+	 * this converter's zone, as the number of days since January 1st, 1970.
+	 */
+	public int epochDay(long epoch) {
+		return (int) MathUtils.floorDiv(localMinutes(epoch), MINUTES_PER_DAY);
+	}
+
+	/**
+	 * Returns the Time that <code>epoch</code>, in milliseconds, falls on in
+	 * this converter's zone.
+	 */
+	public Time toTime(long epoch) {
+		return Time.valueOf(minuteOfWeek(epoch));
+	}
+
+	/** Returns a copy of the time zone this converter works in. */
+	public TimeZone getZone() {
+		return (TimeZone) zone.clone();
+	}
+}
@@ -0,0 +1,232 @@
+package time;
+
+import static time.Time.MINUTES_PER_WEEK;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable set of minutes of the week, held as sorted, non-overlapping
+ * intervals [begin, end) packed into one int array. Intervals that touch are
+ * joined, and one running past the end of the week is split at midnight on
+ * Sunday, so every set has exactly one representation. Unlike a TimeRange,
+ * a set may cover the whole week.
+ * <p>
+ * Union, intersection and difference walk both sets once, and membership is
+ * a binary search, so whole schedules' worth of ranges can be combined
+ * without testing minutes one at a time.
+ */
+public class IntervalSet {
+
+	/** The set of no minutes at all. */
+	public static final IntervalSet EMPTY = new IntervalSet(new int[0]);
+
+	/** The set of every minute of the week. */
+	public static final IntervalSet WEEK = new IntervalSet(new int[] { 0, MINUTES_PER_WEEK });
+
+	/** Each interval's begin then end, in order, all in the range [0, MINUTES_PER_WEEK]. */
+	private final int[] bounds;
+
+	private IntervalSet(int[] bounds) {
+		this.bounds = bounds;
+	}
+
+	/** Returns the set of minutes in range. */
+	public static IntervalSet of(TimeRange range) {
+		int begin = range.getBeginning().getMinuteOfWeek();
+		int end = begin + range.getLength();
+		if (begin == end)
+			return EMPTY;
+		if (end <= MINUTES_PER_WEEK)
+			return new IntervalSet(new int[] { begin, end });
+		if (end - MINUTES_PER_WEEK == begin)
+			return WEEK;
+		return new IntervalSet(new int[] { 0, end - MINUTES_PER_WEEK, begin, MINUTES_PER_WEEK });
+	}
+
+	/** Returns the set of minutes in any of ranges. */
+	public static IntervalSet of(Collection<TimeRange> ranges) {
+		int[] bounds = new int[ranges.size() * 4];
+		int n = 0;
+		for (TimeRange r : ranges) {
+			int begin = r.getBeginning().getMinuteOfWeek();
+			int end = begin + r.getLength();
+			if (end <= MINUTES_PER_WEEK) {
+				bounds[n++] = begin;
+				bounds[n++] = end;
+			} else {
+				bounds[n++] = begin;
+				bounds[n++] = MINUTES_PER_WEEK;
+				bounds[n++] = 0;
+				bounds[n++] = end - MINUTES_PER_WEEK;
+			}
+		}
+		return normalize(bounds, n);
+	}
+
+	/** Sorts and joins n / 2 intervals, which may overlap or be empty. */
+	private static IntervalSet normalize(int[] bounds, int n) {
+		long[] intervals = new long[n / 2];
+		for (int i = 0; i < intervals.length; i++)
+			intervals[i] = (long) bounds[2 * i] << 32 | bounds[2 * i + 1];
+		Arrays.sort(intervals);
+		int[] joined = new int[n];
+		int size = 0;
+		for (long interval : intervals) {
+			int begin = (int) (interval >>> 32), end = (int) interval;
+			if (begin == end)
+				continue;
+			if (size > 0 && begin <= joined[size - 1]) {
+				joined[size - 1] = Math.max(joined[size - 1], end);
+			} else {
+				joined[size++] = begin;
+				joined[size++] = end;
+			}
+		}
+		return size == 0 ? EMPTY : new IntervalSet(Arrays.copyOf(joined, size));
+	}
+
+	/** Tests whether t is in this set. */
+	public boolean contains(Time t) {
+		return contains(t.getMinuteOfWeek());
+	}
+
+	/** Tests whether minute, of the week, is in this set. */
+	public boolean contains(int minute) {
+		// The number of bounds at or before minute is odd inside an interval
+		int lo = 0, hi = bounds.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (bounds[mid] <= minute)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return (lo & 1) == 1;
+	}
+
+	/** Tests whether this set has no minutes in it. */
+	public boolean isEmpty() {
+		return bounds.length == 0;
+	}
+
+	/** Returns the number of minutes in this set. */
+	public int getLength() {
+		int length = 0;
+		for (int i = 0; i < bounds.length; i += 2)
+			length += bounds[i + 1] - bounds[i];
+		return length;
+	}
+
+	/** Returns the minutes in this set, in that or other, or both. */
+	public IntervalSet union(IntervalSet other) {
+		return combine(other, true);
+	}
+
+	/** Returns the minutes in both this set and other. */
+	public IntervalSet intersect(IntervalSet other) {
+		return combine(other, false);
+	}
+
+	/** Returns the minutes in this set but not in other. */
+	public IntervalSet subtract(IntervalSet other) {
+		return intersect(other.complement());
+	}
+
+	/** Returns the minutes of the week not in this set. */
+	public IntervalSet complement() {
+		int[] flipped = new int[bounds.length + 2];
+		flipped[0] = 0;
+		System.arraycopy(bounds, 0, flipped, 1, bounds.length);
+		flipped[flipped.length - 1] = MINUTES_PER_WEEK;
+		// Drop the empty intervals at either end
+		int from = flipped[0] == flipped[1] ? 2 : 0;
+		int to = flipped[flipped.length - 2] == flipped[flipped.length - 1] ? flipped.length - 2 : flipped.length;
+		if (from >= to)
+			return EMPTY;
+		return new IntervalSet(Arrays.copyOfRange(flipped, from, to));
+	}
+
+	/**
+	 * Sweeps both sets' bounds in order, keeping the minutes covered by
+	 * either (or) or both (not or).
+	 */
+	private IntervalSet combine(IntervalSet other, boolean or) {
+		int[] a = bounds, b = other.bounds;
+		int[] out = new int[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+		boolean inA = false, inB = false, in = false;
+		while (i < a.length || j < b.length) {
+			int minute = Math.min(i < a.length ? a[i] : Integer.MAX_VALUE, j < b.length ? b[j] : Integer.MAX_VALUE);
+			while (i < a.length && a[i] == minute) {
+				inA = !inA;
+				i++;
+			}
+			while (j < b.length && b[j] == minute) {
+				inB = !inB;
+				j++;
+			}
+			boolean now = or ? inA || inB : inA && inB;
+			if (now != in) {
+				// Two intervals touching at minute join into one
+				if (n > 0 && out[n - 1] == minute)
+					n--;
+				else
+					out[n++] = minute;
+				in = now;
+			}
+		}
+		return n == 0 ? EMPTY : new IntervalSet(Arrays.copyOf(out, n));
+	}
+
+	/**
+	 * Returns this set as TimeRanges, in order of their beginnings. An interval
+	 * running past the end of the week comes back as one range, last, and the
+	 * whole week as two halves, since a TimeRange can't cover it.
+	 */
+	public List<TimeRange> getRanges() {
+		List<TimeRange> ranges = new ArrayList<TimeRange>(bounds.length / 2);
+		if (bounds.length == 2 && bounds[0] == 0 && bounds[1] == MINUTES_PER_WEEK) {
+			Time half = Time.valueOf(MINUTES_PER_WEEK / 2);
+			ranges.add(new TimeRange(Time.valueOf(0), half));
+			ranges.add(new TimeRange(half, Time.valueOf(0)));
+			return ranges;
+		}
+		int from = 0, to = bounds.length;
+		// Join the intervals either side of midnight on Sunday
+		boolean wraps = to > 2 && bounds[0] == 0 && bounds[to - 1] == MINUTES_PER_WEEK;
+		if (wraps) {
+			from = 2;
+			to -= 2;
+		}
+		for (int i = from; i < to; i += 2)
+			ranges.add(new TimeRange(Time.valueOf(bounds[i]), Time.valueOf(bounds[i + 1] % MINUTES_PER_WEEK)));
+		if (wraps)
+			ranges.add(new TimeRange(Time.valueOf(bounds[to]), Time.valueOf(bounds[1])));
+		return ranges;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof IntervalSet && Arrays.equals(bounds, ((IntervalSet) obj).bounds);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bounds);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("{");
+		for (int i = 0; i < bounds.length; i += 2) {
+			if (i > 0)
+				s.append(", ");
+			s.append('[').append(Time.valueOf(bounds[i]).toString(false, true)).append(", ");
+			s.append(Time.valueOf(bounds[i + 1] % MINUTES_PER_WEEK).toString(false, true)).append(')');
+		}
+		return s.append('}').toString();
+	}
+}
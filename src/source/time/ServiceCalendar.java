@@ -0,0 +1,174 @@
+package time;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import utils.MathUtils;
+
+/**
+ * The dates on which service departs from the usual week, such as holidays
+ * and term breaks. Each rule covers a range of dates and says which day of
+ * the week's service runs on them instead, or that none runs at all. Where
+ * rules overlap, the one added last wins.
+ * <p>
+ * Dates are counted in days since January 1st, 1970, as given by
+ * {@link EpochConverter#epochDay(long)}. The rules are compiled by
+ * {@link #compile(int, int)} into a ServiceTable, which answers for any date
+ * without looking at them again.
+ */
+public class ServiceCalendar {
+
+	/** The service of a date with no service at all. */
+	public static final int NO_SERVICE = -1;
+
+	/** The epoch (January 1st, 1970) fell on a Thursday. */
+	private static final int EPOCH_DAY = Day.THURSDAY.getIndex();
+
+	private static class Rule {
+
+		final int first;
+
+		final int last;
+
+		final int service;
+
+		Rule(int first, int last, int service) {
+			this.first = first;
+			this.last = last;
+			this.service = service;
+		}
+	}
+
+	private final List<Rule> rules = new ArrayList<Rule>();
+
+	/**
+	 * Runs the service of day runsAs, or none at all if it is null, on the
+	 * dates from first through last.
+	 */
+	public void add(int first, int last, Day runsAs) {
+		if (last < first)
+			throw new IllegalArgumentException(String.format("The range of dates ends (%d) before it begins (%d).", last, first));
+		rules.add(new Rule(first, last, runsAs == null ? NO_SERVICE : runsAs.getIndex()));
+	}
+
+	/** Returns the number of rules added. */
+	public int size() {
+		return rules.size();
+	}
+
+	/**
+	 * Reads a calendar file, each line of which is a date or a range of dates
+	 * followed by the service to run on them, e.g.
+	 * 
+	 * <pre>
+	 * # Thanksgiving
+	 * 2010-11-25 - 2010-11-26, none
+	 * 2011-05-30, sunday
+	 * </pre>
+	 * 
+	 * @throws IOException
+	 *             if the file cannot be read, or a line cannot be understood
+	 */
+	public static ServiceCalendar read(File file) throws IOException {
+		ServiceCalendar calendar = new ServiceCalendar();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#"))
+					continue;
+				try {
+					calendar.parseLine(line);
+				} catch (IllegalArgumentException e) {
+					throw new IOException(String.format("Could not understand line %d of %s. Expected <date>[ - <date>], <none or day>. %s", lineNumber, file, e.getMessage()), e);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return calendar;
+	}
+
+	private void parseLine(String line) {
+		int comma = line.indexOf(',');
+		if (comma < 0)
+			throw new IllegalArgumentException("There is no comma before the service.");
+		String dates = line.substring(0, comma).trim();
+		String service = line.substring(comma + 1).trim();
+		// Dates have dashes of their own, so a range is split on the dash in the middle
+		int first, last;
+		if (dates.length() > 10) {
+			first = parseDate(dates.substring(0, 10));
+			String rest = dates.substring(10).trim();
+			if (!rest.startsWith("-"))
+				throw new IllegalArgumentException(String.format("Expected a dash after the first date, but found '%s'.", rest));
+			last = parseDate(rest.substring(1).trim());
+		} else {
+			first = last = parseDate(dates);
+		}
+		add(first, last, service.equalsIgnoreCase("none") ? null : Day.findByName(service));
+	}
+
+	/** Parses a date such as 2010-11-25 into days since the epoch. */
+	static int parseDate(String date) {
+		if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-')
+			throw new IllegalArgumentException(String.format("'%s' is not a date like 2010-11-25.", date));
+		try {
+			int year = Integer.parseInt(date.substring(0, 4));
+			int month = Integer.parseInt(date.substring(5, 7));
+			int day = Integer.parseInt(date.substring(8, 10));
+			if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month))
+				throw new IllegalArgumentException(String.format("'%s' is not a real date.", date));
+			return epochDay(year, month, day);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException(String.format("'%s' is not a date like 2010-11-25.", date), e);
+		}
+	}
+
+	private static int daysInMonth(int year, int month) {
+		if (month == 2)
+			return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29 : 28;
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+	/**
+	 * Returns the number of days from January 1st, 1970 to the given date in
+	 * the Gregorian calendar, where month and day count from 1.
+	 */
+	public static int epochDay(int year, int month, int day) {
+		// Count years from March, so that leap days fall at the end of the year
+		int y = month <= 2 ? year - 1 : year;
+		int era = (y >= 0 ? y : y - 399) / 400;
+		int yearOfEra = y - era * 400;
+		int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/** Returns the day of the week that a date, in days since the epoch, falls on. */
+	public static Day dayOf(int epochDay) {
+		return Day.valueOfIndex(MathUtils.mod(epochDay + EPOCH_DAY, 7));
+	}
+
+	/**
+	 * Works out the service for each of the given number of days from first,
+	 * in days since the epoch. Dates outside that span keep the usual week.
+	 */
+	public ServiceTable compile(int first, int days) {
+		int[] services = new int[days];
+		for (int i = 0; i < days; i++)
+			services[i] = dayOf(first + i).getIndex();
+		for (Rule r : rules) {
+			for (int d = Math.max(r.first, first); d <= r.last && d < first + days; d++)
+				services[d - first] = r.service;
+		}
+		return new ServiceTable(first, services);
+	}
+}
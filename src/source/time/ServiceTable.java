@@ -0,0 +1,119 @@
+package time;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A ServiceCalendar compiled into a table with an entry for each date it
+ * covers, so the service for a date is an array lookup.
+ * <p>
+ * Since answers look ahead up to a week, the table also sorts the dates by
+ * the week that starts on them. A week is which service runs on each of the
+ * seven days of the week, and a calendar with a few holidays has only a few
+ * different weeks, so only a few rearrangements of a schedule are ever needed.
+ * Week 0 is always the usual week, which is also the answer for any date the
+ * table doesn't cover. Instances are immutable.
+ */
+public class ServiceTable {
+
+	/** The usual week, in which every day runs its own service. */
+	public static final int USUAL_WEEK = 0;
+
+	/** A table that covers no dates, so every week is the usual one. */
+	public static final ServiceTable USUAL = new ServiceTable(0, new int[0]);
+
+	private final int first;
+
+	/** The day of the week whose service runs on each date, or NO_SERVICE. */
+	private final byte[] services;
+
+	/** The week starting on each date. */
+	private final short[] weeks;
+
+	/** For each week, the service run on each day of it, by Day index. */
+	private final byte[][] weekServices;
+
+	ServiceTable(int first, int[] services) {
+		this.first = first;
+		this.services = new byte[services.length];
+		for (int i = 0; i < services.length; i++)
+			this.services[i] = (byte) services[i];
+
+		Map<Integer, Integer> ids = new HashMap<Integer, Integer>();
+		List<byte[]> found = new ArrayList<byte[]>();
+		byte[] usual = new byte[7];
+		for (int d = 0; d < 7; d++)
+			usual[d] = (byte) d;
+		ids.put(key(usual), USUAL_WEEK);
+		found.add(usual);
+
+		weeks = new short[services.length];
+		for (int i = 0; i < services.length; i++) {
+			byte[] week = new byte[7];
+			for (int k = 0; k < 7; k++) {
+				int date = first + i + k;
+				week[ServiceCalendar.dayOf(date).getIndex()] = (byte) getService(date);
+			}
+			Integer id = ids.get(key(week));
+			if (id == null) {
+				id = found.size();
+				ids.put(key(week), id);
+				found.add(week);
+			}
+			weeks[i] = (short) (int) id;
+		}
+		weekServices = found.toArray(new byte[found.size()][]);
+	}
+
+	/** Packs a week into an int, three bits a day. */
+	private static int key(byte[] week) {
+		int key = 0;
+		for (byte service : week)
+			key = key << 3 | (service + 1);
+		return key;
+	}
+
+	/** Returns the first date, in days since the epoch, the table covers. */
+	public int getFirst() {
+		return first;
+	}
+
+	/** Returns the number of dates the table covers. */
+	public int getDays() {
+		return services.length;
+	}
+
+	/**
+	 * Returns the index of the day of the week whose service runs on date, in
+	 * days since the epoch, or NO_SERVICE.
+	 */
+	public int getService(int date) {
+		int i = date - first;
+		if (i < 0 || i >= services.length)
+			return ServiceCalendar.dayOf(date).getIndex();
+		return services[i];
+	}
+
+	/** Returns the week that starts on date, in days since the epoch. */
+	public int getWeek(int date) {
+		int i = date - first;
+		if (i < 0 || i >= weeks.length)
+			return USUAL_WEEK;
+		return weeks[i];
+	}
+
+	/** Returns the number of different weeks, including the usual week. */
+	public int getWeekCount() {
+		return weekServices.length;
+	}
+
+	/**
+	 * Returns the index of the day of the week whose service runs on day
+	 * during week, or NO_SERVICE.
+	 */
+	public int getService(int week, Day day) {
+		return weekServices[week][day.getIndex()];
+	}
+}
@@ -1,101 +1,160 @@
 package time;
 
-import java.util.ArrayList;
-import java.util.Calendar;
 import java.util.Date;
 
 import utils.MathUtils;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
- * A simple immutable time of a particular day.
+ * A simple immutable time of a particular day. Internally this is just the
+ * minute of the week, and every possible Time is built once up front so that
+ * arithmetic never allocates.
  */
 public class Time implements Comparable<Time> {
 
 	/**
 	 * Returns the current time represented as a Time. This is locale-aware, so
 	 * if the host JVM's timezone is set to be, say, PST, the current time will
-	 * reflect that.
+	 * reflect that. Use an {@link EpochConverter} to work in a specific zone.
 	 * 
 	 * @see System.currentTimeMillis()
 	 */
 	public static Time now() {
-		return new Time(System.currentTimeMillis());
+		return EpochConverter.getDefault().toTime(System.currentTimeMillis());
 	}
 	
 	/**
 	 * Returns the Time that d maps to. This method is locale-aware, like {@link Time.now()}.
 	 */
 	public static Time timeFrom(Date d) {
-		Calendar c = Calendar.getInstance();
-		c.setTime(d);
-
-		return new Time(Day.valueOf(c.get(Calendar.DAY_OF_WEEK)), c.get(Calendar.HOUR_OF_DAY), c.get(Calendar.MINUTE));
+		return EpochConverter.getDefault().toTime(d.getTime());
 	}
 	
-	/** The pattern used for parsing Times */
-	private static final Pattern TIME_PATTERN = Pattern.compile("(\\d{1,2}):(\\d{2})\\s*(pm)*");
-	
-	/** Parses a string like 7:00pm into a time on day d. */
+	/**
+	 * Parses a string like 7:00pm into a time on day d. This makes a best
+	 * effort: the first thing that looks like a time (one or two digits, a
+	 * colon, and two digits) is used, and anything else is ignored. Only a
+	 * following "pm" changes the hour, so "12:07" is just after midnight.
+	 */
 	public static Time parse(String s, Day d) {
-		Matcher m = TIME_PATTERN.matcher(s);
-		if(!m.find())
-			throw TimeFormatException.forInputString(s);
-		
-		boolean pm = m.group(3) != null;
-		int hours = Integer.parseInt(m.group(1));
-		if(pm && hours < 12)
-			hours += 12;
-		else if(!pm && hours == 12)
-			hours = 0; // Midnight
-		int minutes = Integer.parseInt(m.group(2));
-
-		try {
-			return new Time(d, hours, minutes);
-		} catch(IllegalArgumentException e) {
-			// Something bad happened, let's blame it on the format.
-			throw TimeFormatException.forInputString(s);
+		for (int i = 0; i < s.length(); i++) {
+			if (!isDigit(s, i))
+				continue;
+			// Prefer a two digit hour, like a regex would
+			int colon = isDigit(s, i + 1) && isChar(s, i + 2, ':') ? i + 2 : i + 1;
+			if (!isChar(s, colon, ':') || !isDigit(s, colon + 1) || !isDigit(s, colon + 2))
+				continue;
+
+			int hours = digitsAt(s, i, colon);
+			int minutes = digitsAt(s, colon + 1, colon + 3);
+			int j = colon + 3;
+			while (j < s.length() && Character.isWhitespace(s.charAt(j)))
+				j++;
+			boolean pm = s.startsWith("pm", j);
+			if(pm && hours < 12)
+				hours += 12;
+			else if(!pm && hours == 12)
+				hours = 0; // Midnight
+
+			try {
+				return valueOf(d, hours, minutes);
+			} catch(IllegalArgumentException e) {
+				// Something bad happened, let's blame it on the format.
+				throw TimeFormatException.forInputString(s);
+			}
 		}
+		throw TimeFormatException.forInputString(s);
 	}
 
-	/** Will be in the range [0, 23] */
-	private final byte hours;
+	private static boolean isDigit(String s, int i) {
+		return i < s.length() && s.charAt(i) >= '0' && s.charAt(i) <= '9';
+	}
 
-	/** Will be in the range [0, 59] */
-	private final byte minutes;
+	private static boolean isChar(String s, int i, char c) {
+		return i < s.length() && s.charAt(i) == c;
+	}
 
-	/** The day that this time falls on */
-	private final Day day;
+	/** Reads the decimal digits from begin to end as a number. */
+	private static int digitsAt(String s, int begin, int end) {
+		int n = 0;
+		for (int i = begin; i < end; i++)
+			n = n * 10 + (s.charAt(i) - '0');
+		return n;
+	}
+
+	/** The number of minutes in a day. */
+	public static final int MINUTES_PER_DAY = 24 * 60;
+
+	/** The number of minutes in a week, and so the number of distinct Times. */
+	public static final int MINUTES_PER_WEEK = 7 * MINUTES_PER_DAY;
 
 	/**
-	 * Constructs a new time at the given <code>hour</code>, <code>minute</code>
-	 * , and <code>day</code>. Hours are assumed to be in 24-hour notation.
+	 * Every possible Time, indexed by minute of the week. Arithmetic on Times
+	 * hands these out rather than allocating new ones.
 	 */
-	public Time(Day day, int hours, int minutes) {
+	private static final Time[] TIMES = new Time[MINUTES_PER_WEEK];
+
+	static {
+		for (int i = 0; i < TIMES.length; i++)
+			TIMES[i] = new Time(i);
+	}
+
+	/**
+	 * Returns the interned Time that falls <code>minuteOfWeek</code> minutes
+	 * after midnight on Sunday morning. Must be in the range [0, 10079].
+	 */
+	public static Time valueOf(int minuteOfWeek) {
+		if (minuteOfWeek < 0 || minuteOfWeek >= MINUTES_PER_WEEK) {
+			throw new IllegalArgumentException(String.format("%d is not a valid minute of the week. Minutes must be in the range [0, %d].", minuteOfWeek, MINUTES_PER_WEEK - 1));
+		}
+		return TIMES[minuteOfWeek];
+	}
+
+	/**
+	 * Returns the interned Time at the given <code>hour</code>,
+	 * <code>minute</code>, and <code>day</code>. Hours are assumed to be in
+	 * 24-hour notation.
+	 */
+	public static Time valueOf(Day day, int hours, int minutes) {
+		return TIMES[toMinuteOfWeek(day, hours, minutes)];
+	}
+
+	/** Validates the fields of a time and packs them into a minute of the week. */
+	private static int toMinuteOfWeek(Day day, int hours, int minutes) {
 		if (hours < 0 || hours > 23) {
 			throw new IllegalArgumentException(String.format("%d is not a valid hour. Hours must be in the range [0, 23].", hours));
 		}
 		if (minutes < 0 || minutes > 59) {
 			throw new IllegalArgumentException(String.format("%d is not a valid minute. Minutes must be in the range [0, 59].", minutes));
 		}
-		this.day = day;
-		this.hours = (byte) hours;
-		this.minutes = (byte) minutes;
+		return day.getIndex() * MINUTES_PER_DAY + hours * 60 + minutes;
+	}
+
+	/** Minutes since midnight on Sunday morning, in the range [0, 10079]. */
+	private final int minuteOfWeek;
+
+	/**
+	 * Constructs a new time at the given <code>hour</code>, <code>minute</code>
+	 * , and <code>day</code>. Hours are assumed to be in 24-hour notation.
+	 * 
+	 * Prefer {@link #valueOf(Day, int, int)}, which does not allocate.
+	 */
+	public Time(Day day, int hours, int minutes) {
+		this(toMinuteOfWeek(day, hours, minutes));
 	}
 
 	/**
 	 * Constructs a time that corresponds to the date given by
-	 * <code>epoch</code>, assumed to be in milliseconds.
+	 * <code>epoch</code>, assumed to be in milliseconds, in the JVM's default
+	 * time zone.
+	 * 
+	 * @see EpochConverter
 	 */
 	public Time(long epoch) {
-		Calendar c = Calendar.getInstance();
-		c.setTimeInMillis(epoch);
+		this(EpochConverter.getDefault().minuteOfWeek(epoch));
+	}
 
-		this.hours = (byte) c.get(Calendar.HOUR_OF_DAY);
-		this.minutes = (byte) c.get(Calendar.MINUTE);
-		this.day = Day.valueOf(c.get(Calendar.DAY_OF_WEEK));
+	private Time(int minuteOfWeek) {
+		this.minuteOfWeek = minuteOfWeek;
 	}
 
 	/**
@@ -106,9 +165,7 @@ public class Time implements Comparable<Time> {
 	 * Monday morning).
 	 */
 	public Time addDays(int days) {
-		if (days == 0)
-			return this;
-		return new Time(day.add(days), hours, minutes);
+		return addMinutes(MathUtils.mod(days, 7) * MINUTES_PER_DAY);
 	}
 
 	/**
@@ -119,11 +176,7 @@ public class Time implements Comparable<Time> {
 	 * Monday morning).
 	 */
 	public Time addHours(int hours) {
-		if (hours == 0)
-			return this;
-		int h = this.hours + hours;
-		Day d = day.add(h < 0 ? (h + 1) / 24 - 1 : h / 24);
-		return new Time(d, MathUtils.mod(h, 24), minutes);
+		return addMinutes(MathUtils.mod(hours, 7 * 24) * 60);
 	}
 
 	/**
@@ -136,10 +189,16 @@ public class Time implements Comparable<Time> {
 	public Time addMinutes(int minutes) {
 		if (minutes == 0)
 			return this;
-		int m = this.minutes + minutes;
-		int h = this.hours + (m < 0 ? (m + 1) / 60 - 1 : m / 60);
-		Day d = day.add(h < 0 ? (h + 1) / 24 - 1 : h / 24);
-		return new Time(d, MathUtils.mod(h, 24), MathUtils.mod(m, 60));
+		return TIMES[MathUtils.mod(minuteOfWeek + MathUtils.mod(minutes, MINUTES_PER_WEEK), MINUTES_PER_WEEK)];
+	}
+
+	/**
+	 * Returns the number of minutes from this time forward to <code>t</code>,
+	 * wrapping around the week boundary if need be. Always in the range [0,
+	 * 10079].
+	 */
+	public int minutesUntil(Time t) {
+		return MathUtils.mod(t.minuteOfWeek - minuteOfWeek, MINUTES_PER_WEEK);
 	}
 
 	/**
@@ -152,11 +211,10 @@ public class Time implements Comparable<Time> {
 	 * 
 	 */
 	public int compareTo(Time o) {
-		if (day != o.day) {
+		if (minuteOfWeek / MINUTES_PER_DAY != o.minuteOfWeek / MINUTES_PER_DAY) {
 			throw new UnsupportedOperationException();
 		}
-		int dh = hours - o.hours, dm = minutes - o.minutes;
-		return (dh == 0 ? dm : dh);
+		return minuteOfWeek - o.minuteOfWeek;
 	}
 	
 	@Override
@@ -166,23 +224,33 @@ public class Time implements Comparable<Time> {
 	
 	@Override
 	public int hashCode() {
-		return day.hashCode() * 10000 + hours * 100 + minutes; 
+		return minuteOfWeek;
 	}
 
 	public boolean equalToTime(Time t) {
-		return t.day == this.day && t.hours == this.hours && t.minutes == this.minutes;
+		return t.minuteOfWeek == this.minuteOfWeek;
 	}
 
 	public Day getDay() {
-		return day;
+		return Day.valueOfIndex(minuteOfWeek / MINUTES_PER_DAY);
 	}
 
 	public int getHour() {
-		return hours;
+		return (minuteOfWeek % MINUTES_PER_DAY) / 60;
 	}
 
 	public int getMinute() {
-		return minutes;
+		return minuteOfWeek % 60;
+	}
+
+	/** Minutes since midnight of this time's day, in the range [0, 1439]. */
+	public int getMinuteOfDay() {
+		return minuteOfWeek % MINUTES_PER_DAY;
+	}
+
+	/** Minutes since midnight on Sunday morning, in the range [0, 10079]. */
+	public int getMinuteOfWeek() {
+		return minuteOfWeek;
 	}
 
 	@Override
@@ -204,39 +272,6 @@ public class Time implements Comparable<Time> {
 	 * name of the day if <code>includeDay</code> is set.
 	 */
 	public String toString(boolean military, boolean includeDay) {
-		ArrayList<Object> params = new ArrayList<Object>(5);
-		StringBuilder format = new StringBuilder();
-
-		if (includeDay) {
-			format.append("%s ");
-			params.add(day.getShortName());
-		}
-
-		// Default to 24-hour time
-		format.append("%02d:%02d");
-		if (military) {
-			params.add(hours);
-			params.add(minutes);
-		} else {
-			// If we're not, then convert the hours
-			int hr = hours;
-			boolean am = true;
-			if (hr == 0) {
-				hr = 12;
-			} else if (hr > 12) {
-				am = false;
-				hr -= 12;
-			} else if (hr == 12) {
-				am = false;
-			}
-			params.add(hr);
-			params.add(minutes);
-
-			// and add an am/pm
-			format.append("%s");
-			params.add(am ? "am" : "pm");
-		}
-
-		return String.format(format.toString(), params.toArray());
+		return TimeRenderer.getInstance().toString(this, military, includeDay);
 	}
 }
@@ -1,7 +1,5 @@
 package time;
 
-import static time.Day.daysBetween;
-
 /**
  * An immutable range representing the slice of time between the beginning and
  * the end.
@@ -14,7 +12,7 @@ public class TimeRange {
 	/** A convenience method for an empty time range. */
 	protected static TimeRange emptyRange() {
 		if (emptyRange == null) {
-			Time t = new Time(Day.SUNDAY, 0, 0);
+			Time t = Time.valueOf(Day.SUNDAY, 0, 0);
 			emptyRange = new TimeRange(t, t);
 		}
 		return emptyRange;
@@ -25,7 +23,12 @@ public class TimeRange {
 
 	/**
 	 * Construct a time range [begin, end). If begin occurs at the end, this
-	 * time range is said to be empty.
+	 * time range is said to be empty. Otherwise it runs forward from begin
+	 * until it reaches end, around the end of the week if need be: an end
+	 * earlier than begin on the same day, such as [Mon 2:00pm, Mon 1:00pm),
+	 * makes a range of all but an hour of the week, not an empty one. Callers
+	 * with times of day that may run past midnight must move end to the next
+	 * day themselves.
 	 */
 	public TimeRange(Time begin, Time end) {
 		this.begin = begin;
@@ -37,27 +40,20 @@ public class TimeRange {
 		return begin.equalToTime(end);
 	}
 
-	/** Tests whether t falls into this range. */
+	/**
+	 * Tests whether t falls into this range. The range runs forward from begin
+	 * to end around the week, so [Sat 11:00pm, Sun 1:00am) covers midnight,
+	 * and [Mon 2:00pm, Mon 1:00pm) covers everything but the hour before 2pm
+	 * on Monday.
+	 */
 	public boolean isInRange(Time t) {
-		if (isEmpty())
-			return false;
-
-		if (!daysBetween(begin.getDay(), end.getDay()).contains(t.getDay()))
-			return false;
-
-		// If this is a one-day range, we perform the check all at once
-		if (begin.getDay() == end.getDay())
-			return begin.compareTo(t) <= 0 && end.compareTo(t) > 0;
-
-		if (begin.getDay() == t.getDay())
-			return begin.compareTo(t) <= 0; // Must come after or at begin time
-
-		if (end.getDay() == t.getDay())
-			return end.compareTo(t) > 0; // Must come before end time
+		// Both of these are in [0, 10079], and the empty range has length 0.
+		return begin.minutesUntil(t) < getLength();
+	}
 
-		// If it's not on the first or last day of a multi-day range, but it is
-		// in the day range, then it's in.
-		return true;
+	/** The number of minutes this range covers. */
+	public int getLength() {
+		return begin.minutesUntil(end);
 	}
 
 	public Time getBeginning() {
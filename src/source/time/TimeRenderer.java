@@ -0,0 +1,150 @@
+package time;
+
+import static time.Time.MINUTES_PER_DAY;
+
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Renders Times as text, i.e. "09:23pm", "21:23" or "Mon 09:23pm".
+ * <p>
+ * Every time of day is rendered once per locale, up front, so that rendering
+ * a Time is just a copy out of a table. Renderers append straight into a
+ * caller's StringBuilder or char[] and so do not allocate. Instances are
+ * immutable and shared between threads.
+ */
+public class TimeRenderer {
+
+	/** The width of a 12-hour time, i.e. "09:23pm". */
+	private static final int TWELVE_HOUR_WIDTH = 7;
+
+	/** The width of a 24-hour time, i.e. "21:23". */
+	private static final int TWENTY_FOUR_HOUR_WIDTH = 5;
+
+	/** One renderer per locale, built on first use. */
+	private static final ConcurrentMap<Locale, TimeRenderer> renderers = new ConcurrentHashMap<Locale, TimeRenderer>();
+
+	/** Returns the renderer for the default locale. */
+	public static TimeRenderer getInstance() {
+		return getInstance(Locale.getDefault());
+	}
+
+	/** Returns the renderer for <code>locale</code>. */
+	public static TimeRenderer getInstance(Locale locale) {
+		TimeRenderer renderer = renderers.get(locale);
+		if (renderer == null) {
+			// Two threads may race to build one; either result is fine.
+			renderers.putIfAbsent(locale, new TimeRenderer(locale));
+			renderer = renderers.get(locale);
+		}
+		return renderer;
+	}
+
+	/** All 1440 12-hour times of day, back to back, TWELVE_HOUR_WIDTH apart. */
+	private final char[] twelveHour;
+
+	/** All 1440 24-hour times of day, back to back, TWENTY_FOUR_HOUR_WIDTH apart. */
+	private final char[] twentyFourHour;
+
+	/** The short name of each day, followed by a space, indexed by Day.getIndex(). */
+	private final char[][] dayPrefixes;
+
+	private TimeRenderer(Locale locale) {
+		twelveHour = new char[MINUTES_PER_DAY * TWELVE_HOUR_WIDTH];
+		twentyFourHour = new char[MINUTES_PER_DAY * TWENTY_FOUR_HOUR_WIDTH];
+		for (int m = 0; m < MINUTES_PER_DAY; m++) {
+			int hours = m / 60, minutes = m % 60;
+
+			int i = m * TWENTY_FOUR_HOUR_WIDTH;
+			writeTwoDigits(twentyFourHour, i, hours);
+			twentyFourHour[i + 2] = ':';
+			writeTwoDigits(twentyFourHour, i + 3, minutes);
+
+			// Midnight is 12:00am and noon is 12:00pm
+			int hr = hours % 12 == 0 ? 12 : hours % 12;
+			i = m * TWELVE_HOUR_WIDTH;
+			writeTwoDigits(twelveHour, i, hr);
+			twelveHour[i + 2] = ':';
+			writeTwoDigits(twelveHour, i + 3, minutes);
+			twelveHour[i + 5] = hours < 12 ? 'a' : 'p';
+			twelveHour[i + 6] = 'm';
+		}
+
+		String[] names = DateFormatSymbols.getInstance(locale).getShortWeekdays();
+		dayPrefixes = new char[7][];
+		for (Day d : Day.values())
+			dayPrefixes[d.getIndex()] = (names[Calendar.SUNDAY + d.getIndex()] + " ").toCharArray();
+	}
+
+	private static void writeTwoDigits(char[] dest, int i, int n) {
+		dest[i] = (char) ('0' + n / 10);
+		dest[i + 1] = (char) ('0' + n % 10);
+	}
+
+	/**
+	 * Returns the number of characters it takes to render <code>t</code>. Uses
+	 * 24-hour time if <code>military</code> is set, 12-hour time otherwise.
+	 * Includes the short name of the day if <code>includeDay</code> is set.
+	 */
+	public int length(Time t, boolean military, boolean includeDay) {
+		int length = military ? TWENTY_FOUR_HOUR_WIDTH : TWELVE_HOUR_WIDTH;
+		if (includeDay)
+			length += dayPrefixes[t.getMinuteOfWeek() / MINUTES_PER_DAY].length;
+		return length;
+	}
+
+	/**
+	 * Appends <code>t</code> to <code>sb</code>, using the same format options
+	 * as {@link #length(Time, boolean, boolean)}.
+	 *
+	 * @return sb, for chaining
+	 */
+	public StringBuilder append(StringBuilder sb, Time t, boolean military, boolean includeDay) {
+		int minuteOfDay = t.getMinuteOfDay();
+		if (includeDay)
+			sb.append(dayPrefixes[t.getMinuteOfWeek() / MINUTES_PER_DAY]);
+		if (military)
+			sb.append(twentyFourHour, minuteOfDay * TWENTY_FOUR_HOUR_WIDTH, TWENTY_FOUR_HOUR_WIDTH);
+		else
+			sb.append(twelveHour, minuteOfDay * TWELVE_HOUR_WIDTH, TWELVE_HOUR_WIDTH);
+		return sb;
+	}
+
+	/**
+	 * Writes <code>t</code> into <code>dest</code> starting at
+	 * <code>offset</code>, using the same format options as
+	 * {@link #length(Time, boolean, boolean)}.
+	 *
+	 * @return the offset just past the last character written
+	 * @throws IndexOutOfBoundsException
+	 *             if dest is too short
+	 */
+	public int render(char[] dest, int offset, Time t, boolean military, boolean includeDay) {
+		int minuteOfDay = t.getMinuteOfDay();
+		if (includeDay) {
+			char[] prefix = dayPrefixes[t.getMinuteOfWeek() / MINUTES_PER_DAY];
+			System.arraycopy(prefix, 0, dest, offset, prefix.length);
+			offset += prefix.length;
+		}
+		if (military) {
+			System.arraycopy(twentyFourHour, minuteOfDay * TWENTY_FOUR_HOUR_WIDTH, dest, offset, TWENTY_FOUR_HOUR_WIDTH);
+			return offset + TWENTY_FOUR_HOUR_WIDTH;
+		} else {
+			System.arraycopy(twelveHour, minuteOfDay * TWELVE_HOUR_WIDTH, dest, offset, TWELVE_HOUR_WIDTH);
+			return offset + TWELVE_HOUR_WIDTH;
+		}
+	}
+
+	/**
+	 * Returns <code>t</code> as a new string, using the same format options as
+	 * {@link #length(Time, boolean, boolean)}.
+	 */
+	public String toString(Time t, boolean military, boolean includeDay) {
+		char[] chars = new char[length(t, military, includeDay)];
+		render(chars, 0, t, military, includeDay);
+		return new String(chars);
+	}
+}
@@ -0,0 +1,124 @@
+package utils;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a single file and calls back on a background thread when it is
+ * written or replaced.
+ * <p>
+ * Editors often save a file in several steps, so the callback waits until the
+ * file has been quiet for a short while and then runs once for the whole
+ * burst of changes. The watching thread is a daemon, so it never keeps the
+ * program alive.
+ */
+public class FileWatcher {
+
+	/** How long the file must be left alone before the callback runs, in ms. */
+	public static final long QUIET_PERIOD = 500;
+
+	private final File file;
+
+	private final Runnable onChange;
+
+	private WatchService watcher;
+
+	private Thread thread;
+
+	/**
+	 * @param file
+	 *            the file to watch
+	 * @param onChange
+	 *            called on the watching thread after the file changes
+	 */
+	public FileWatcher(File file, Runnable onChange) {
+		this.file = file.getAbsoluteFile();
+		this.onChange = onChange;
+	}
+
+	/**
+	 * Starts watching the file.
+	 *
+	 * @throws IOException
+	 *             if the file's directory cannot be watched
+	 */
+	public synchronized void start() throws IOException {
+		if (thread != null)
+			throw new IllegalStateException("Already watching " + file);
+		watcher = FileSystems.getDefault().newWatchService();
+		// Only directories can be watched, so watch the file's directory and
+		// pick out the events for the file. Editors that save by replacing
+		// the file show up as a create rather than a modify.
+		file.getParentFile().toPath().register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "FileWatcher " + file.getName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Stops watching the file. The callback will not be started again. */
+	public synchronized void stop() {
+		if (thread == null)
+			return;
+		try {
+			watcher.close();
+		} catch (IOException e) {
+			// Nothing else to do, the thread is finished either way
+		}
+		thread.interrupt();
+		thread = null;
+	}
+
+	private void watch() {
+		try {
+			boolean changed = false;
+			while (true) {
+				// Block until something happens, or, once the file has changed,
+				// until it has been quiet for long enough.
+				WatchKey key = changed ? watcher.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS) : watcher.take();
+				if (key == null) {
+					changed = false;
+					runCallback();
+					continue;
+				}
+				for (WatchEvent<?> event : key.pollEvents()) {
+					Object context = event.context();
+					if (event.kind() == OVERFLOW)
+						changed = true; // Events were lost, so assume the worst
+					else if (context instanceof Path && ((Path) context).getFileName().toString().equals(file.getName()))
+						changed = true;
+				}
+				if (!key.reset())
+					return; // The directory is gone
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		} catch (ClosedWatchServiceException e) {
+			// Stopped
+		}
+	}
+
+	private void runCallback() {
+		try {
+			onChange.run();
+		} catch (RuntimeException e) {
+			// Keep watching; the next change may fix whatever went wrong.
+			e.printStackTrace();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * A set of 64 bit fingerprints that forgets each one some time after it was
+ * added, in constant memory. Fingerprints are kept in a ring of generations,
+ * each a fixed size open addressed table of longs covering an equal slice of
+ * time; when the newest generation's slice is up, the oldest is cleared and
+ * becomes the newest. A fingerprint is therefore remembered for at least
+ * <code>window</code> and at most a generation longer.
+ * <p>
+ * If more fingerprints arrive within one slice than a generation can hold,
+ * the ring moves on early, so the oldest generation is forgotten before its
+ * time. getEarlyRotations() counts how often that happens; if it isn't zero,
+ * the set should be made bigger.
+ * <p>
+ * Lookups and additions don't allocate. All methods are safe to call from
+ * multiple threads.
+ */
+public class FingerprintSet {
+
+	/** The number of generations in the ring. */
+	private static final int GENERATIONS = 4;
+
+	/** Marks an empty slot. A fingerprint of 0 is stored as 1. */
+	private static final long EMPTY = 0;
+
+	private final long[][] tables = new long[GENERATIONS][];
+
+	private final int[] sizes = new int[GENERATIONS];
+
+	private final int mask;
+
+	/** The most fingerprints a generation holds, keeping its table 3/4 full at most. */
+	private final int maxSize;
+
+	/** The time each generation covers, in ms. */
+	private final long slice;
+
+	/** The generation fingerprints are added to. */
+	private int current = 0;
+
+	/** When the current generation started, or Long.MIN_VALUE before the first call. */
+	private long currentStart = Long.MIN_VALUE;
+
+	private long earlyRotations = 0;
+
+	/**
+	 * @param window
+	 *            the least time to remember each fingerprint for, in ms
+	 * @param capacity
+	 *            the number of slots in each generation, rounded up to a power
+	 *            of two
+	 */
+	public FingerprintSet(long window, int capacity) {
+		if (window < 1 || capacity < 1 || capacity > 1 << 30)
+			throw new IllegalArgumentException(String.format("Cannot remember fingerprints for %dms in %d slots.", window, capacity));
+		int slots = Integer.highestOneBit(Math.max(capacity, 2) * 2 - 1);
+		for (int i = 0; i < GENERATIONS; i++)
+			tables[i] = new long[slots];
+		mask = slots - 1;
+		maxSize = Math.max(1, slots / 4 * 3);
+		// All but the newest generation must span the window between them
+		slice = (window + GENERATIONS - 2) / (GENERATIONS - 1);
+	}
+
+	/**
+	 * Adds a fingerprint.
+	 *
+	 * @param now
+	 *            the current time, in epoch milliseconds
+	 * @return true if it wasn't already in the set
+	 */
+	public synchronized boolean add(long fingerprint, long now) {
+		advance(now);
+		if (fingerprint == EMPTY)
+			fingerprint = 1;
+		if (find(fingerprint))
+			return false;
+		if (sizes[current] >= maxSize) {
+			rotate();
+			currentStart = now;
+			earlyRotations++;
+		}
+		long[] table = tables[current];
+		int i = index(fingerprint);
+		while (table[i] != EMPTY)
+			i = (i + 1) & mask;
+		table[i] = fingerprint;
+		sizes[current]++;
+		return true;
+	}
+
+	/**
+	 * Tests whether a fingerprint is in the set.
+	 *
+	 * @param now
+	 *            the current time, in epoch milliseconds
+	 */
+	public synchronized boolean contains(long fingerprint, long now) {
+		advance(now);
+		return find(fingerprint == EMPTY ? 1 : fingerprint);
+	}
+
+	/** Returns the number of fingerprints remembered. */
+	public synchronized int size() {
+		int size = 0;
+		for (int s : sizes)
+			size += s;
+		return size;
+	}
+
+	/** Returns the number of generations forgotten early for lack of room. */
+	public synchronized long getEarlyRotations() {
+		return earlyRotations;
+	}
+
+	private boolean find(long fingerprint) {
+		int start = index(fingerprint);
+		for (long[] table : tables) {
+			for (int i = start; table[i] != EMPTY; i = (i + 1) & mask) {
+				if (table[i] == fingerprint)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	private int index(long fingerprint) {
+		return (int) (fingerprint ^ fingerprint >>> 32) & mask;
+	}
+
+	/** Moves the ring on for each slice that has passed since the last call. */
+	private void advance(long now) {
+		if (currentStart == Long.MIN_VALUE) {
+			currentStart = now;
+			return;
+		}
+		for (int i = 0; i < GENERATIONS && now - currentStart >= slice; i++) {
+			rotate();
+			currentStart += slice;
+		}
+		// After a long quiet spell everything has been forgotten
+		if (now - currentStart >= slice)
+			currentStart = now;
+	}
+
+	/** Clears the oldest generation and makes it the current one. */
+	private void rotate() {
+		current = (current + 1) % GENERATIONS;
+		Arrays.fill(tables[current], EMPTY);
+		sizes[current] = 0;
+	}
+}
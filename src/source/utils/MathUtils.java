@@ -13,4 +13,19 @@ public class MathUtils {
 		return (n % m + m) % m;
 	}
 
+	/** The long version of {@link #mod(int, int)}. */
+	public static long mod(long n, long m) {
+		return (n % m + m) % m;
+	}
+
+	/**
+	 * Divides n by m, rounding towards negative infinity rather than towards
+	 * zero like java's n / m.
+	 * 
+	 * i.e. floorDiv(-3, 5) == -1, rather than java's -3 / 5 == 0.
+	 */
+	public static long floorDiv(long n, long m) {
+		return (n - mod(n, m)) / m;
+	}
+
 }
@@ -1,6 +1,10 @@
 package core;
 
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
 import static org.junit.Assert.*;
 import org.junit.*;
 import static core.MessageHandler.STD_DATE_FORM;
@@ -13,7 +17,8 @@ public abstract class MessageHandlerTestTemplate {
 
 	protected final Date time = new Date();
 
-	protected final String timeString = STD_DATE_FORM.format(time);
+	/** The zone the handler gives times in. */
+	protected TimeZone zone = TimeZone.getDefault();
 
 	protected final String phoneNumber = "+15037777777";
 
@@ -29,10 +34,26 @@ public abstract class MessageHandlerTestTemplate {
 		}
 	}
 
+	@Test
+	public void testGetResponses() {
+		List<Query> queries = new ArrayList<Query>();
+		for (String key : keywords.words()) {
+			queries.add(new Query(time, key, phoneNumber));
+			queries.add(new Query(time, key + " please", phoneNumber));
+		}
+		queries.add(new Query(time, "nothing I know", phoneNumber));
+		List<String> responses = handler.getResponses(queries);
+		assertEquals(queries.size(), responses.size());
+		for (int i = 0; i < queries.size(); i++)
+			assertEquals(handler.getResponse(queries.get(i)), responses.get(i));
+	}
+
 	@Test
 	public void testHelp() {
+		SimpleDateFormat format = (SimpleDateFormat) STD_DATE_FORM.clone();
+		format.setTimeZone(zone);
 		String expected = "PioTxt\n" //
-				+ timeString + "\n";
+				+ format.format(time) + "\n";
 		for (String k : keywords.words()) {
 			expected += "\n" + k.toUpperCase() + " " + keywords.getDefinition(k);
 		}
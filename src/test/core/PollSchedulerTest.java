@@ -0,0 +1,91 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import time.EpochConverter;
+
+public class PollSchedulerTest {
+
+	private static final long SECOND = 1000;
+
+	private static final long HOUR = 3600 * SECOND;
+
+	private static final long WEEK = 7 * 24 * HOUR;
+
+	/** Monday, November 15th, 2010, at midnight UTC. */
+	private static final long MONDAY = 1289779200000L;
+
+	private EpochConverter clock;
+
+	@Before
+	public void setUp() {
+		clock = new EpochConverter(TimeZone.getTimeZone("UTC"), MONDAY);
+	}
+
+	@Test
+	public void testBackoff() {
+		PollScheduler s = new PollScheduler(5 * SECOND, 60 * SECOND, 100000, clock, new Random(1));
+		long now = MONDAY;
+		assertEquals(5 * SECOND, s.nextInterval(3, now));
+		// Doubles, less up to a fifth, until it reaches the longest wait
+		long previous = 5 * SECOND;
+		for (int i = 1; i <= 6; i++) {
+			long expected = Math.min(60 * SECOND, (5 * SECOND) << i);
+			long interval = s.nextInterval(0, now += previous);
+			assertTrue(interval <= expected);
+			assertTrue(interval >= expected * 4 / 5);
+			previous = interval;
+		}
+		// Straight back to the shortest wait once queries come in
+		assertEquals(5 * SECOND, s.nextInterval(1, now += previous));
+		assertEquals(8, s.getChecks());
+		assertEquals(2, s.getBusyChecks());
+		assertEquals(5 * SECOND, s.getLastInterval());
+	}
+
+	@Test
+	public void testBudget() {
+		// 60 checks an hour, five of them at once
+		PollScheduler s = new PollScheduler(SECOND, 60 * SECOND, 60, clock, new Random(1));
+		long now = MONDAY;
+		for (int i = 0; i < 4; i++)
+			now += s.nextInterval(1, now);
+		assertEquals(0, s.getBudgetWaits());
+		assertTrue(s.nextInterval(1, now) > 50 * SECOND);
+		assertEquals(1, s.getBudgetWaits());
+
+		// Never more than the budget over a busy hour
+		int checks = 0;
+		for (long end = now + HOUR; now < end; checks++)
+			now += s.nextInterval(1, now);
+		assertTrue(checks <= 60 + 5);
+	}
+
+	@Test
+	public void testPeak() {
+		PollScheduler s = new PollScheduler(5 * SECOND, 300 * SECOND, 100000, clock, new Random(1));
+		// Busy from 8 to 9 on Monday morning
+		long now = MONDAY + 8 * HOUR;
+		for (int i = 0; i < 10; i++)
+			s.nextInterval(1, now + i * 60 * SECOND);
+		s.nextInterval(0, MONDAY + 10 * HOUR);
+
+		// A week later, quiet mornings back off less than quiet afternoons
+		long peak = 0, quiet = 0;
+		for (int i = 0; i < 10; i++) {
+			peak = s.nextInterval(0, MONDAY + WEEK + 8 * HOUR + i * SECOND);
+			assertTrue(peak <= PollScheduler.PEAK_FACTOR * 5 * SECOND);
+		}
+		s.nextInterval(1, MONDAY + WEEK + 14 * HOUR);
+		for (int i = 0; i < 10; i++)
+			quiet = s.nextInterval(0, MONDAY + WEEK + 14 * HOUR + i * SECOND);
+		assertTrue(quiet > 200 * SECOND);
+		assertTrue(peak < quiet);
+	}
+}
@@ -0,0 +1,219 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import persistance.DedupeJournal;
+import persistance.Log;
+import sms.ConnectionException;
+import sms.SmsConnection;
+
+public class QueryPipelineTest {
+
+	/** Records what is sent and deleted, taking a while to send. */
+	private static class SlowConnection implements SmsConnection {
+
+		final List<String> sent = new CopyOnWriteArrayList<String>();
+
+		final List<Query> deleted = new CopyOnWriteArrayList<Query>();
+
+		/** Held shut to stall every send. */
+		volatile CountDownLatch gate = new CountDownLatch(0);
+
+		volatile String failFor;
+
+		@Override
+		public List<? extends Query> getNewMessages() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void sendSms(String number, String message) throws ConnectionException {
+			try {
+				gate.await();
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				throw new ConnectionException("Interrupted.", e);
+			}
+			if (number.equals(failFor))
+				throw new ConnectionException("Could not send.", null);
+			sent.add(number);
+		}
+
+		@Override
+		public void connect() {
+		}
+
+		@Override
+		public void deleteSms(Query query) {
+			deleted.add(query);
+		}
+	}
+
+	private static final long HALF_HOUR = 30 * 60 * 1000L;
+
+	private SlowConnection connection;
+
+	private QueryPipeline pipeline;
+
+	private File logFile;
+
+	@Before
+	public void setUp() throws IOException {
+		connection = new SlowConnection();
+		logFile = File.createTempFile("messages", ".log");
+		logFile.deleteOnExit();
+	}
+
+	@After
+	public void tearDown() {
+		pipeline.stop();
+	}
+
+	private void create(int senders, int capacity) {
+		Properties props = new Properties();
+		props.setProperty("message_log_file", logFile.getPath());
+		pipeline = new QueryPipeline(new TestHandler(), connection, new Log(props), 1, senders, capacity, HALF_HOUR);
+	}
+
+	private void start(int senders, int capacity) {
+		create(senders, capacity);
+		pipeline.start();
+	}
+
+	private static Query query(int i) {
+		return new Query(new Date(1289840700000L + i), "lc", "+1503555" + (1000 + i));
+	}
+
+	private void awaitIdle() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (pipeline.getPending() > 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(5);
+		assertEquals(0, pipeline.getPending());
+	}
+
+	@Test
+	public void testConcurrentSends() throws InterruptedException {
+		start(8, QueryPipeline.DEFAULT_CAPACITY);
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < 80; i++)
+			assertTrue(pipeline.submit(query(i), true));
+		awaitIdle();
+		// One sender would take 80 * 20ms
+		assertTrue(System.currentTimeMillis() - start < 80 * 20);
+		assertEquals(80, connection.sent.size());
+		assertEquals(80, connection.deleted.size());
+		assertTrue(pipeline.isProcessed(query(0)));
+		// Answered once only
+		assertFalse(pipeline.submit(query(0), true));
+	}
+
+	@Test
+	public void testOldAndFailed() throws InterruptedException {
+		start(1, 4);
+		connection.failFor = query(1).getPhoneNumber();
+		assertTrue(pipeline.submit(query(0), false));
+		assertTrue(pipeline.submit(query(1), true));
+		awaitIdle();
+		// The old one is deleted unanswered, the failed one left for the next poll
+		assertEquals(Collections.singletonList(query(0)), connection.deleted);
+		assertTrue(connection.sent.isEmpty());
+		assertFalse(pipeline.isProcessed(query(1)));
+		connection.failFor = null;
+		assertTrue(pipeline.submit(query(1), true));
+		awaitIdle();
+		assertEquals(1, connection.sent.size());
+	}
+
+	@Test
+	public void testRestore() throws InterruptedException, IOException {
+		File journalFile = File.createTempFile("dedupe", ".journal");
+		journalFile.deleteOnExit();
+		create(1, 4);
+		pipeline.restore(new DedupeJournal(journalFile, HALF_HOUR));
+		pipeline.start();
+		assertTrue(pipeline.submit(query(0), true));
+		awaitIdle();
+		pipeline.stop();
+
+		// After a restart, the query isn't answered again
+		create(1, 4);
+		pipeline.restore(new DedupeJournal(journalFile, HALF_HOUR));
+		pipeline.start();
+		assertTrue(pipeline.isProcessed(query(0)));
+		assertFalse(pipeline.submit(query(0), true));
+		assertTrue(pipeline.submit(query(1), true));
+		awaitIdle();
+		assertEquals(2, connection.sent.size());
+	}
+
+	@Test
+	public void testOlderAfterNewer() throws InterruptedException, IOException {
+		File journalFile = File.createTempFile("dedupe", ".journal");
+		journalFile.deleteOnExit();
+		create(1, 4);
+		pipeline.restore(new DedupeJournal(journalFile, HALF_HOUR));
+		pipeline.start();
+		Query older = query(0), newer = query(5);
+		assertTrue(pipeline.submit(newer, true));
+		awaitIdle();
+		pipeline.advanceWatermark(Collections.singletonList(newer));
+		assertEquals(newer.getTimeSent().getTime(), pipeline.getWatermark());
+
+		// An older query turning up later, i.e. in the next part of the inbox, is still answered
+		assertTrue(pipeline.submit(older, true));
+		awaitIdle();
+		assertEquals(2, connection.sent.size());
+		pipeline.stop();
+
+		// Even after a restart, with the watermark past it
+		create(1, 4);
+		assertEquals(newer.getTimeSent().getTime(), pipeline.restore(new DedupeJournal(journalFile, HALF_HOUR)));
+		pipeline.start();
+		Query oldest = new Query(new Date(older.getTimeSent().getTime() - 1), "lc", "+15035559999");
+		assertFalse(pipeline.submit(older, true));
+		assertTrue(pipeline.submit(oldest, true));
+		awaitIdle();
+		assertEquals(3, connection.sent.size());
+	}
+
+	@Test
+	public void testBackpressure() throws InterruptedException {
+		start(1, 1);
+		connection.gate = new CountDownLatch(1);
+		final CountDownLatch submitted = new CountDownLatch(1);
+		Thread fetcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < 20; i++)
+						pipeline.submit(query(i), true);
+					submitted.countDown();
+				} catch (InterruptedException e) {
+					// Done
+				}
+			}
+		});
+		fetcher.start();
+		// With every send stalled, the queues fill and the fetcher waits
+		assertFalse(submitted.await(200, TimeUnit.MILLISECONDS));
+		assertTrue(pipeline.getPending() < 20);
+		connection.gate.countDown();
+		assertTrue(submitted.await(10, TimeUnit.SECONDS));
+		awaitIdle();
+		assertEquals(20, connection.sent.size());
+	}
+}
@@ -0,0 +1,26 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import java.util.Date;
+
+import org.junit.Test;
+
+public class QueryTest {
+
+	@Test
+	public void testFingerprint() {
+		Date sent = new Date(1289840700000L);
+		Query q = new Query(sent, "lc", "+15035551234");
+		Query same = new Query(new Date(sent.getTime()), "lc", "+15035551234");
+		assertEquals(q, same);
+		assertEquals(q.getFingerprint(), same.getFingerprint());
+		assertEquals(q.hashCode(), same.hashCode());
+
+		assertFalse(q.getFingerprint() == new Query(sent, "law", "+15035551234").getFingerprint());
+		assertFalse(q.getFingerprint() == new Query(sent, "lc", "+15035551235").getFingerprint());
+		assertFalse(q.getFingerprint() == new Query(new Date(sent.getTime() + 1), "lc", "+15035551234").getFingerprint());
+		// The number can't run into the body
+		assertFalse(new Query(sent, "4lc", "+1503555123").getFingerprint() == q.getFingerprint());
+	}
+}
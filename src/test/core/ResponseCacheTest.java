@@ -0,0 +1,56 @@
+package core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ResponseCacheTest {
+
+	@Test
+	public void testGetPut() {
+		ResponseCache cache = new ResponseCache(8);
+		assertNull(cache.get("law", null, 100, 140, 0));
+		cache.put("law", null, 100, 140, 0, "\n09:00am", cache.getGeneration());
+		assertEquals("\n09:00am", cache.get("law", null, 100, 140, 0));
+
+		// Anything different is a different response
+		assertNull(cache.get("law", null, 101, 140, 0));
+		assertNull(cache.get("law", null, 100, 120, 0));
+		assertNull(cache.get("law", null, 100, 140, 1));
+		assertNull(cache.get("law", "fred", 100, 140, 0));
+		assertNull(cache.get(null, null, 100, 140, 0));
+		assertEquals(1, cache.getHits());
+		assertEquals(6, cache.getMisses());
+	}
+
+	@Test
+	public void testEviction() {
+		ResponseCache cache = new ResponseCache(2);
+		long generation = cache.getGeneration();
+		cache.put("law", null, 100, 140, 0, "law", generation);
+		cache.put("fred", null, 100, 140, 0, "fred", generation);
+		// Use law, so fred is the least recently used
+		assertEquals("law", cache.get("law", null, 100, 140, 0));
+		cache.put("salmon", null, 100, 140, 0, "salmon", generation);
+		assertEquals(2, cache.size());
+		assertNull(cache.get("fred", null, 100, 140, 0));
+		assertEquals("law", cache.get("law", null, 100, 140, 0));
+		assertEquals("salmon", cache.get("salmon", null, 100, 140, 0));
+	}
+
+	@Test
+	public void testInvalidate() {
+		ResponseCache cache = new ResponseCache(8);
+		long generation = cache.getGeneration();
+		cache.put("law", null, 100, 140, 0, "law", generation);
+		cache.invalidate();
+		assertEquals(0, cache.size());
+		assertNull(cache.get("law", null, 100, 140, 0));
+
+		// Rendered from the old schedule, but put after the change
+		cache.put("law", null, 100, 140, 0, "law", generation);
+		assertNull(cache.get("law", null, 100, 140, 0));
+		cache.put("law", null, 100, 140, 0, "law", cache.getGeneration());
+		assertEquals("law", cache.get("law", null, 100, 140, 0));
+	}
+}
@@ -1,10 +1,19 @@
 package core;
 
 import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.TimeZone;
 import static org.junit.Assert.*;
 import org.junit.*;
 
+import persistance.schedule.store.Delay;
+import utils.FileUtils;
+
 public class TableHandlerTest extends MessageHandlerTestTemplate {
 
 	private static final File TEST_SCHEDULE = new File(
@@ -13,11 +22,16 @@ public class TableHandlerTest extends MessageHandlerTestTemplate {
 	/** Mon Nov 15 09:05:00 PST 2010 */
 	private static final Date monday = new Date(1289840700887l);
 
+	/** The zone the test schedule and dates are written in. */
+	private static final TimeZone PACIFIC = TimeZone.getTimeZone("America/Los_Angeles");
+
 	@Before
 	public void setUp() {
 		handler = new TableHandler();
+		((TableHandler) handler).setTimeZone(PACIFIC);
 		((TableHandler) handler).initialize(TEST_SCHEDULE);
-		keywords = handler.keywords;
+		zone = PACIFIC;
+		keywords = handler.getKeywords();
 	}
 
 	@Test
@@ -51,6 +65,136 @@ public class TableHandlerTest extends MessageHandlerTestTemplate {
 		assertEquals(expected, response);
 	}
 
+	@Test
+	public void testJourneys() {
+		Query query = new Query(monday, "sea to pdx", phoneNumber);
+		query.setTimeReceived(monday);
+		String response = handler.getResponse(query);
+		// Both 9:10am and 9:50am from Seattle get to Portland at 10:00am, so wait for the later
+		assertTrue(response, response.startsWith("PioTxt\n" //
+				+ "Mon, Nov 15, 09:05 AM\n\n" //
+				+ "@ Seattle to Portland\n" //
+				+ "09:50am i - 10:00am\n" //
+				+ "10:50am i - 11:00am\n"));
+		assertTrue(response.length() <= PioText.SMS_LENGTH);
+
+		// After the last bus of the night, the first of the morning
+		query = new Query(monday, "mso sea", phoneNumber);
+		query.setTimeReceived(new Date(monday.getTime() + 13 * 60 * 60 * 1000));
+		response = handler.getResponse(query);
+		assertTrue(response, response.contains("@ Missoula to Seattle\n" //
+				+ "10:31pm - 10:50pm\n" //
+				+ "07:31am - 07:50am\n"));
+	}
+
+	@Test
+	public void testServiceCalendar() throws IOException {
+		File calendar = File.createTempFile("calendar", ".txt");
+		calendar.deleteOnExit();
+		// No service for the coming week
+		Date now = new Date();
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+		format.setTimeZone(PACIFIC);
+		String week = format.format(now) + " - " + format.format(new Date(now.getTime() + 8 * 24 * 60 * 60 * 1000L));
+		FileUtils.writeFile(calendar, week + ", none\n", true);
+		TableHandler th = new TableHandler();
+		th.setTimeZone(PACIFIC);
+		th.initialize(TEST_SCHEDULE, calendar);
+		assertEquals("\n@ Missoula", th.getOneStop(now, "mso", PioText.SMS_LENGTH));
+		assertFalse(th.getAllStops(now, PioText.SMS_LENGTH).contains("@"));
+
+		// Running as usual, there is always a next stop
+		assertTrue(((TableHandler) handler).getOneStop(now, "mso", PioText.SMS_LENGTH).contains("31am") || ((TableHandler) handler).getOneStop(now, "mso", PioText.SMS_LENGTH).contains("31pm"));
+	}
+
+	@Test
+	public void testServiceCalendarRenewed() throws IOException {
+		File calendar = File.createTempFile("calendar", ".txt");
+		calendar.deleteOnExit();
+		// No service for a week well beyond the dates the calendar is first compiled for
+		long day = 24 * 60 * 60 * 1000L;
+		Date now = new Date();
+		Date later = new Date(now.getTime() + 400 * day);
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+		format.setTimeZone(PACIFIC);
+		FileUtils.writeFile(calendar, format.format(later) + " - " + format.format(new Date(later.getTime() + 8 * day)) + ", none\n", true);
+		TableHandler th = new TableHandler();
+		th.setTimeZone(PACIFIC);
+		th.initialize(TEST_SCHEDULE, calendar);
+		assertEquals("\n@ Missoula", th.getOneStop(later, "mso", PioText.SMS_LENGTH));
+		assertEquals("\n@ Missoula to Seattle\n(no service)", th.getJourneys(later, "mso", "sea", PioText.SMS_LENGTH));
+		// And nearer dates still run as usual
+		assertTrue(th.getOneStop(now, "mso", PioText.SMS_LENGTH).contains("31"));
+	}
+
+	@Test
+	public void testResponseCache() throws IOException {
+		TableHandler th = (TableHandler) handler;
+		ResponseCache cache = th.getResponseCache();
+		String response = handler.getResponse(query("mso", monday));
+		// Later in the same minute
+		assertEquals(response, handler.getResponse(query("mso", new Date(monday.getTime() + 100))));
+		assertEquals(1, cache.getHits());
+		handler.getResponse(query("pdx", monday));
+		handler.getResponse(query("what?", monday));
+		handler.getResponse(query("what?", monday));
+		assertEquals(2, cache.getHits());
+		assertEquals(3, cache.getMisses());
+
+		// A new delay and a new schedule both start afresh
+		th.getDelays().add(new Delay("mso", null, 5, Long.MAX_VALUE));
+		assertTrue(handler.getResponse(query("mso", monday)).contains("09:36am"));
+		assertEquals(2, cache.getHits());
+		File file = File.createTempFile("schedule", ".txt");
+		file.deleteOnExit();
+		FileUtils.writeFile(file, FileUtils.readFile(TEST_SCHEDULE), true);
+		assertTrue(th.reload(file));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testBatch() {
+		ResponseCache cache = ((TableHandler) handler).getResponseCache();
+		List<Query> queries = new ArrayList<Query>();
+		for (int i = 0; i < 5; i++)
+			queries.add(query("mso", new Date(monday.getTime() + i)));
+		queries.add(query("mso sea", monday));
+		queries.add(query("what?", monday));
+		queries.add(query("who?", monday));
+		List<String> responses = handler.getResponses(queries);
+		assertEquals(queries.size(), responses.size());
+		for (int i = 1; i < 5; i++)
+			assertSame(responses.get(0), responses.get(i));
+		assertTrue(responses.get(5).contains("@ Missoula to Seattle"));
+		assertSame(responses.get(6), responses.get(7));
+		// Only the three different responses were rendered
+		assertEquals(3, cache.getMisses());
+		assertEquals(0, cache.getHits());
+	}
+
+	private Query query(String body, Date time) {
+		Query query = new Query(time, body, phoneNumber);
+		query.setTimeReceived(time);
+		return query;
+	}
+
+	@Test
+	public void testDelays() {
+		TableHandler th = (TableHandler) handler;
+		long hour = 60 * 60 * 1000L;
+		th.getDelays().add(new Delay("mso", null, 30, monday.getTime() + hour));
+		// The 8:31am runs late, but not late enough to be caught
+		assertTrue(th.getOneStop(monday, "mso", PioText.SMS_LENGTH).startsWith("\n@ Missoula\n10:01am\n11:01am\n"));
+		assertTrue(th.getAllStops(monday, PioText.SMS_LENGTH).startsWith("\n09:10am @ Seattle\n09:50am @ Seattle\n10:00am @ Portland\n10:01am @ Missoula\n"));
+		// Journeys too, arriving as late as they leave
+		String journeys = th.getJourneys(monday, "mso", "sea", PioText.SMS_LENGTH);
+		assertTrue(journeys, journeys.startsWith("\n@ Missoula to Seattle\n10:01am - 10:20am"));
+
+		// The delay has run out by the next minute after it expires; delays are judged as of the start of the minute
+		Date later = new Date(monday.getTime() + hour + 60 * 1000L);
+		assertTrue(th.getOneStop(later, "mso", PioText.SMS_LENGTH).startsWith("\n@ Missoula\n10:31am\n"));
+	}
+
 	@Test
 	public void testSingleStopDirectional() {
 		fail("Not implemented yet.");
@@ -61,4 +205,56 @@ public class TableHandlerTest extends MessageHandlerTestTemplate {
 		fail("Not implemented yet.");
 	}
 
+	@Test
+	public void testReload() throws IOException {
+		TableHandler th = (TableHandler) handler;
+		File file = File.createTempFile("schedule", ".txt");
+		file.deleteOnExit();
+		String schedule = FileUtils.readFile(TEST_SCHEDULE);
+
+		// A broken schedule is ignored
+		FileUtils.writeFile(file, schedule + "\nBoise, boi\nboi, 7:65am\n", true);
+		assertFalse(th.reload(file));
+		assertFalse(handler.getKeywords().contains("boi"));
+		assertTrue(handler.getKeywords().contains("pdx"));
+
+		FileUtils.writeFile(file, schedule + "\nBoise, boi\nboi, 9:20am\n", true);
+		assertTrue(th.reload(file));
+		assertTrue(handler.getKeywords().contains("boi"));
+		Query query = new Query(monday, "boi", phoneNumber);
+		query.setTimeReceived(monday);
+		assertTrue(handler.getResponse(query).contains("@ Boise\n09:20am"));
+
+		// A missing file is ignored too
+		assertTrue(file.delete());
+		assertFalse(th.reload(file));
+		assertTrue(handler.getKeywords().contains("boi"));
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		File file = File.createTempFile("schedule", ".txt");
+		File snapshot = new File(file.getPath() + TableHandler.SNAPSHOT_SUFFIX);
+		file.deleteOnExit();
+		snapshot.deleteOnExit();
+		FileUtils.writeFile(file, FileUtils.readFile(TEST_SCHEDULE), true);
+		Properties props = new Properties();
+		props.setProperty("schedule_file", file.getPath());
+		props.setProperty(TableHandler.SNAPSHOT_PROP, "true");
+		props.setProperty(TableHandler.TIME_ZONE_PROP, PACIFIC.getID());
+
+		Query query = new Query(monday, "all", phoneNumber);
+		query.setTimeReceived(monday);
+		String expected = handler.getResponse(query);
+
+		// The first start parses the text and saves a snapshot, the second maps it
+		for (int start = 0; start < 2; start++) {
+			TableHandler th = new TableHandler();
+			th.initialize(props);
+			assertTrue(snapshot.exists());
+			assertEquals(expected, th.getResponse(query));
+			assertEquals(handler.helpMessage(monday), th.helpMessage(monday));
+		}
+	}
+
 }
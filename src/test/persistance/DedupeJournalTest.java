@@ -0,0 +1,105 @@
+package persistance;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import utils.FingerprintSet;
+
+public class DedupeJournalTest {
+
+	private static final long MINUTE = 60 * 1000L;
+
+	private static final long WINDOW = 30 * MINUTE;
+
+	/** Monday, November 15th, 2010, at 9:00am PST. */
+	private static final long NOW = 1289840400000L;
+
+	private File file;
+
+	private DedupeJournal journal;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("dedupe", ".journal");
+		file.delete();
+		journal = new DedupeJournal(file, WINDOW);
+	}
+
+	@After
+	public void tearDown() {
+		journal.close();
+		file.delete();
+	}
+
+	/** Replays the journal into a new set, as at a restart. */
+	private FingerprintSet restart(long now) throws IOException {
+		journal.close();
+		journal = new DedupeJournal(file, WINDOW);
+		FingerprintSet set = new FingerprintSet(WINDOW, 64);
+		journal.replay(set, now);
+		return set;
+	}
+
+	@Test
+	public void testReplay() throws IOException {
+		assertEquals(DedupeJournal.NO_WATERMARK, journal.replay(new FingerprintSet(WINDOW, 64), NOW));
+		journal.processed(1, NOW - 20 * MINUTE);
+		journal.processed(2, NOW);
+		journal.watermark(NOW - 5 * MINUTE, NOW);
+		// An earlier watermark is ignored
+		journal.watermark(NOW - 10 * MINUTE, NOW);
+
+		FingerprintSet set = restart(NOW + MINUTE);
+		assertTrue(set.contains(1, NOW + MINUTE));
+		assertTrue(set.contains(2, NOW + MINUTE));
+		assertFalse(set.contains(3, NOW + MINUTE));
+		assertEquals(NOW - 5 * MINUTE, journal.getWatermark());
+
+		// Only the last half hour is kept
+		set = restart(NOW + 15 * MINUTE);
+		assertFalse(set.contains(1, NOW + 15 * MINUTE));
+		assertTrue(set.contains(2, NOW + 15 * MINUTE));
+		assertEquals(NOW - 5 * MINUTE, journal.getWatermark());
+	}
+
+	@Test
+	public void testTorn() throws IOException {
+		journal.replay(new FingerprintSet(WINDOW, 64), NOW);
+		journal.processed(1, NOW);
+		journal.close();
+		// A crash part way through a record
+		FileOutputStream out = new FileOutputStream(file, true);
+		out.write(new byte[] { 'P', 0, 0, 0 });
+		out.close();
+		FingerprintSet set = restart(NOW);
+		assertTrue(set.contains(1, NOW));
+		journal.processed(2, NOW);
+		assertTrue(restart(NOW).contains(2, NOW));
+
+		// Not a journal at all
+		journal.close();
+		out = new FileOutputStream(file);
+		out.write("not a journal".getBytes());
+		out.close();
+		assertFalse(restart(NOW).contains(1, NOW));
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		journal.replay(new FingerprintSet(WINDOW, 64), NOW);
+		// Everything but the last few expires before the journal is compacted
+		for (int i = 0; i < DedupeJournal.COMPACT_AFTER; i++)
+			journal.processed(i, NOW + (i < DedupeJournal.COMPACT_AFTER - 5 ? 0 : WINDOW));
+		assertEquals(8 + 5 * 17, file.length());
+		FingerprintSet set = restart(NOW + WINDOW);
+		assertTrue(set.contains(DedupeJournal.COMPACT_AFTER - 1, NOW + WINDOW));
+		assertFalse(set.contains(0, NOW + WINDOW));
+	}
+}
@@ -0,0 +1,47 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.OUTBOUND;
+import static time.Day.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import persistance.schedule.Stop;
+import time.Time;
+
+public class BitSetScheduleTest extends MutableScheduleTestTemplate {
+
+	@Override
+	protected MutableSchedule createSchedule() {
+		return new BitSetSchedule();
+	}
+
+	@Test
+	public void testBothDirectionsInOneMinute() {
+		BitSetSchedule schedule = new BitSetSchedule();
+		Time t = Time.valueOf(SATURDAY, 23, 59);
+		schedule.addStop(new Stop("fred", t, OUTBOUND));
+		schedule.addStop(new Stop("fred", t, INBOUND));
+
+		Iterator<Stop> stops = schedule.getNextStops("fred", Time.valueOf(SATURDAY, 23, 0), 3).iterator();
+		assertEquals(new Stop("fred", t, INBOUND), stops.next());
+		assertEquals(new Stop("fred", t, OUTBOUND), stops.next());
+		assertFalse(stops.hasNext());
+
+		assertEquals(new Stop("fred", t, INBOUND), schedule.getNextStop("fred", t));
+	}
+
+	@Test
+	public void testDirectionalWraparound() {
+		BitSetSchedule schedule = new BitSetSchedule();
+		schedule.addStop(new Stop("fred", Time.valueOf(SUNDAY, 0, 0), OUTBOUND));
+		schedule.addStop(new Stop("fred", Time.valueOf(SATURDAY, 12, 0), INBOUND));
+
+		assertEquals(Time.valueOf(SUNDAY, 0, 0), schedule.getNextStop("fred", OUTBOUND, Time.valueOf(SATURDAY, 23, 59)).getTime());
+		assertEquals(Time.valueOf(SATURDAY, 12, 0), schedule.getNextStop("fred", INBOUND, Time.valueOf(SATURDAY, 23, 59)).getTime());
+		assertNull(schedule.getNextStop("fred", Stop.Direction.NONE, Time.valueOf(MONDAY, 0, 0)));
+	}
+}
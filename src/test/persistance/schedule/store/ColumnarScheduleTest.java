@@ -0,0 +1,61 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.OUTBOUND;
+import static time.Day.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import persistance.schedule.Stop;
+import time.Time;
+import time.TimeRange;
+
+public class ColumnarScheduleTest extends MutableScheduleTestTemplate {
+
+	@Override
+	protected MutableSchedule createSchedule() {
+		return new ColumnarSchedule();
+	}
+
+	@Test
+	public void testManyStopsPerMinute() {
+		ColumnarSchedule schedule = new ColumnarSchedule();
+		Time noon = Time.valueOf(TUESDAY, 12, 0);
+		for (int i = 0; i < 100; i++)
+			schedule.addStop(new Stop("stop" + i, noon, i % 2 == 0 ? INBOUND : OUTBOUND));
+		assertEquals(100, schedule.size());
+		for (int i = 0; i < 100; i++) {
+			assertTrue(schedule.stopInSchedule(new Stop("stop" + i, noon, i % 2 == 0 ? INBOUND : OUTBOUND)));
+			assertFalse(schedule.stopInSchedule(new Stop("stop" + i, noon, i % 2 == 0 ? OUTBOUND : INBOUND)));
+			assertEquals(noon, schedule.getNextStop("stop" + i, Time.valueOf(MONDAY, 0, 0)).getTime());
+		}
+
+		int count = 0;
+		for (Stop s : schedule.getStops(new TimeRange(noon, noon.addMinutes(1)))) {
+			assertEquals(noon, s.getTime());
+			count++;
+		}
+		assertEquals(100, count);
+
+		schedule.removeStops(new TimeRange(noon, noon.addMinutes(1)));
+		assertEquals(0, schedule.size());
+	}
+
+	@Test
+	public void testDuplicatesDropped() {
+		ColumnarSchedule schedule = new ColumnarSchedule();
+		Stop s = new Stop("law", Time.valueOf(FRIDAY, 9, 15));
+		schedule.addStop(new Stop("law", Time.valueOf(FRIDAY, 9, 45)));
+		schedule.addStop(s);
+		schedule.addStop(s);
+		assertEquals(2, schedule.size());
+
+		Iterator<Stop> stops = schedule.getNextStops("law", Time.valueOf(FRIDAY, 9, 0), 5).iterator();
+		assertEquals(s, stops.next());
+		assertEquals(Time.valueOf(FRIDAY, 9, 45), stops.next().getTime());
+		assertFalse(stops.hasNext());
+	}
+}
@@ -0,0 +1,89 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.OUTBOUND;
+import static time.Day.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import persistance.schedule.Stop;
+import time.Day;
+import time.Time;
+import time.TimeRange;
+
+public class CompiledScheduleTest {
+
+	@Test
+	public void testMatchesSource() {
+		IndexedSchedule source = new IndexedSchedule();
+		for (Day d : Day.values()) {
+			for (int i = 0; i < 5; i++) {
+				source.addStop(new Stop("fred", Time.valueOf(d, 9, 10 * i), i % 2 == 0 ? INBOUND : OUTBOUND));
+				source.addStop(new Stop("law", Time.valueOf(d, 9, 10 * i)));
+			}
+		}
+		CompiledSchedule frozen = source.freeze();
+		assertEquals(70, frozen.size());
+
+		Time t = Time.valueOf(SATURDAY, 9, 25);
+		assertEquals(source.getNextStop("fred", t), frozen.getNextStop("fred", t));
+		assertNull(frozen.getNextStop("salmon", t));
+		assertFalse(frozen.getNextStops("salmon", t, 3).iterator().hasNext());
+
+		Iterator<Stop> expected = source.getNextStops("fred", t, 10).iterator();
+		for (Stop s : frozen.getNextStops("fred", t, 10))
+			assertEquals(expected.next(), s);
+		assertFalse(expected.hasNext());
+
+		TimeRange range = new TimeRange(t, Time.valueOf(SUNDAY, 9, 15));
+		int count = 0;
+		for (Stop s : frozen.getStops(range)) {
+			assertTrue(range.isInRange(s.getTime()));
+			assertTrue(source.stopInSchedule(s));
+			count++;
+		}
+		// 9:30 and 9:40 on Saturday, then 9:00 and 9:10 on Sunday, for each of fred and law
+		assertEquals(8, count);
+	}
+
+	@Test
+	public void testEmpty() {
+		CompiledSchedule frozen = new IndexedSchedule().freeze();
+		assertEquals(0, frozen.size());
+		assertNull(frozen.getNextStop("fred", Time.valueOf(MONDAY, 0, 0)));
+		assertFalse(frozen.getStops(new TimeRange(Time.valueOf(MONDAY, 0, 0), Time.valueOf(SUNDAY, 0, 0))).iterator().hasNext());
+	}
+
+	@Test
+	public void testConcurrentReaders() throws InterruptedException {
+		IndexedSchedule source = new IndexedSchedule();
+		for (int m = 0; m < Time.MINUTES_PER_WEEK; m += 7)
+			source.addStop(new Stop("fred", Time.valueOf(m)));
+		final CompiledSchedule frozen = source.freeze();
+
+		final int[] failures = new int[1];
+		Thread[] readers = new Thread[4];
+		for (int i = 0; i < readers.length; i++) {
+			readers[i] = new Thread() {
+				@Override
+				public void run() {
+					for (int m = 0; m < Time.MINUTES_PER_WEEK; m++) {
+						Stop s = frozen.getNextStop("fred", Time.valueOf(m));
+						if (Time.valueOf(m).minutesUntil(s.getTime()) >= 7) {
+							synchronized (failures) {
+								failures[0]++;
+							}
+						}
+					}
+				}
+			};
+			readers[i].start();
+		}
+		for (Thread reader : readers)
+			reader.join();
+		assertEquals(0, failures[0]);
+	}
+}
@@ -0,0 +1,76 @@
+package persistance.schedule.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import persistance.schedule.Journey;
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import persistance.schedule.Trip;
+import time.Time;
+
+/**
+ * Times ConnectionSchedule.getJourney on synthetic trips. Not a unit test;
+ * run it by hand:
+ * 
+ * <pre>
+ * java -cp target/source:target/test persistance.schedule.store.ConnectionScanBenchmark [connections] [queries]
+ * </pre>
+ * 
+ * Each route runs back and forth along a line of 20 of 500 stops, every 15
+ * minutes, all week. Journeys are asked for between stops on any route, so
+ * some have no answer and scan a whole week of connections.
+ */
+public class ConnectionScanBenchmark {
+
+	private static final int STOPS = 500;
+
+	private static final int STOPS_PER_ROUTE = 20;
+
+	public static void main(String[] args) {
+		int connections = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+		int queries = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		Random random = new Random(42);
+
+		List<Trip> trips = new ArrayList<Trip>();
+		List<String> served = new ArrayList<String>();
+		int made = 0;
+		for (int route = 0; made < connections; route++) {
+			int[] line = new int[STOPS_PER_ROUTE];
+			for (int i = 0; i < line.length; i++) {
+				line[i] = random.nextInt(STOPS);
+				served.add("s" + line[i]);
+			}
+			for (int start = route % 15; start < Time.MINUTES_PER_WEEK && made < connections; start += 15) {
+				List<Stop> stops = new ArrayList<Stop>();
+				boolean back = start / 15 % 2 == 1;
+				for (int i = 0; i < line.length; i++) {
+					int minute = (start + 3 * i) % Time.MINUTES_PER_WEEK;
+					stops.add(new Stop("s" + line[back ? line.length - 1 - i : i], Time.valueOf(minute), back ? Direction.INBOUND : Direction.OUTBOUND));
+				}
+				trips.add(new Trip(stops));
+				made += stops.size() - 1;
+			}
+		}
+		long start = System.nanoTime();
+		ConnectionSchedule schedule = new ConnectionSchedule(new IndexedSchedule(), trips);
+		System.out.printf("Compiled %,d connections on %,d trips in %.0fms%n", schedule.size(), trips.size(), (System.nanoTime() - start) / 1e6);
+
+		for (int run = 1; run <= 5; run++) {
+			int found = 0;
+			long minutes = 0;
+			start = System.nanoTime();
+			for (int q = 0; q < queries; q++) {
+				String from = served.get(random.nextInt(served.size())), to = served.get(random.nextInt(served.size()));
+				Journey j = schedule.getJourney(from, to, Time.valueOf(random.nextInt(Time.MINUTES_PER_WEEK)));
+				if (j != null) {
+					found++;
+					minutes += j.getMinutes();
+				}
+			}
+			double micros = (System.nanoTime() - start) / 1e3 / queries;
+			System.out.printf("Run %d: %,d queries, %,d journeys averaging %d minutes, %.1fus per query%n", run, queries, found, found == 0 ? 0 : minutes / found, micros);
+		}
+	}
+}
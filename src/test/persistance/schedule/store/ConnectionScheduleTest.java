@@ -0,0 +1,89 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.NONE;
+import static persistance.schedule.Stop.Direction.OUTBOUND;
+import static time.Day.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import persistance.schedule.Journey;
+import persistance.schedule.Stop;
+import persistance.schedule.Trip;
+import time.Time;
+
+public class ConnectionScheduleTest {
+
+	private static Trip trip(Stop... stops) {
+		return new Trip(Arrays.asList(stops));
+	}
+
+	@Test
+	public void testTransfer() {
+		List<Trip> trips = new ArrayList<Trip>();
+		trips.add(trip(new Stop("law", Time.valueOf(MONDAY, 9, 0), OUTBOUND), new Stop("fred", Time.valueOf(MONDAY, 9, 10), OUTBOUND), new Stop("salmon", Time.valueOf(MONDAY, 9, 40))));
+		trips.add(trip(new Stop("fred", Time.valueOf(MONDAY, 9, 15)), new Stop("templeton", Time.valueOf(MONDAY, 9, 30))));
+		// Slower than changing at fred
+		trips.add(trip(new Stop("law", Time.valueOf(MONDAY, 9, 5)), new Stop("templeton", Time.valueOf(MONDAY, 9, 50))));
+		ConnectionSchedule schedule = new ConnectionSchedule(new IndexedSchedule(), trips);
+		assertEquals(4, schedule.size());
+
+		Journey j = schedule.getJourney("law", "templeton", Time.valueOf(MONDAY, 8, 30));
+		assertEquals(1, j.getTransfers());
+		assertEquals(new Stop("law", Time.valueOf(MONDAY, 9, 0), OUTBOUND), j.getDeparture());
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 9, 10), OUTBOUND), j.getLegs().get(0).getAlighting());
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 9, 15), NONE), j.getLegs().get(1).getBoarding());
+		assertEquals(new Stop("templeton", Time.valueOf(MONDAY, 9, 30), NONE), j.getArrival());
+		assertEquals(30, j.getMinutes());
+
+		// Too late for the first trip, so take the slow one
+		j = schedule.getJourney("law", "templeton", Time.valueOf(MONDAY, 9, 1));
+		assertEquals(0, j.getTransfers());
+		assertEquals(Time.valueOf(MONDAY, 9, 50), j.getArrival().getTime());
+		// Too late for both, so wait a week
+		j = schedule.getJourney("law", "fred", Time.valueOf(MONDAY, 9, 6));
+		assertEquals(Time.valueOf(MONDAY, 9, 0), j.getDeparture().getTime());
+		assertEquals(Time.valueOf(MONDAY, 9, 10), j.getArrival().getTime());
+
+		assertNull(schedule.getJourney("salmon", "law", Time.valueOf(MONDAY, 8, 30)));
+		assertNull(schedule.getJourney("law", "law", Time.valueOf(MONDAY, 8, 30)));
+		assertNull(schedule.getJourney("law", "nowhere", Time.valueOf(MONDAY, 8, 30)));
+	}
+
+	@Test
+	public void testChainStops() {
+		IndexedSchedule stops = new IndexedSchedule();
+		// A loop that runs over the end of the week, then one on Wednesday
+		stops.addStop(new Stop("law", Time.valueOf(SATURDAY, 23, 40), OUTBOUND));
+		stops.addStop(new Stop("salmon", Time.valueOf(SUNDAY, 0, 10)));
+		stops.addStop(new Stop("law", Time.valueOf(SUNDAY, 0, 30), INBOUND));
+		stops.addStop(new Stop("law", Time.valueOf(WEDNESDAY, 12, 0), OUTBOUND));
+		stops.addStop(new Stop("salmon", Time.valueOf(WEDNESDAY, 12, 30)));
+		stops.addStop(new Stop("law", Time.valueOf(WEDNESDAY, 12, 50), INBOUND));
+		stops.addStop(new Stop("salmon", Time.valueOf(WEDNESDAY, 13, 30)));
+
+		List<Trip> trips = ConnectionSchedule.chainStops(stops, 60);
+		assertEquals(2, trips.size());
+		ConnectionSchedule schedule = new ConnectionSchedule(stops, trips);
+		assertEquals(5, schedule.size());
+		assertEquals(stops.getNextStop("law", Time.valueOf(MONDAY, 0, 0)), schedule.getNextStop("law", Time.valueOf(MONDAY, 0, 0)));
+
+		Journey j = schedule.getJourney("law", "salmon", Time.valueOf(SATURDAY, 23, 0));
+		assertEquals(Time.valueOf(SATURDAY, 23, 40), j.getDeparture().getTime());
+		assertEquals(Time.valueOf(SUNDAY, 0, 10), j.getArrival().getTime());
+
+		// The Wednesday loop passes law twice; board it the second time
+		j = schedule.getJourney("law", "salmon", Time.valueOf(WEDNESDAY, 12, 35));
+		assertEquals(0, j.getTransfers());
+		assertEquals(new Stop("law", Time.valueOf(WEDNESDAY, 12, 50), INBOUND), j.getDeparture());
+		assertEquals(Time.valueOf(WEDNESDAY, 13, 30), j.getArrival().getTime());
+		j = schedule.getJourney("law", "salmon", Time.valueOf(WEDNESDAY, 11, 0));
+		assertEquals(new Stop("law", Time.valueOf(WEDNESDAY, 12, 0), OUTBOUND), j.getDeparture());
+		assertEquals(Time.valueOf(WEDNESDAY, 12, 30), j.getArrival().getTime());
+	}
+}
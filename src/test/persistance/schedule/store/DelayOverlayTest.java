@@ -0,0 +1,131 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.NONE;
+import static time.Day.*;
+
+import java.io.StringReader;
+import java.util.Iterator;
+import java.util.TimeZone;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import persistance.schedule.Schedule;
+import persistance.schedule.Stop;
+import time.EpochConverter;
+import time.Time;
+import time.TimeRange;
+
+public class DelayOverlayTest {
+
+	/** Mon Nov 15 09:05:00 PST 2010 */
+	private static final long NOW = 1289840700000L;
+
+	private static final long HOUR = 60 * 60 * 1000L;
+
+	private IndexedSchedule schedule;
+
+	private DelayOverlay overlay;
+
+	@Before
+	public void setUp() {
+		schedule = new IndexedSchedule();
+		for (int hour = 7; hour < 12; hour++) {
+			schedule.addStop(new Stop("law", Time.valueOf(MONDAY, hour, 0), INBOUND));
+			schedule.addStop(new Stop("fred", Time.valueOf(MONDAY, hour, 20)));
+		}
+		overlay = new DelayOverlay();
+	}
+
+	@Test
+	public void testNextStops() {
+		assertSame(schedule, overlay.apply(schedule, NOW));
+		overlay.add(new Delay("law", null, 25, NOW + HOUR));
+		Schedule delayed = overlay.apply(schedule, NOW);
+
+		// The 9:00am, running late, is still to come
+		assertEquals(new Stop("law", Time.valueOf(MONDAY, 9, 25), INBOUND), delayed.getNextStop("law", Time.valueOf(MONDAY, 9, 5)));
+		Iterator<Stop> stops = delayed.getNextStops("law", Time.valueOf(MONDAY, 9, 5), 2).iterator();
+		assertEquals(new Stop("law", Time.valueOf(MONDAY, 9, 25), INBOUND), stops.next());
+		assertEquals(new Stop("law", Time.valueOf(MONDAY, 10, 25), INBOUND), stops.next());
+		assertFalse(stops.hasNext());
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 9, 20)), delayed.getNextStop("fred", Time.valueOf(MONDAY, 9, 5)));
+
+		// Expired
+		assertSame(schedule, overlay.apply(schedule, NOW + HOUR));
+		assertEquals(0, overlay.getMinutesLate(new Stop("law", Time.valueOf(MONDAY, 9, 0), INBOUND), NOW + HOUR));
+	}
+
+	@Test
+	public void testStops() {
+		// Only the 9:00am trip, which overtakes the 9:20am at fred
+		overlay.add(new Delay(null, new TimeRange(Time.valueOf(MONDAY, 9, 0), Time.valueOf(MONDAY, 9, 1)), 30, NOW + HOUR));
+		Iterator<Stop> stops = overlay.apply(schedule, NOW).getStops(new TimeRange(Time.valueOf(MONDAY, 9, 10), Time.valueOf(MONDAY, 10, 1))).iterator();
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 9, 20), NONE), stops.next());
+		assertEquals(new Stop("law", Time.valueOf(MONDAY, 9, 30), INBOUND), stops.next());
+		assertEquals(new Stop("law", Time.valueOf(MONDAY, 10, 0), INBOUND), stops.next());
+		assertFalse(stops.hasNext());
+	}
+
+	@Test
+	public void testLatestWins() {
+		// Reports drop those expired by the wall clock, so these never expire
+		overlay.add(new Delay(null, null, 10, Long.MAX_VALUE));
+		overlay.add(new Delay("law", null, 5, Long.MAX_VALUE));
+		overlay.add(new Delay("law", null, 15, Long.MAX_VALUE));
+		assertEquals(2, overlay.size());
+		Stop law = new Stop("law", Time.valueOf(MONDAY, 9, 0), INBOUND);
+		assertEquals(15, overlay.getMinutesLate(law, NOW));
+		assertEquals(10, overlay.getMinutesLate(new Stop("fred", Time.valueOf(MONDAY, 9, 20)), NOW));
+
+		// Everywhere again, after law's report
+		overlay.add(new Delay(null, null, 0, Long.MAX_VALUE));
+		assertEquals(0, overlay.getMinutesLate(law, NOW));
+		overlay.clear();
+		assertEquals(0, overlay.size());
+	}
+
+	@Test
+	public void testFeed() throws Exception {
+		DelayFeed feed = new DelayFeed(overlay, new EpochConverter(TimeZone.getTimeZone("America/Los_Angeles")));
+		Delay d = feed.parseLine(" law, 10", 1, NOW);
+		assertEquals("law", d.getKeyword());
+		assertNull(d.getTrip());
+		assertEquals(10, d.getMinutes());
+		assertEquals(NOW + DelayFeed.DEFAULT_EXPIRY * 60000L, d.getExpires());
+
+		d = feed.parseLine("all, 15, for 30", 1, NOW);
+		assertNull(d.getKeyword());
+		assertEquals(NOW + 30 * 60000L, d.getExpires());
+
+		d = feed.parseLine("Fred, 5, 9:00am - 10:20am, for 120", 1, NOW);
+		assertEquals("fred", d.getKeyword());
+		assertTrue(d.appliesTo(new Stop("fred", Time.valueOf(MONDAY, 10, 20))));
+		assertFalse(d.appliesTo(new Stop("fred", Time.valueOf(TUESDAY, 10, 20))));
+		assertNull(feed.parseLine("# the 9:00am is late", 1, NOW));
+
+		// An overnight trip runs into Tuesday, rather than round the rest of the week
+		d = feed.parseLine("fred, 5, 11:00pm - 1:00am", 1, NOW);
+		assertEquals(2 * 60 + 1, d.getTrip().getLength());
+		assertTrue(d.appliesTo(new Stop("fred", Time.valueOf(MONDAY, 23, 30))));
+		assertTrue(d.appliesTo(new Stop("fred", Time.valueOf(TUESDAY, 1, 0))));
+		assertFalse(d.appliesTo(new Stop("fred", Time.valueOf(TUESDAY, 1, 1))));
+		assertFalse(d.appliesTo(new Stop("fred", Time.valueOf(WEDNESDAY, 12, 0))));
+		assertFalse(d.appliesTo(new Stop("fred", Time.valueOf(MONDAY, 22, 59))));
+
+		for (String bad : new String[] { "law", "law, ten", "law, 5, for ever", "law, 5, 9:00am", "law, 5, 9:00am - 10:00am, 30", "law, 2000" }) {
+			try {
+				feed.parseLine(bad, 1, NOW);
+				fail("Parsed " + bad);
+			} catch (ParseException e) {
+				// Expected
+			}
+		}
+
+		feed.follow(new StringReader("law, 10\nlaw, ?\nfred, 20, for 1\n"));
+		assertEquals(2, overlay.size());
+		assertEquals(1, feed.getErrorCount());
+	}
+}
@@ -15,6 +15,7 @@ import static time.Day.TUESDAY;
 import static time.Day.WEDNESDAY;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Iterator;
 
 import org.junit.Before;
@@ -24,6 +25,7 @@ import persistance.schedule.Stop;
 import time.Day;
 import time.Time;
 import time.TimeRange;
+import utils.FileUtils;
 import core.Keywords;
 
 /**
@@ -152,6 +154,74 @@ public class FileParserTest {
 		assertFalse(schedule.getStops(new TimeRange(new Time(FRIDAY, 20, 45), new Time(FRIDAY, 20, 46))).iterator().hasNext());		
 	}
 
+	@Test
+	public void testParseKeepsFirstError() throws IOException {
+		File file = File.createTempFile("schedule", ".txt");
+		file.deleteOnExit();
+		FileUtils.writeFile(file, "Stop, stop\nSchedule: Monday 7:00am-9:00am\nstop, 7:00am\nstop, 8:00am\n", true);
+		// Building what was read fails as well as the reading
+		schedule = new IndexedSchedule() {
+			@Override
+			public void addStop(Stop s) {
+				throw new IllegalStateException("Could not add.");
+			}
+		};
+		parser = new FileParser(schedule, keywords, file) {
+			@Override
+			protected void parseLine(String line) {
+				if (line.contains("8:00am"))
+					throw new IllegalStateException("Could not read.");
+				super.parseLine(line);
+			}
+		};
+		try {
+			parser.parse();
+			fail("Parsed a file that could not be read.");
+		} catch (IllegalStateException e) {
+			assertEquals("Could not read.", e.getMessage());
+			assertEquals("Could not add.", e.getSuppressed()[0].getMessage());
+		}
+	}
+
+	@Test
+	public void testFrequency() {
+		schedule = new FrequencySchedule(new IndexedSchedule());
+		parser = new FileParser(schedule, keywords, new File(""));
+		parser.parseLine("Stop, stop");
+		parser.parseLine("Schedule: Monday-Friday 7:00am-9:00am");
+		parser.parseLine("stop, 6:50am, 7:00am-8:00am every 12 o, 8:30am");
+		parser.parseLine("Schedule: Friday 7:30am-9:00am");
+		parser.parseLine("stop, 8:20-8:59 every 20 i");
+
+		for (Day d : new Day[] { MONDAY, TUESDAY, WEDNESDAY, THURSDAY, FRIDAY }) {
+			assertStopInSchedule(new Stop("stop", new Time(d, 7, 0), OUTBOUND));
+			assertStopInSchedule(new Stop("stop", new Time(d, 7, 24), OUTBOUND));
+			assertFalse(schedule.stopInSchedule(new Stop("stop", new Time(d, 6, 50))));
+		}
+		for (Day d : new Day[] { MONDAY, TUESDAY, WEDNESDAY, THURSDAY }) {
+			assertStopInSchedule(new Stop("stop", new Time(d, 8, 0), OUTBOUND));
+			assertStopInSchedule(new Stop("stop", new Time(d, 8, 30)));
+		}
+		// The Friday schedule replaces the end of the weekday one
+		assertFalse(schedule.stopInSchedule(new Stop("stop", new Time(FRIDAY, 7, 36), OUTBOUND)));
+		assertEquals(new Stop("stop", new Time(FRIDAY, 8, 20), INBOUND), schedule.getNextStop("stop", new Time(FRIDAY, 7, 30)));
+		assertStopInSchedule(new Stop("stop", new Time(FRIDAY, 8, 40), INBOUND));
+		// Seven stops a day Monday to Thursday, three then two on Friday
+		assertEquals(4 * 7 + 3 + 2, new CompiledSchedule(schedule).size());
+
+		// A frequency outside the schedule is left out and counted, but the rest of the line is read
+		assertEquals(0, parser.getErrorCount());
+		parser.parseLine("stop, 6:00am-6:30am every 10, 8:45am");
+		assertEquals(1, parser.getErrorCount());
+		assertFalse(schedule.stopInSchedule(new Stop("stop", new Time(FRIDAY, 6, 0))));
+		assertStopInSchedule(new Stop("stop", new Time(FRIDAY, 8, 45)));
+
+		assertGracefulError(ParseException.class, "stop, 7:00am-8:00am");
+		assertGracefulError(ParseException.class, "stop, 7:00am-8:00am every");
+		assertGracefulError(ParseException.class, "stop, 7:00am-8:00am every 0");
+		assertErrorColumn(28, "stop, 7:00am-8:00am every 5x");
+	}
+
 	@Test
 	public void testMagicAmPm() {
 		parser.parseLine("Stop, stop");
@@ -184,8 +254,37 @@ public class FileParserTest {
 
 	@Test
 	public void testGracefulScheduleError() {
-		// parser.parseLine("Schedule:Monday\t-  Friday    7:00pm\t\t-9:00pm");
-		fail("Not yet implemented.");
+		parser.parseLine("Stop, stop");
+		parser.parseLine("Schedule:Monday\t-  Friday    7:00pm\t\t-9:00pm");
+		parser.parseLine("stop, 8:30pm");
+		assertStopInSchedule(new Stop("stop", new Time(FRIDAY, 20, 30)));
+
+		Class<? extends ParseException> scheduleException = FileParser.ScheduleParseException.class;
+		assertGracefulError(scheduleException, "Schedule: Funday 7:00pm-9:00pm");
+		assertGracefulError(scheduleException, "Schedule: Monday-Friday 7:00pm-9:00pm and then some");
+		assertGracefulError(ParseException.class, "Schedule: Monday-Friday 7:00pm");
+		assertGracefulError(ParseException.class, "Schedule: Monday-Friday 7pm-9pm");
+		assertGracefulError(ParseException.class, "Schedule: Monday-Friday 7:00pm-29:00");
+	}
+
+	@Test
+	public void testErrorColumns() {
+		parser.parseLine("Stop, stop");
+		parser.parseLine("Schedule: Monday-Friday 7:00pm-9:00pm");
+		assertErrorColumn(18, "stop, 8:30pm,  8:3o");
+		assertErrorColumn(20, "stop, 8:30pm, 8:31 x");
+		assertErrorColumn(15, "  stop, 7:00, 88:00");
+		assertErrorColumn(11, "Schedule: Funday 7:00pm-9:00pm");
+		assertErrorColumn(32, "Schedule: Monday-Friday 7:00pm 9:00pm");
+	}
+
+	@Test
+	public void testStopsIgnoreCase() {
+		parser.parseLine("Stop, stop");
+		parser.parseLine("Schedule: Monday 7:00am-9:00pm");
+		parser.parseLine("STOP, 8:30AM I,, 8:31 PM O");
+		assertStopInSchedule(new Stop("stop", new Time(MONDAY, 8, 30), INBOUND));
+		assertStopInSchedule(new Stop("stop", new Time(MONDAY, 20, 31), OUTBOUND));
 	}
 
 	@Test
@@ -211,6 +310,15 @@ public class FileParserTest {
 		}
 	}
 	
+	protected void assertErrorColumn(int column, String input) {
+		try {
+			parser.parseLine(input);
+			fail("Parser failed to throw an exception on invalid input.");
+		} catch (ParseException e) {
+			assertEquals(e.getMessage(), column, e.getColumn());
+		}
+	}
+
 	protected void assertStopInSchedule(Stop stop) {
 		Iterator<Stop> stops = schedule.getStops(new TimeRange(stop.getTime(), stop.getTime().addMinutes(1))).iterator(); 
 		assertTrue(format("Could not find stop '%s' in schedule.", stop), stops.hasNext());
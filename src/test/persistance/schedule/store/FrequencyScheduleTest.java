@@ -0,0 +1,111 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.NONE;
+import static persistance.schedule.Stop.Direction.OUTBOUND;
+import static time.Day.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import persistance.schedule.Stop;
+import time.Time;
+import time.TimeRange;
+
+public class FrequencyScheduleTest extends MutableScheduleTestTemplate {
+
+	@Override
+	protected MutableSchedule createSchedule() {
+		return new FrequencySchedule(new IndexedSchedule());
+	}
+
+	@Test
+	public void testNextStops() {
+		FrequencySchedule schedule = new FrequencySchedule(new IndexedSchedule());
+		schedule.addFrequency(Frequency.between("fred", OUTBOUND, Time.valueOf(MONDAY, 7, 0), Time.valueOf(MONDAY, 19, 0), 12));
+		schedule.addStop(new Stop("fred", Time.valueOf(MONDAY, 7, 30)));
+		// Made by the frequency too, so only listed once
+		schedule.addStop(new Stop("fred", Time.valueOf(MONDAY, 7, 36), OUTBOUND));
+		assertEquals(1, schedule.getFrequencyCount());
+
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 7, 0), OUTBOUND), schedule.getNextStop("fred", Time.valueOf(SUNDAY, 23, 0)));
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 12, 36), OUTBOUND), schedule.getNextStop("fred", Time.valueOf(MONDAY, 12, 25)));
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 19, 0), OUTBOUND), schedule.getNextStop("fred", Time.valueOf(MONDAY, 19, 0)));
+		// After the last, wait for next week
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 7, 0), OUTBOUND), schedule.getNextStop("fred", Time.valueOf(MONDAY, 19, 1)));
+		assertNull(schedule.getNextStop("law", Time.valueOf(MONDAY, 7, 0)));
+
+		Iterator<Stop> stops = schedule.getNextStops("fred", Time.valueOf(MONDAY, 7, 20), 4).iterator();
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 7, 24), OUTBOUND), stops.next());
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 7, 30), NONE), stops.next());
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 7, 36), OUTBOUND), stops.next());
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 7, 48), OUTBOUND), stops.next());
+		assertFalse(stops.hasNext());
+
+		// 61 from the frequency and 1 listed
+		assertEquals(62, schedule.compile().size());
+	}
+
+	@Test
+	public void testFreezeKeepsFrequencies() {
+		FrequencySchedule schedule = new FrequencySchedule(new IndexedSchedule());
+		schedule.addFrequency(Frequency.between("fred", OUTBOUND, Time.valueOf(MONDAY, 7, 0), Time.valueOf(MONDAY, 19, 0), 12));
+		schedule.addStop(new Stop("fred", Time.valueOf(MONDAY, 7, 30)));
+		FrequencySchedule frozen = schedule.freeze();
+		schedule.removeStops(new TimeRange(Time.valueOf(MONDAY, 0, 0), Time.valueOf(TUESDAY, 0, 0)));
+
+		// Still one frequency, not its 61 stops, and untouched by the removal
+		assertEquals(1, frozen.getFrequencyCount());
+		assertSame(frozen, frozen.freeze());
+		assertTrue(frozen.stopInSchedule(new Stop("fred", Time.valueOf(MONDAY, 7, 30))));
+		assertTrue(frozen.stopInSchedule(new Stop("fred", Time.valueOf(MONDAY, 12, 36), OUTBOUND)));
+		assertFalse(frozen.stopInSchedule(new Stop("fred", Time.valueOf(MONDAY, 12, 36))));
+		assertEquals(new Stop("fred", Time.valueOf(MONDAY, 7, 24), OUTBOUND), frozen.getNextStop("fred", Time.valueOf(MONDAY, 7, 20)));
+		assertEquals(62, frozen.compile().size());
+		try {
+			frozen.addStop(new Stop("fred", Time.valueOf(MONDAY, 8, 0)));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testRemoveSplits() {
+		FrequencySchedule schedule = new FrequencySchedule(new IndexedSchedule());
+		// Overnight, across the end of the week
+		schedule.addFrequency(Frequency.between("law", INBOUND, Time.valueOf(SATURDAY, 22, 0), Time.valueOf(SUNDAY, 2, 0), 30));
+		schedule.removeStops(new TimeRange(Time.valueOf(SATURDAY, 23, 15), Time.valueOf(SUNDAY, 0, 31)));
+		assertEquals(2, schedule.getFrequencyCount());
+		assertTrue(schedule.stopInSchedule(new Stop("law", Time.valueOf(SATURDAY, 23, 0), INBOUND)));
+		assertFalse(schedule.stopInSchedule(new Stop("law", Time.valueOf(SATURDAY, 23, 30), INBOUND)));
+		assertFalse(schedule.stopInSchedule(new Stop("law", Time.valueOf(SUNDAY, 0, 30), INBOUND)));
+		assertTrue(schedule.stopInSchedule(new Stop("law", Time.valueOf(SUNDAY, 1, 0), INBOUND)));
+
+		int count = 0;
+		for (Stop s : schedule.getStops(new TimeRange(Time.valueOf(SATURDAY, 22, 10), Time.valueOf(SUNDAY, 1, 30)))) {
+			assertTrue(schedule.stopInSchedule(s));
+			count++;
+		}
+		// 10:30pm, 11:00pm and 1:00am
+		assertEquals(3, count);
+
+		// Removing the rest leaves nothing
+		schedule.removeStops(new TimeRange(Time.valueOf(SATURDAY, 12, 0), Time.valueOf(SUNDAY, 12, 0)));
+		assertEquals(0, schedule.getFrequencyCount());
+	}
+
+	@Test
+	public void testFrequencyRemove() {
+		Frequency f = new Frequency("fred", NONE, Time.valueOf(MONDAY, 7, 0), 10, 7);
+		assertArrayEquals(new Frequency[] { f }, f.remove(new TimeRange(Time.valueOf(MONDAY, 7, 1), Time.valueOf(MONDAY, 7, 10))));
+		assertArrayEquals(new Frequency[] { new Frequency("fred", NONE, Time.valueOf(MONDAY, 7, 10), 10, 6) }, f.remove(new TimeRange(Time.valueOf(MONDAY, 6, 0), Time.valueOf(MONDAY, 7, 10))));
+		assertArrayEquals(new Frequency[] { new Frequency("fred", NONE, Time.valueOf(MONDAY, 7, 0), 10, 2), new Frequency("fred", NONE, Time.valueOf(MONDAY, 7, 40), 10, 3) },
+				f.remove(new TimeRange(Time.valueOf(MONDAY, 7, 20), Time.valueOf(MONDAY, 7, 31))));
+		assertArrayEquals(new Frequency[0], f.remove(new TimeRange(Time.valueOf(SUNDAY, 0, 0), Time.valueOf(TUESDAY, 0, 0))));
+		assertEquals(2, f.indexAfter(Time.valueOf(MONDAY, 7, 11)));
+		assertEquals(0, f.indexAfter(Time.valueOf(MONDAY, 8, 1)));
+	}
+}
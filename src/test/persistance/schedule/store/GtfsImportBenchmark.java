@@ -0,0 +1,87 @@
+package persistance.schedule.store;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+import core.Keywords;
+
+/**
+ * Times GtfsImporter on a synthetic feed. Not a unit test; run it by hand:
+ * 
+ * <pre>
+ * java -cp target/source:target/test persistance.schedule.store.GtfsImportBenchmark [rows] [runs]
+ * </pre>
+ * 
+ * The feed has 2,000 stops served by trips of 40 stops each, every trip on
+ * weekdays, Saturdays or Sundays, and is written to a temporary directory
+ * that is deleted afterwards.
+ */
+public class GtfsImportBenchmark {
+
+	private static final int STOPS = 2000;
+
+	private static final int STOPS_PER_TRIP = 40;
+
+	public static void main(String[] args) throws IOException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 4000000;
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+		File feed = File.createTempFile("gtfs", "");
+		if (!feed.delete() || !feed.mkdir())
+			throw new IOException("Could not make " + feed);
+		try {
+			long start = System.nanoTime();
+			writeFeed(feed, rows);
+			System.out.printf("Wrote %,d stop_times rows in %.1fs%n", rows, (System.nanoTime() - start) / 1e9);
+
+			for (int run = 1; run <= runs; run++) {
+				System.gc();
+				start = System.nanoTime();
+				GtfsImporter importer = new GtfsImporter(new ColumnarSchedule(), new Keywords(), feed);
+				importer.parse();
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.printf("Run %d: %,d rows, %,d stops in %.2fs, %,.0f rows/s%n", run, importer.getRowCount(), importer.getStopCount(), seconds, importer.getRowCount() / seconds);
+			}
+		} finally {
+			for (File f : feed.listFiles())
+				f.delete();
+			feed.delete();
+		}
+	}
+
+	private static void writeFeed(File feed, int rows) throws IOException {
+		Writer out = new BufferedWriter(new FileWriter(new File(feed, "calendar.txt")));
+		out.write("service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date\n");
+		out.write("WEEKDAY,1,1,1,1,1,0,0,20110101,20111231\n");
+		out.write("SATURDAY,0,0,0,0,0,1,0,20110101,20111231\n");
+		out.write("SUNDAY,0,0,0,0,0,0,1,20110101,20111231\n");
+		out.close();
+
+		String[] services = { "WEEKDAY", "SATURDAY", "SUNDAY" };
+		int trips = (rows + STOPS_PER_TRIP - 1) / STOPS_PER_TRIP;
+		out = new BufferedWriter(new FileWriter(new File(feed, "trips.txt")));
+		out.write("route_id,service_id,trip_id,direction_id\n");
+		for (int t = 0; t < trips; t++)
+			out.write(String.format("R%d,%s,T%d,%d\n", t % 50, services[t % 3], t, t % 2));
+		out.close();
+
+		out = new BufferedWriter(new FileWriter(new File(feed, "stops.txt")));
+		out.write("stop_id,stop_code,stop_name,stop_lat,stop_lon\n");
+		for (int s = 0; s < STOPS; s++)
+			out.write(String.format("S%d,%d,\"Stop %d, Main St\",45.5,-122.6\n", s, 10000 + s, s));
+		out.close();
+
+		out = new BufferedWriter(new FileWriter(new File(feed, "stop_times.txt")));
+		out.write("trip_id,arrival_time,departure_time,stop_id,stop_sequence\n");
+		for (int row = 0; row < rows; row++) {
+			int t = row / STOPS_PER_TRIP, seq = row % STOPS_PER_TRIP;
+			int minute = (t * 7 + seq * 2) % (26 * 60);
+			String time = String.format("%02d:%02d:00", minute / 60, minute % 60);
+			out.write(String.format("T%d,%s,%s,S%d,%d\n", t, time, time, (t * 13 + seq) % STOPS, seq + 1));
+		}
+		out.close();
+	}
+}
@@ -0,0 +1,151 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.NONE;
+import static persistance.schedule.Stop.Direction.OUTBOUND;
+import static time.Day.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import persistance.schedule.Stop;
+import time.Time;
+import core.Keywords;
+
+public class GtfsImporterTest {
+
+	private File feed;
+
+	@Before
+	public void setUp() throws IOException {
+		feed = File.createTempFile("gtfs", "");
+		assertTrue(feed.delete() && feed.mkdir());
+		write("calendar.txt", "service_id,monday,tuesday,wednesday,thursday,friday,saturday,sunday,start_date,end_date\r\n"
+				+ "WEEK,1,1,1,1,1,0,0,20110101,20111231\r\n"
+				+ "SAT,0,0,0,0,0,1,0,20110101,20111231\r\n");
+		write("trips.txt", "route_id,service_id,trip_id,direction_id\n"
+				+ "A,WEEK,t1,0\n"
+				+ "A,SAT,t2,1\n"
+				+ "A,HOLIDAY,t3,0\n"
+				+ "A,SAT,t4,\n");
+		write("stops.txt", "\uFEFFstop_id,stop_code,stop_name\n"
+				+ "1,FRED,\"Fred Meyer, Burlingame\"\n"
+				+ "2,,Law School\n");
+		write("stop_times.txt", "trip_id,arrival_time,departure_time,stop_id,stop_sequence\n"
+				+ "t1,07:05:00,07:06:00,1,1\n"
+				+ "t1,,,2,2\n"
+				+ "t1,07:20:00,07:20:30,2,3\n"
+				+ "t2,23:50:00,23:50:00,1,1\n"
+				+ "t2,24:10:00,24:10:00,2,2\n"
+				+ "t3,08:00:00,08:00:00,1,1\n"
+				+ "t4,8:15:00,8:15:00,2,1\n"
+				+ "t4,8:xx:00,8:xx:00,2,2\n"
+				+ "\n");
+	}
+
+	@After
+	public void tearDown() {
+		for (File f : feed.listFiles())
+			f.delete();
+		feed.delete();
+	}
+
+	private void write(String name, String contents) throws IOException {
+		// Feeds are UTF-8, whatever the platform's default
+		Writer out = new OutputStreamWriter(new FileOutputStream(new File(feed, name)), "UTF-8");
+		try {
+			out.write(contents);
+		} finally {
+			out.close();
+		}
+	}
+
+	@Test
+	public void testImport() throws IOException {
+		MutableSchedule schedule = new IndexedSchedule();
+		Keywords keywords = new Keywords();
+		GtfsImporter importer = new GtfsImporter(schedule, keywords, feed);
+		importer.parse();
+
+		assertEquals("Fred Meyer, Burlingame", keywords.getDefinition("fred"));
+		assertEquals("Law School", keywords.getDefinition("2"));
+		assertEquals(8, importer.getRowCount());
+		// 2 weekday stops on 5 days, 2 on Saturday and 1 with no direction
+		assertEquals(13, importer.getStopCount());
+		// The unknown service, the trip that uses it and the bad time
+		assertEquals(3, importer.getErrorCount());
+
+		assertTrue(schedule.stopInSchedule(new Stop("fred", Time.valueOf(MONDAY, 7, 6), OUTBOUND)));
+		assertTrue(schedule.stopInSchedule(new Stop("2", Time.valueOf(FRIDAY, 7, 20), OUTBOUND)));
+		assertFalse(schedule.stopInSchedule(new Stop("fred", Time.valueOf(SATURDAY, 7, 6), OUTBOUND)));
+		assertTrue(schedule.stopInSchedule(new Stop("fred", Time.valueOf(SATURDAY, 23, 50), INBOUND)));
+		// Past midnight on Saturday is early Sunday
+		assertTrue(schedule.stopInSchedule(new Stop("2", Time.valueOf(SUNDAY, 0, 10), INBOUND)));
+		assertTrue(schedule.stopInSchedule(new Stop("2", Time.valueOf(SATURDAY, 8, 15), NONE)));
+		assertFalse(schedule.stopInSchedule(new Stop("fred", Time.valueOf(MONDAY, 8, 0), OUTBOUND)));
+	}
+
+	@Test
+	public void testKeywordClash() throws IOException {
+		write("stops.txt", "stop_id,stop_code,stop_name\n"
+				+ "1,FRED,Fred Meyer\n"
+				+ "2,HELP,Help Street\n"
+				+ "3,fred,Fred Meyer South\n"
+				+ "fred,,Another Fred\n");
+		MutableSchedule schedule = new IndexedSchedule();
+		Keywords keywords = new Keywords();
+		keywords.add("help", "how to use the service");
+		GtfsImporter importer = new GtfsImporter(schedule, keywords, feed);
+		importer.parse();
+
+		// Built in and earlier keywords are kept; the clashing stops go by their ids
+		assertEquals("how to use the service", keywords.getDefinition("help"));
+		assertEquals("Fred Meyer", keywords.getDefinition("fred"));
+		assertEquals("Help Street", keywords.getDefinition("2"));
+		assertEquals("Fred Meyer South", keywords.getDefinition("3"));
+		// Two clashing codes, and the id that clashes too, on top of the feed's 3
+		assertEquals(3 + 3, importer.getErrorCount());
+		assertTrue(schedule.stopInSchedule(new Stop("2", Time.valueOf(FRIDAY, 7, 20), OUTBOUND)));
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingColumn() throws IOException {
+		write("stops.txt", "stop_code,stop_name\nFRED,Fred Meyer\n");
+		new GtfsImporter(new IndexedSchedule(), new Keywords(), feed).parse();
+	}
+
+	@Test
+	public void testParseTime() {
+		assertEquals(7 * 60 + 5, GtfsImporter.parseTime("07:05:00"));
+		assertEquals(7 * 60 + 5, GtfsImporter.parseTime(" 7:05:59"));
+		assertEquals(25 * 60 + 10, GtfsImporter.parseTime("25:10:00"));
+		assertEquals(-1, GtfsImporter.parseTime(""));
+		assertEquals(-2, GtfsImporter.parseTime("7:5:00"));
+		assertEquals(-2, GtfsImporter.parseTime("07:65:00"));
+	}
+
+	@Test
+	public void testCsv() throws IOException {
+		CsvReader csv = new CsvReader(new StringReader("a,\"b,\"\"c\"\"\",\r\n\"multi\nline\",d"));
+		assertTrue(csv.next());
+		assertEquals(3, csv.size());
+		assertEquals("a", csv.get(0));
+		assertEquals("b,\"c\"", csv.get(1));
+		assertEquals("", csv.get(2));
+		assertEquals("", csv.get(7));
+		assertTrue(csv.next());
+		assertEquals("multi\nline", csv.get(0));
+		assertEquals("d", csv.get(1));
+		assertEquals(2, csv.getRecordNumber());
+		assertFalse(csv.next());
+	}
+}
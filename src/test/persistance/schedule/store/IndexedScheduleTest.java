@@ -0,0 +1,57 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.OUTBOUND;
+import static time.Day.*;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import persistance.schedule.Stop;
+import time.Time;
+import time.TimeRange;
+
+public class IndexedScheduleTest extends MutableScheduleTestTemplate {
+
+	@Override
+	protected MutableSchedule createSchedule() {
+		return new IndexedSchedule();
+	}
+
+	@Test
+	public void testSameMinute() {
+		IndexedSchedule schedule = new IndexedSchedule();
+		Time noon = Time.valueOf(MONDAY, 12, 0);
+		schedule.addStop(new Stop("a", noon));
+		schedule.addStop(new Stop("b", noon));
+		schedule.addStop(new Stop("b", noon));
+		assertTrue(schedule.stopInSchedule(new Stop("a", noon)));
+		assertTrue(schedule.stopInSchedule(new Stop("b", noon)));
+
+		Iterator<Stop> stops = schedule.getStops(new TimeRange(noon, noon.addMinutes(1))).iterator();
+		assertEquals(noon, stops.next().getTime());
+		assertEquals(noon, stops.next().getTime());
+		assertFalse(stops.hasNext());
+	}
+
+	@Test
+	public void testDirectionalLookups() {
+		IndexedSchedule schedule = new IndexedSchedule();
+		schedule.addStop(new Stop("law", Time.valueOf(MONDAY, 9, 27), INBOUND));
+		schedule.addStop(new Stop("law", Time.valueOf(MONDAY, 9, 43), OUTBOUND));
+		schedule.addStop(new Stop("law", Time.valueOf(MONDAY, 10, 27), INBOUND));
+
+		Time t = Time.valueOf(MONDAY, 9, 30);
+		assertEquals(new Stop("law", Time.valueOf(MONDAY, 9, 43), OUTBOUND), schedule.getNextStop("law", t));
+		assertEquals(new Stop("law", Time.valueOf(MONDAY, 10, 27), INBOUND), schedule.getNextStop("law", INBOUND, t));
+		// Wraps around the week
+		assertEquals(new Stop("law", Time.valueOf(MONDAY, 9, 43), OUTBOUND), schedule.getNextStop("law", OUTBOUND, Time.valueOf(FRIDAY, 0, 0)));
+
+		Iterator<Stop> inbound = schedule.getNextStops("law", INBOUND, t, 5).iterator();
+		assertEquals(Time.valueOf(MONDAY, 10, 27), inbound.next().getTime());
+		assertEquals(Time.valueOf(MONDAY, 9, 27), inbound.next().getTime());
+		assertFalse(inbound.hasNext());
+	}
+}
@@ -0,0 +1,114 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static persistance.schedule.Stop.Direction.INBOUND;
+import static persistance.schedule.Stop.Direction.OUTBOUND;
+import static time.Day.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Iterator;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import persistance.schedule.Stop;
+import time.Day;
+import time.Time;
+import time.TimeRange;
+import core.Keywords;
+
+public class MappedScheduleTest {
+
+	private static final long CHECKSUM = 0x12345678abcdL;
+
+	private File file;
+
+	private CompiledSchedule compiled;
+
+	private Keywords keywords;
+
+	@Before
+	public void setUp() throws IOException {
+		file = File.createTempFile("schedule", ".snapshot");
+		IndexedSchedule source = new IndexedSchedule();
+		for (Day d : Day.values()) {
+			for (int i = 0; i < 5; i++) {
+				source.addStop(new Stop("fred", Time.valueOf(d, 9, 10 * i), i % 2 == 0 ? INBOUND : OUTBOUND));
+				source.addStop(new Stop("caf\u00e9", Time.valueOf(d, 9, 10 * i)));
+			}
+		}
+		compiled = source.freeze();
+		keywords = new Keywords();
+		keywords.add("fred", "Fred Meyer");
+		keywords.add("caf\u00e9", "Caf\u00e9 on the corner");
+		MappedSchedule.write(file, CHECKSUM, compiled, keywords);
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testRoundTrip() {
+		MappedSchedule mapped = MappedSchedule.open(file, CHECKSUM);
+		assertNotNull(mapped);
+		assertEquals(compiled.size(), mapped.size());
+
+		for (int m = 0; m < Time.MINUTES_PER_WEEK; m += 13) {
+			Time t = Time.valueOf(m);
+			for (String k : new String[] { "fred", "caf\u00e9", "salmon" }) {
+				assertEquals(compiled.getNextStop(k, t), mapped.getNextStop(k, t));
+				Iterator<Stop> expected = compiled.getNextStops(k, t, 7).iterator();
+				for (Stop s : mapped.getNextStops(k, t, 7))
+					assertEquals(expected.next(), s);
+				assertFalse(expected.hasNext());
+			}
+		}
+
+		TimeRange range = new TimeRange(Time.valueOf(SATURDAY, 9, 25), Time.valueOf(SUNDAY, 9, 15));
+		Iterator<Stop> expected = compiled.getStops(range).iterator();
+		for (Stop s : mapped.getStops(range))
+			assertEquals(expected.next(), s);
+		assertFalse(expected.hasNext());
+
+		Keywords loaded = new Keywords();
+		mapped.addDefinitionsTo(loaded);
+		assertEquals("Caf\u00e9 on the corner", loaded.getDefinition("caf\u00e9"));
+		assertEquals("Fred Meyer", loaded.getDefinition("fred"));
+	}
+
+	@Test
+	public void testStale() {
+		assertNull(MappedSchedule.open(file, CHECKSUM + 1));
+		assertNull(MappedSchedule.open(new File(file.getPath() + ".missing"), CHECKSUM));
+	}
+
+	@Test
+	public void testDamaged() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(raf.length() - 1);
+		} finally {
+			raf.close();
+		}
+		assertNull(MappedSchedule.open(file, CHECKSUM));
+	}
+
+	@Test
+	public void testChecksum() throws IOException {
+		File text = File.createTempFile("schedule", ".txt");
+		try {
+			utils.FileUtils.writeFile(text, "Schedule: Monday 7:00am-8:00pm\n", true);
+			long first = MappedSchedule.checksum(text);
+			assertEquals(first, MappedSchedule.checksum(text));
+			utils.FileUtils.writeFile(text, "Schedule: Monday 7:00am-9:00pm\n", true);
+			assertFalse(first == MappedSchedule.checksum(text));
+		} finally {
+			text.delete();
+		}
+	}
+}
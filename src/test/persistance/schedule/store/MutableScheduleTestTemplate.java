@@ -8,6 +8,7 @@ import java.util.Iterator;
 import org.junit.Before;
 import org.junit.Test;
 
+import persistance.schedule.Schedule;
 import persistance.schedule.Stop;
 import persistance.schedule.Stop.Direction;
 import time.Day;
@@ -189,4 +190,46 @@ public abstract class MutableScheduleTestTemplate {
 		assertEquals(new Time(SUNDAY, 1, 30), s.getTime());
 		assertFalse(iter.hasNext());	
 	}
+
+	@Test
+	public void testIterablesRepeatable() {
+		for (Day d : Day.values())
+			schedule.addStop(new Stop("test", new Time(d, 12, 00)));
+
+		Iterable<Stop> next = schedule.getNextStops("test", new Time(SATURDAY, 00, 00), 3);
+		Iterable<Stop> range = schedule.getStops(new TimeRange(new Time(SATURDAY, 00, 00), new Time(MONDAY, 13, 00)));
+		for (int pass = 0; pass < 2; pass++) {
+			Iterator<Stop> iter = next.iterator();
+			assertEquals(new Time(SATURDAY, 12, 00), iter.next().getTime());
+			assertEquals(new Time(SUNDAY, 12, 00), iter.next().getTime());
+			assertEquals(new Time(MONDAY, 12, 00), iter.next().getTime());
+			assertFalse(iter.hasNext());
+
+			iter = range.iterator();
+			assertEquals(new Time(SATURDAY, 12, 00), iter.next().getTime());
+			assertEquals(new Time(SUNDAY, 12, 00), iter.next().getTime());
+			assertEquals(new Time(MONDAY, 12, 00), iter.next().getTime());
+			assertFalse(iter.hasNext());
+		}
+	}
+
+	@Test
+	public void testFreeze() {
+		Stop s0 = new Stop("test0", new Time(MONDAY, 12, 00), Direction.INBOUND);
+		Stop s1 = new Stop("test1", new Time(SATURDAY, 23, 59));
+		schedule.addStop(s0);
+		schedule.addStop(s1);
+
+		Schedule frozen = schedule.freeze();
+		schedule.removeStops(new TimeRange(new Time(MONDAY, 00, 00), new Time(TUESDAY, 00, 00)));
+		assertFalse(schedule.stopInSchedule(s0));
+
+		assertEquals(2, new CompiledSchedule(frozen).size());
+		assertEquals(s0, frozen.getNextStop("test0", new Time(SUNDAY, 00, 00)));
+		assertEquals(s1, frozen.getNextStop("test1", new Time(SUNDAY, 00, 00)));
+		Iterator<Stop> iter = frozen.getStops(new TimeRange(new Time(SATURDAY, 00, 00), new Time(TUESDAY, 00, 00))).iterator();
+		assertEquals(s1, iter.next());
+		assertEquals(s0, iter.next());
+		assertFalse(iter.hasNext());
+	}
 }
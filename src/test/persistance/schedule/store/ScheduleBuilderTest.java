@@ -0,0 +1,92 @@
+package persistance.schedule.store;
+
+import static org.junit.Assert.*;
+import static time.Day.*;
+
+import org.junit.Test;
+
+import persistance.schedule.Stop;
+import persistance.schedule.Stop.Direction;
+import time.Time;
+import time.TimeRange;
+
+public class ScheduleBuilderTest {
+
+	private final Stop monday = new Stop("test", Time.valueOf(MONDAY, 12, 0));
+	private final Stop saturday = new Stop("test", Time.valueOf(SATURDAY, 23, 30));
+	private final Stop sunday = new Stop("test", Time.valueOf(SUNDAY, 0, 30));
+
+	@Test
+	public void testRemovalsApplyToEarlierStops() {
+		ScheduleBuilder builder = new ScheduleBuilder();
+		builder.addStop(monday);
+		builder.addStop(saturday);
+		builder.removeStops(new TimeRange(Time.valueOf(MONDAY, 0, 0), Time.valueOf(TUESDAY, 0, 0)));
+		Stop later = new Stop("later", Time.valueOf(MONDAY, 12, 0));
+		builder.addStop(later);
+
+		MutableSchedule schedule = new IndexedSchedule();
+		builder.build(schedule);
+		assertFalse(schedule.stopInSchedule(monday));
+		assertTrue(schedule.stopInSchedule(saturday));
+		assertTrue(schedule.stopInSchedule(later));
+	}
+
+	@Test
+	public void testRemovalsApplyToSchedule() {
+		MutableSchedule schedule = new IndexedSchedule();
+		schedule.addStop(monday);
+		schedule.addStop(saturday);
+		schedule.addStop(sunday);
+
+		ScheduleBuilder builder = new ScheduleBuilder();
+		// Overlapping ranges, one across the week boundary
+		builder.removeStops(new TimeRange(Time.valueOf(SATURDAY, 23, 0), Time.valueOf(SUNDAY, 0, 10)));
+		builder.removeStops(new TimeRange(Time.valueOf(SUNDAY, 0, 0), Time.valueOf(SUNDAY, 1, 0)));
+		builder.build(schedule);
+		assertTrue(schedule.stopInSchedule(monday));
+		assertFalse(schedule.stopInSchedule(saturday));
+		assertFalse(schedule.stopInSchedule(sunday));
+	}
+
+	@Test
+	public void testWholeWeek() {
+		MutableSchedule schedule = new DefaultSchedule();
+		schedule.addStop(monday);
+		ScheduleBuilder builder = new ScheduleBuilder();
+		for (int day = 0; day < 7; day++)
+			builder.removeStops(new TimeRange(Time.valueOf(day * Time.MINUTES_PER_DAY), Time.valueOf((day + 1) % 7 * Time.MINUTES_PER_DAY)));
+		builder.addStop(saturday);
+		builder.build(schedule);
+		assertFalse(schedule.stopInSchedule(monday));
+		assertTrue(schedule.stopInSchedule(saturday));
+
+		// The builder starts afresh after build()
+		builder.addStop(monday);
+		builder.build(schedule);
+		assertTrue(schedule.stopInSchedule(saturday));
+		assertTrue(schedule.stopInSchedule(monday));
+	}
+
+	@Test
+	public void testFrequencies() {
+		Frequency hourly = new Frequency("test", Direction.OUTBOUND, Time.valueOf(MONDAY, 7, 0), 60, 12);
+		ScheduleBuilder builder = new ScheduleBuilder();
+		builder.addFrequency(hourly);
+		builder.removeStops(new TimeRange(Time.valueOf(MONDAY, 9, 30), Time.valueOf(MONDAY, 11, 30)));
+		FrequencySchedule frequencies = new FrequencySchedule(new IndexedSchedule());
+		builder.addFrequency(hourly);
+		builder.build(frequencies);
+		// 7:00-9:00 and 12:00-6:00pm from the first, all of the second
+		assertEquals(3, frequencies.getFrequencyCount());
+
+		builder.addFrequency(hourly);
+		builder.removeStops(new TimeRange(Time.valueOf(MONDAY, 9, 30), Time.valueOf(MONDAY, 11, 30)));
+		MutableSchedule schedule = new IndexedSchedule();
+		builder.build(schedule);
+		assertTrue(schedule.stopInSchedule(new Stop("test", Time.valueOf(MONDAY, 9, 0), Direction.OUTBOUND)));
+		assertFalse(schedule.stopInSchedule(new Stop("test", Time.valueOf(MONDAY, 10, 0), Direction.OUTBOUND)));
+		assertTrue(schedule.stopInSchedule(new Stop("test", Time.valueOf(MONDAY, 18, 0), Direction.OUTBOUND)));
+		assertEquals(10, new CompiledSchedule(schedule).size());
+	}
+}
@@ -0,0 +1,140 @@
+package sms;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import core.Query;
+
+public class WebhookConnectionTest {
+
+	private static final String TOKEN = "s3cret";
+
+	private final List<String> sent = new ArrayList<String>();
+
+	private WebhookConnection connection;
+
+	@Before
+	public void setUp() throws ConnectionException {
+		connection = new WebhookConnection(new InetSocketAddress("127.0.0.1", 0), WebhookConnection.DEFAULT_PATH, new SmsSender() {
+			@Override
+			public void sendSms(String number, String message) {
+				sent.add(number + ": " + message);
+			}
+		}, TOKEN);
+		connection.connect();
+	}
+
+	@After
+	public void tearDown() {
+		connection.close();
+	}
+
+	/** Makes a request to the connection, returning the status. */
+	private int request(String method, String form) throws IOException {
+		return request(method, form, TOKEN);
+	}
+
+	/** Makes a request to the connection with a token, or none, returning the status. */
+	private int request(String method, String form, String token) throws IOException {
+		URL url = new URL("http://127.0.0.1:" + connection.getPort() + WebhookConnection.DEFAULT_PATH);
+		HttpURLConnection http = (HttpURLConnection) url.openConnection();
+		http.setRequestMethod(method);
+		if (token != null)
+			http.setRequestProperty(WebhookConnection.TOKEN_HEADER, token);
+		if (form != null) {
+			http.setDoOutput(true);
+			http.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+			OutputStream out = http.getOutputStream();
+			out.write(form.getBytes("UTF-8"));
+			out.close();
+		}
+		int status = http.getResponseCode();
+		http.disconnect();
+		return status;
+	}
+
+	@Test
+	public void testPush() throws IOException, InterruptedException {
+		final BlockingQueue<Query> queries = new LinkedBlockingQueue<Query>();
+		connection.setListener(new WebhookConnection.Listener() {
+			@Override
+			public void received(Query query) {
+				queries.add(query);
+			}
+		});
+		long start = System.currentTimeMillis();
+		assertEquals(204, request("POST", "From=%2B15035551234&Body=law+to+fred&Timestamp=1289840700000"));
+		Query q = queries.poll(1, TimeUnit.SECONDS);
+		assertTrue(System.currentTimeMillis() - start < 1000);
+		assertEquals("+15035551234", q.getPhoneNumber());
+		assertEquals("law to fred", q.getBody());
+		assertEquals(1289840700000L, q.getTimeSent().getTime());
+		// Handed over, not held for a poll
+		assertTrue(connection.getNewMessages().isEmpty());
+
+		connection.sendSms(q.getPhoneNumber(), "Fred 9:05a");
+		assertEquals("+15035551234: Fred 9:05a", sent.get(0));
+	}
+
+	@Test
+	public void testPoll() throws IOException {
+		assertEquals(204, request("POST", "from=%2B15035551234&body=lc"));
+		assertEquals(204, request("POST", "FROM=%2B15035559876&BODY=salmon"));
+		List<? extends Query> queries = connection.getNewMessages();
+		assertEquals(2, queries.size());
+		assertEquals("lc", queries.get(0).getBody());
+		assertEquals("salmon", queries.get(1).getBody());
+		assertTrue(connection.getNewMessages().isEmpty());
+	}
+
+	@Test
+	public void testBadRequests() throws IOException {
+		assertEquals(405, request("GET", null));
+		assertEquals(400, request("POST", "From=%2B15035551234"));
+		assertEquals(400, request("POST", "From=%2B15035551234&Body=lc&Timestamp=noon"));
+		assertTrue(connection.getNewMessages().isEmpty());
+	}
+
+	@Test
+	public void testForbidden() throws IOException {
+		final List<Query> queries = new ArrayList<Query>();
+		connection.setListener(new WebhookConnection.Listener() {
+			@Override
+			public void received(Query query) {
+				queries.add(query);
+			}
+		});
+		assertEquals(403, request("POST", "From=%2B15035551234&Body=lc", null));
+		assertEquals(403, request("POST", "From=%2B15035551234&Body=lc", "guess"));
+		assertEquals(403, request("POST", "From=%2B15035551234&Body=lc", TOKEN + "x"));
+		assertEquals(403, request("GET", null, null));
+		// Nothing is handled, so nothing is sent
+		assertTrue(queries.isEmpty());
+		assertTrue(connection.getNewMessages().isEmpty());
+	}
+
+	@Test
+	public void testParseForm() throws IOException {
+		Map<String, String> form = WebhookConnection.parseForm("A=1&b=two+words&c=%E2%9C%93&&d&e=%zz");
+		assertEquals("1", form.get("a"));
+		assertEquals("two words", form.get("b"));
+		assertEquals("\u2713", form.get("c"));
+		assertEquals("", form.get("d"));
+		assertFalse(form.containsKey("e"));
+	}
+}
@@ -0,0 +1,91 @@
+package time;
+
+import static org.junit.Assert.*;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class EpochConverterTest {
+
+	/** Mon Nov 15 09:05:00 PST 2010 */
+	private static final long MONDAY = 1289840700887l;
+
+	private static final long HOUR = 3600000l;
+
+	/** Zones with DST, without DST, and with odd offsets and odd DST shifts. */
+	private static final String[] ZONES = { "America/Los_Angeles", "Europe/London", "Australia/Lord_Howe", "Asia/Kathmandu", "America/St_Johns", "UTC" };
+
+	/** Compares the actual Time to the Calendar's idea of the same instant. */
+	protected void assertConverts(EpochConverter converter, TimeZone zone, long epoch) {
+		Calendar cal = Calendar.getInstance(zone);
+		cal.setTimeInMillis(epoch);
+		Time time = converter.toTime(epoch);
+		String message = String.format("%s at %d", zone.getID(), epoch);
+		assertEquals(message, cal.get(Calendar.MINUTE), time.getMinute());
+		assertEquals(message, cal.get(Calendar.HOUR_OF_DAY), time.getHour());
+		assertEquals(message, Day.valueOf(cal.get(Calendar.DAY_OF_WEEK)), time.getDay());
+	}
+
+	@Test
+	public void testEpochDay() {
+		EpochConverter pacific = new EpochConverter(TimeZone.getTimeZone("America/Los_Angeles"), MONDAY);
+		EpochConverter utc = new EpochConverter(TimeZone.getTimeZone("UTC"), MONDAY);
+		assertEquals(ServiceCalendar.epochDay(2010, 11, 15), pacific.epochDay(MONDAY));
+		// 9:05pm Monday in Los Angeles is already Tuesday in UTC
+		assertEquals(ServiceCalendar.epochDay(2010, 11, 15), pacific.epochDay(MONDAY + 12 * HOUR));
+		assertEquals(ServiceCalendar.epochDay(2010, 11, 16), utc.epochDay(MONDAY + 12 * HOUR));
+		assertEquals(-1, utc.epochDay(-1));
+	}
+
+	@Test
+	public void testAcrossTheYear() {
+		for (String id : ZONES) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			EpochConverter converter = new EpochConverter(zone, MONDAY);
+			// Every seven minutes for a bit over a year catches every DST change
+			for (long t = MONDAY - 2 * HOUR; t < MONDAY + 370 * 24 * HOUR; t += 7 * 60000l)
+				assertConverts(converter, zone, t);
+		}
+	}
+
+	@Test
+	public void testDstTransitions() {
+		TimeZone zone = TimeZone.getTimeZone("America/Los_Angeles");
+		EpochConverter converter = new EpochConverter(zone, MONDAY);
+
+		// Sun Mar 13 2011, 1:59am PST is one minute before 3:00am PDT
+		long springForward = 1300010400000l;
+		assertEquals(Time.valueOf(Day.SUNDAY, 1, 59), converter.toTime(springForward - 60000));
+		assertEquals(Time.valueOf(Day.SUNDAY, 3, 0), converter.toTime(springForward));
+		assertEquals(-8 * HOUR, converter.getOffset(springForward - 1));
+		assertEquals(-7 * HOUR, converter.getOffset(springForward));
+
+		// Sun Nov 6 2011, 1:59am PDT is followed an hour later by 1:00am PST
+		long fallBack = 1320570000000l;
+		assertEquals(Time.valueOf(Day.SUNDAY, 1, 59), converter.toTime(fallBack - 60000));
+		assertEquals(Time.valueOf(Day.SUNDAY, 1, 0), converter.toTime(fallBack));
+	}
+
+	@Test
+	public void testOutsideTable() {
+		Random random = new Random(7);
+		for (String id : ZONES) {
+			TimeZone zone = TimeZone.getTimeZone(id);
+			EpochConverter converter = new EpochConverter(zone, MONDAY);
+			assertConverts(converter, zone, 0);
+			assertConverts(converter, zone, -1);
+			for (int i = 0; i < 1000; i++)
+				assertConverts(converter, zone, random.nextLong() / 1000);
+		}
+	}
+
+	@Test
+	public void testDefault() {
+		long now = System.currentTimeMillis();
+		assertEquals(new Time(now), EpochConverter.getDefault().toTime(now));
+		assertSame(EpochConverter.getDefault(), EpochConverter.getDefault());
+	}
+}
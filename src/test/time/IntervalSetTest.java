@@ -0,0 +1,85 @@
+package time;
+
+import static org.junit.Assert.*;
+import static time.Day.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class IntervalSetTest {
+
+	private static TimeRange range(Day d1, int h1, Day d2, int h2) {
+		return new TimeRange(Time.valueOf(d1, h1, 0), Time.valueOf(d2, h2, 0));
+	}
+
+	@Test
+	public void testOf() {
+		IntervalSet set = IntervalSet.of(range(MONDAY, 7, MONDAY, 19));
+		assertTrue(set.contains(Time.valueOf(MONDAY, 7, 0)));
+		assertTrue(set.contains(Time.valueOf(MONDAY, 18, 59)));
+		assertFalse(set.contains(Time.valueOf(MONDAY, 19, 0)));
+		assertFalse(set.contains(Time.valueOf(MONDAY, 6, 59)));
+		assertEquals(12 * 60, set.getLength());
+		assertTrue(IntervalSet.of(range(MONDAY, 7, MONDAY, 7)).isEmpty());
+
+		// Overnight, across the end of the week
+		set = IntervalSet.of(range(SATURDAY, 22, SUNDAY, 2));
+		assertTrue(set.contains(Time.valueOf(SATURDAY, 23, 59)));
+		assertTrue(set.contains(Time.valueOf(SUNDAY, 0, 0)));
+		assertFalse(set.contains(Time.valueOf(SUNDAY, 2, 0)));
+		assertEquals(4 * 60, set.getLength());
+	}
+
+	@Test
+	public void testCoalesce() {
+		// Back to back days, overlapping evenings and one out on its own
+		List<TimeRange> ranges = Arrays.asList(range(TUESDAY, 0, WEDNESDAY, 0), range(MONDAY, 0, TUESDAY, 0), range(MONDAY, 20, TUESDAY, 2), range(FRIDAY, 9, FRIDAY, 10));
+		IntervalSet set = IntervalSet.of(ranges);
+		assertEquals(Arrays.asList(ranges.get(1).getBeginning(), ranges.get(0).getEnd()), Arrays.asList(set.getRanges().get(0).getBeginning(), set.getRanges().get(0).getEnd()));
+		assertEquals(2, set.getRanges().size());
+		assertEquals(49 * 60, set.getLength());
+		assertEquals(set, IntervalSet.of(range(MONDAY, 0, WEDNESDAY, 0)).union(IntervalSet.of(range(FRIDAY, 9, FRIDAY, 10))));
+	}
+
+	@Test
+	public void testAlgebra() {
+		IntervalSet week = IntervalSet.of(range(SATURDAY, 20, SUNDAY, 4));
+		IntervalSet sunday = IntervalSet.of(range(SUNDAY, 0, MONDAY, 0));
+
+		assertEquals(IntervalSet.of(range(SATURDAY, 20, MONDAY, 0)), week.union(sunday));
+		assertEquals(IntervalSet.of(range(SUNDAY, 0, SUNDAY, 4)), week.intersect(sunday));
+		assertEquals(IntervalSet.of(range(SATURDAY, 20, SUNDAY, 0)), week.subtract(sunday));
+		assertEquals(IntervalSet.of(range(SUNDAY, 4, MONDAY, 0)), sunday.subtract(week));
+		assertTrue(week.intersect(IntervalSet.EMPTY).isEmpty());
+		assertEquals(week, week.union(IntervalSet.EMPTY));
+
+		IntervalSet rest = week.complement();
+		assertEquals(IntervalSet.of(range(SUNDAY, 4, SATURDAY, 20)), rest);
+		assertEquals(IntervalSet.WEEK, rest.union(week));
+		assertTrue(rest.intersect(week).isEmpty());
+		assertTrue(IntervalSet.WEEK.complement().isEmpty());
+		assertEquals(IntervalSet.WEEK, IntervalSet.EMPTY.complement());
+		assertEquals(Time.MINUTES_PER_WEEK, IntervalSet.WEEK.getLength());
+	}
+
+	@Test
+	public void testRanges() {
+		// One range across the end of the week, after the others
+		IntervalSet set = IntervalSet.of(Arrays.asList(range(SATURDAY, 22, SUNDAY, 2), range(WEDNESDAY, 9, WEDNESDAY, 17)));
+		List<TimeRange> ranges = set.getRanges();
+		assertEquals(2, ranges.size());
+		assertEquals(Time.valueOf(WEDNESDAY, 9, 0), ranges.get(0).getBeginning());
+		assertEquals(Time.valueOf(SATURDAY, 22, 0), ranges.get(1).getBeginning());
+		assertEquals(Time.valueOf(SUNDAY, 2, 0), ranges.get(1).getEnd());
+		assertEquals(set, IntervalSet.of(ranges));
+
+		// The whole week, in halves
+		ranges = IntervalSet.WEEK.getRanges();
+		assertEquals(2, ranges.size());
+		assertEquals(Time.MINUTES_PER_WEEK, ranges.get(0).getLength() + ranges.get(1).getLength());
+		assertEquals(IntervalSet.WEEK, IntervalSet.of(ranges));
+		assertTrue(IntervalSet.EMPTY.getRanges().isEmpty());
+	}
+}
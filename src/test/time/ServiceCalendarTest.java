@@ -0,0 +1,86 @@
+package time;
+
+import static org.junit.Assert.*;
+import static time.ServiceCalendar.NO_SERVICE;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import utils.FileUtils;
+
+public class ServiceCalendarTest {
+
+	/** Mon Nov 15, 2010 */
+	private static final int MONDAY = 14928;
+
+	@Test
+	public void testEpochDay() {
+		assertEquals(0, ServiceCalendar.epochDay(1970, 1, 1));
+		assertEquals(-1, ServiceCalendar.epochDay(1969, 12, 31));
+		assertEquals(11017, ServiceCalendar.epochDay(2000, 3, 1));
+		assertEquals(MONDAY, ServiceCalendar.epochDay(2010, 11, 15));
+		assertEquals(15399, ServiceCalendar.parseDate("2012-02-29"));
+		assertEquals(Day.MONDAY, ServiceCalendar.dayOf(MONDAY));
+		assertEquals(Day.WEDNESDAY, ServiceCalendar.dayOf(-1));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testBadDate() {
+		ServiceCalendar.parseDate("2011-02-29");
+	}
+
+	@Test
+	public void testCompile() {
+		ServiceCalendar calendar = new ServiceCalendar();
+		// Thanksgiving week: no service Thursday and Friday, then Friday runs as Saturday after all
+		calendar.add(MONDAY + 10, MONDAY + 11, null);
+		calendar.add(MONDAY + 11, MONDAY + 11, Day.SATURDAY);
+		ServiceTable table = calendar.compile(MONDAY, 28);
+
+		assertEquals(Day.MONDAY.getIndex(), table.getService(MONDAY));
+		assertEquals(NO_SERVICE, table.getService(MONDAY + 10));
+		assertEquals(Day.SATURDAY.getIndex(), table.getService(MONDAY + 11));
+		assertEquals(Day.MONDAY.getIndex(), table.getService(MONDAY - 7));
+		assertEquals(Day.MONDAY.getIndex(), table.getService(MONDAY + 7 * 143));
+
+		// The weeks starting on the 5th through the 10th take in both holidays, and are all the same week
+		assertEquals(ServiceTable.USUAL_WEEK, table.getWeek(MONDAY + 3));
+		int week = table.getWeek(MONDAY + 5);
+		assertTrue(week != ServiceTable.USUAL_WEEK);
+		for (int d = 5; d <= 10; d++)
+			assertEquals(week, table.getWeek(MONDAY + d));
+		// Those starting on the 4th and 11th take in one each
+		assertTrue(table.getWeek(MONDAY + 4) != week && table.getWeek(MONDAY + 4) != ServiceTable.USUAL_WEEK);
+		assertTrue(table.getWeek(MONDAY + 11) != week && table.getWeek(MONDAY + 11) != ServiceTable.USUAL_WEEK);
+		assertEquals(ServiceTable.USUAL_WEEK, table.getWeek(MONDAY + 12));
+		assertEquals(ServiceTable.USUAL_WEEK, table.getWeek(MONDAY + 500));
+		assertEquals(4, table.getWeekCount());
+
+		assertEquals(NO_SERVICE, table.getService(week, Day.THURSDAY));
+		assertEquals(Day.SATURDAY.getIndex(), table.getService(week, Day.FRIDAY));
+		assertEquals(Day.SUNDAY.getIndex(), table.getService(week, Day.SUNDAY));
+		assertEquals(Day.TUESDAY.getIndex(), table.getService(ServiceTable.USUAL_WEEK, Day.TUESDAY));
+	}
+
+	@Test
+	public void testRead() throws IOException {
+		File file = File.createTempFile("calendar", ".txt");
+		file.deleteOnExit();
+		FileUtils.writeFile(file, "# Thanksgiving\n\n2010-11-25 - 2010-11-26, none\n  2010-11-29,Sunday\n", true);
+		ServiceCalendar calendar = ServiceCalendar.read(file);
+		assertEquals(2, calendar.size());
+		ServiceTable table = calendar.compile(MONDAY, 30);
+		assertEquals(NO_SERVICE, table.getService(MONDAY + 11));
+		assertEquals(Day.SUNDAY.getIndex(), table.getService(MONDAY + 14));
+
+		FileUtils.writeFile(file, "2010-11-25 - 2010-11-26, none\n2010-11-29, someday\n", true);
+		try {
+			ServiceCalendar.read(file);
+			fail("Read a calendar with a bad line.");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+		}
+	}
+}
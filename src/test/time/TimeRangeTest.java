@@ -107,6 +107,18 @@ public class TimeRangeTest {
 		assertFalse(r.isInRange(new Time(SUNDAY, 14, 15)));
 	}
 
+	@Test
+	public void testIsInRangeWrapsWeek() {
+		// An end before the beginning on the same day runs the long way round
+		TimeRange r = new TimeRange(new Time(MONDAY, 14, 00), new Time(MONDAY, 13, 00));
+		assertEquals(Time.MINUTES_PER_WEEK - 60, r.getLength());
+		assertTrue(r.isInRange(new Time(MONDAY, 14, 00)));
+		assertTrue(r.isInRange(new Time(WEDNESDAY, 12, 00)));
+		assertTrue(r.isInRange(new Time(MONDAY, 12, 59)));
+		assertFalse(r.isInRange(new Time(MONDAY, 13, 30)));
+		assertFalse(r.isInRange(new Time(MONDAY, 13, 00)));
+	}
+
 	/*
 	@Test
 	public void testIntersection() {
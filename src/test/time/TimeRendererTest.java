@@ -0,0 +1,60 @@
+package time;
+
+import static org.junit.Assert.*;
+import static time.Day.*;
+
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+import java.util.Locale;
+
+import org.junit.Test;
+
+public class TimeRendererTest {
+
+	private final TimeRenderer renderer = TimeRenderer.getInstance(Locale.US);
+
+	/** The slow, obvious way of rendering a time. */
+	private static String expected(Time t, boolean military, boolean includeDay) {
+		String day = includeDay ? DateFormatSymbols.getInstance(Locale.US).getShortWeekdays()[Calendar.SUNDAY + t.getDay().getIndex()] + " " : "";
+		if (military)
+			return String.format("%s%02d:%02d", day, t.getHour(), t.getMinute());
+		int hr = t.getHour() % 12 == 0 ? 12 : t.getHour() % 12;
+		return String.format("%s%02d:%02d%s", day, hr, t.getMinute(), t.getHour() < 12 ? "am" : "pm");
+	}
+
+	@Test
+	public void testEveryTime() {
+		StringBuilder sb = new StringBuilder();
+		char[] chars = new char[32];
+		for (int m = 0; m < Time.MINUTES_PER_WEEK; m++) {
+			Time t = Time.valueOf(m);
+			for (boolean military : new boolean[] { true, false }) {
+				for (boolean includeDay : new boolean[] { true, false }) {
+					String expected = expected(t, military, includeDay);
+					assertEquals(expected, renderer.toString(t, military, includeDay));
+					assertEquals(expected.length(), renderer.length(t, military, includeDay));
+
+					sb.setLength(0);
+					assertEquals(expected, renderer.append(sb, t, military, includeDay).toString());
+
+					int end = renderer.render(chars, 3, t, military, includeDay);
+					assertEquals(expected, new String(chars, 3, end - 3));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testAppends() {
+		StringBuilder sb = new StringBuilder("at ");
+		renderer.append(sb, Time.valueOf(MONDAY, 0, 5), false, true).append(", ");
+		renderer.append(sb, Time.valueOf(MONDAY, 12, 0), true, false);
+		assertEquals("at Mon 12:05am, 12:00", sb.toString());
+	}
+
+	@Test
+	public void testLocale() {
+		assertEquals("mar. 09:05", TimeRenderer.getInstance(Locale.FRENCH).toString(Time.valueOf(TUESDAY, 9, 5), true, true));
+		assertSame(TimeRenderer.getInstance(Locale.FRENCH), TimeRenderer.getInstance(Locale.FRENCH));
+	}
+}
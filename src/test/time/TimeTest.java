@@ -300,4 +300,47 @@ public class TimeTest {
 		
 		assertTrue(t.equalToTime(timeFrom(d)));
 	}
+
+	@Test
+	public void testMinuteOfWeek() {
+		assertEquals(0, Time.valueOf(SUNDAY, 0, 0).getMinuteOfWeek());
+		assertEquals(1440 + 61, Time.valueOf(MONDAY, 1, 1).getMinuteOfWeek());
+		assertEquals(Time.MINUTES_PER_WEEK - 1, Time.valueOf(SATURDAY, 23, 59).getMinuteOfWeek());
+		assertEquals(61, Time.valueOf(MONDAY, 1, 1).getMinuteOfDay());
+
+		for (int m = 0; m < Time.MINUTES_PER_WEEK; m += 7) {
+			time = Time.valueOf(m);
+			assertEquals(m, time.getMinuteOfWeek());
+			assertEquals(time, new Time(time.getDay(), time.getHour(), time.getMinute()));
+			assertEquals(m, time.hashCode());
+		}
+
+		try {
+			Time.valueOf(Time.MINUTES_PER_WEEK);
+			fail("Illegal minute of the week did not result in an exception.");
+		} catch (IllegalArgumentException ex) {
+			// Do nothing
+		}
+	}
+
+	@Test
+	public void testInterned() {
+		assertSame(Time.valueOf(TUESDAY, 8, 30), Time.valueOf(TUESDAY, 8, 30));
+		assertSame(Time.valueOf(TUESDAY, 8, 30), new Time(TUESDAY, 8, 0).addMinutes(30));
+		assertSame(Time.valueOf(SUNDAY, 0, 10), Time.valueOf(SATURDAY, 23, 50).addMinutes(20));
+		assertSame(Time.valueOf(SATURDAY, 23, 50), Time.valueOf(SUNDAY, 0, 10).addHours(-1).addMinutes(40));
+		// Once, so a minute can't turn over between two calls
+		Time now = Time.now();
+		assertSame(now.addMinutes(1), now.addMinutes(1));
+		assertSame(Time.valueOf((now.getMinuteOfWeek() + Time.MINUTES_PER_DAY) % Time.MINUTES_PER_WEEK), now.addDays(1));
+	}
+
+	@Test
+	public void testMinutesUntil() {
+		Time t1 = Time.valueOf(SATURDAY, 23, 0);
+		Time t2 = Time.valueOf(SUNDAY, 1, 0);
+		assertEquals(120, t1.minutesUntil(t2));
+		assertEquals(Time.MINUTES_PER_WEEK - 120, t2.minutesUntil(t1));
+		assertEquals(0, t1.minutesUntil(t1));
+	}
 }
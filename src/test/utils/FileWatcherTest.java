@@ -0,0 +1,73 @@
+package utils;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileWatcherTest {
+
+	private File dir;
+
+	private FileWatcher watcher;
+
+	private final Semaphore changes = new Semaphore(0);
+
+	@Before
+	public void setUp() throws IOException {
+		dir = File.createTempFile("watched", "");
+		assertTrue(dir.delete() && dir.mkdir());
+	}
+
+	@After
+	public void tearDown() {
+		if (watcher != null)
+			watcher.stop();
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+
+	private void watch(File file) throws IOException {
+		watcher = new FileWatcher(file, new Runnable() {
+			@Override
+			public void run() {
+				changes.release();
+			}
+		});
+		watcher.start();
+	}
+
+	@Test
+	public void testChange() throws Exception {
+		File file = new File(dir, "schedule.txt");
+		FileUtils.writeFile(file, "one", true);
+		watch(file);
+
+		// Several quick writes only call back once
+		FileUtils.writeFile(file, "two", true);
+		FileUtils.writeFile(file, "three", true);
+		assertTrue(changes.tryAcquire(30, TimeUnit.SECONDS));
+		assertFalse(changes.tryAcquire(3 * FileWatcher.QUIET_PERIOD, TimeUnit.MILLISECONDS));
+
+		// Other files in the directory are ignored
+		FileUtils.writeFile(new File(dir, "other.txt"), "other", true);
+		assertFalse(changes.tryAcquire(3 * FileWatcher.QUIET_PERIOD, TimeUnit.MILLISECONDS));
+
+		// Replacing the file counts as a change
+		File replacement = new File(dir, "schedule.tmp");
+		FileUtils.writeFile(replacement, "four", true);
+		assertTrue(file.delete() && replacement.renameTo(file));
+		assertTrue(changes.tryAcquire(30, TimeUnit.SECONDS));
+
+		watcher.stop();
+		FileUtils.writeFile(file, "five", true);
+		assertFalse(changes.tryAcquire(3 * FileWatcher.QUIET_PERIOD, TimeUnit.MILLISECONDS));
+	}
+}
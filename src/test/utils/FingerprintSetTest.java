@@ -0,0 +1,57 @@
+package utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FingerprintSetTest {
+
+	private static final long MINUTE = 60 * 1000L;
+
+	@Test
+	public void testAdd() {
+		FingerprintSet set = new FingerprintSet(30 * MINUTE, 16);
+		assertTrue(set.add(42, 0));
+		assertFalse(set.add(42, 0));
+		assertTrue(set.contains(42, 0));
+		assertFalse(set.contains(43, 0));
+		// 0 marks an empty slot, but can still be added
+		assertFalse(set.contains(0, 0));
+		assertTrue(set.add(0, 0));
+		assertTrue(set.contains(0, 0));
+		// Colliding in the table
+		assertTrue(set.add(42 + (1L << 40), 0));
+		assertTrue(set.contains(42 + (1L << 40), 0));
+		assertEquals(3, set.size());
+	}
+
+	@Test
+	public void testExpiry() {
+		FingerprintSet set = new FingerprintSet(30 * MINUTE, 16);
+		set.add(1, 0);
+		set.add(2, 20 * MINUTE);
+		// Remembered for at least the window, and at most a generation longer
+		assertTrue(set.contains(1, 30 * MINUTE - 1));
+		assertFalse(set.contains(1, 40 * MINUTE));
+		assertTrue(set.contains(2, 50 * MINUTE - 1));
+		assertFalse(set.contains(2, 60 * MINUTE));
+		assertEquals(0, set.size());
+
+		// After a long quiet spell
+		set.add(3, 1000 * MINUTE);
+		assertTrue(set.contains(3, 1029 * MINUTE));
+		assertFalse(set.contains(3, 2000 * MINUTE));
+	}
+
+	@Test
+	public void testBounded() {
+		// 12 fit in each generation, so the ring moves on early after that
+		FingerprintSet set = new FingerprintSet(30 * MINUTE, 16);
+		for (long i = 1; i <= 1000; i++)
+			set.add(i * 0x9e3779b97f4a7c15L, 0);
+		assertTrue(set.size() <= 4 * 12);
+		assertTrue(set.getEarlyRotations() > 0);
+		assertTrue(set.contains(1000 * 0x9e3779b97f4a7c15L, 0));
+		assertFalse(set.contains(0x9e3779b97f4a7c15L, 0));
+	}
+}